@@ -0,0 +1,83 @@
+package org.broker;
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import org.openjdk.jmh.annotations.Benchmark; // Импортируем аннотации JMH
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Микротесты разбора текстовых команд и упаковки ответов в кадры
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    private static final String[] COMMANDS = { // Типичный поток команд клиента
+        "send orders",
+        "message 128",
+        "receive orders",
+        "receive orders 500",
+        "subscribe orders 10",
+        "ack orders 1",
+        "unsubscribe orders",
+        "stats",
+    };
+
+    @Param({"16", "1024", "65536"})
+    int payloadSize; // Размер сообщения в ответе
+
+    private ByteBuffer payload; // Сообщение из очереди
+    private int next = 0; // Номер следующей команды
+
+    // Метод для подготовки сообщения
+    @Setup
+    public void setup() {
+        payload = ByteBuffer.allocate(payloadSize); // Сообщение заданного размера
+    }
+
+    // Разбор команды так же, как в ClientHandler.run и NioServer.Connection.handleCommand
+    @Benchmark
+    public int parseCommand() {
+        String clientCommand = COMMANDS[next++ & (COMMANDS.length - 1)]; // Очередная команда (длина массива - степень двойки)
+        String[] parts = clientCommand.split(" ", 2); // Разделяем команду на части
+        switch (parts[0]) {
+            case "send":
+                return parts[1].length(); // Имя очереди
+            case "message":
+                return Integer.parseInt(parts[1]); // Длина тела
+            case "receive":
+            case "subscribe":
+            case "ack":
+            case "unsubscribe":
+                String[] args = Server.splitCount(parts[1]); // Отделяем необязательное число
+                return args[0].length() + (args[1] == null ? 0 : Integer.parseInt(args[1])); // Имя и число
+            case "stats":
+                return parts.length; // Без аргументов
+            default:
+                return -1; // Неизвестная команда
+        }
+    }
+
+    // Упаковка текстового ответа (send, ошибки) в кадр
+    @Benchmark
+    public ByteBuffer[] frameText() {
+        return Server.frame("Очередь 'orders' создана."); // Кадр с текстом
+    }
+
+    // Упаковка сообщения из очереди в кадр без копирования тела
+    @Benchmark
+    public ByteBuffer[] frameMessage() {
+        return Server.frame("Сообщение из очереди: ", payload, ""); // Кадр с сообщением
+    }
+}
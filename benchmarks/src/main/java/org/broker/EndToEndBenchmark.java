@@ -0,0 +1,205 @@
+package org.broker;
+
+import java.io.BufferedInputStream; // Импортируем буферизованный поток ввода
+import java.io.BufferedOutputStream; // Импортируем буферизованный поток вывода
+import java.io.DataInputStream; // Импортируем поток для чтения чисел
+import java.io.DataOutputStream; // Импортируем поток для записи чисел
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.net.ServerSocket; // Импортируем серверный сокет для выбора свободного порта
+import java.net.Socket; // Импортируем клиентский сокет
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем счетчик для имен очередей
+import org.openjdk.jmh.annotations.Benchmark; // Импортируем аннотации JMH
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Сквозные тесты через loopback: сервер NIO запускается в том же процессе, каждый поток JMH - отдельное
+// соединение двоичного протокола со своей очередью. Режим SampleTime дает процентили p0.50, p0.99 и p0.999.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final int PIPELINE_DEPTH = 32; // Сколько сообщений отправляется, не дожидаясь ответов
+
+    // Сервер, запущенный в процессе теста
+    @State(Scope.Benchmark)
+    public static class ServerState {
+
+        int port; // Порт сервера
+        final AtomicInteger queues = new AtomicInteger(); // Счетчик для имен очередей соединений
+
+        // Метод для запуска сервера на свободном порту
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            try (ServerSocket probe = new ServerSocket(0)) { // Просим систему выбрать свободный порт
+                port = probe.getLocalPort(); // Запоминаем его
+            }
+            Thread server = new Thread(() -> { // Поток приема соединений
+                try {
+                    new NioServer(port, Server.EVENT_LOOPS).run(); // Запускаем сервер
+                } catch (IOException e) { // Обработка ошибок запуска
+                    System.err.println("Ошибка запуска сервера: " + e.getMessage()); // Сообщаем об ошибке
+                }
+            }, "bench-server");
+            server.setDaemon(true); // Сервер завершится вместе с процессом JMH
+            server.start(); // Запускаем поток
+
+            long deadline = System.currentTimeMillis() + 10_000; // Ждем готовности сервера не дольше 10 секунд
+            while (true) { // Пробуем подключиться
+                try {
+                    new Socket("localhost", port).close(); // Подключение удалось - пробное соединение больше не нужно
+                    return; // Сервер готов
+                } catch (IOException e) { // Сервер еще не слушает порт
+                    if (System.currentTimeMillis() > deadline) { // Если время вышло
+                        throw e; // Тест не может продолжаться
+                    }
+                    Thread.sleep(10); // Ждем и повторяем
+                }
+            }
+        }
+    }
+
+    // Соединение одного потока JMH
+    @State(Scope.Thread)
+    public static class ClientState {
+
+        @Param({"16", "1024", "65536"})
+        int payloadSize; // Размер сообщения в байтах
+
+        private Socket socket; // Сокет соединения
+        private DataInputStream in; // Поток ответов
+        private DataOutputStream out; // Поток запросов
+        private byte[] queueName; // Имя очереди соединения в UTF-8
+        private byte[] payload; // Сообщение
+        private byte[] reply = new byte[1024]; // Буфер для тела ответа
+        private int correlationId = 0; // Идентификатор следующего запроса
+
+        // Метод для подключения к серверу и создания очереди соединения
+        @Setup(Level.Trial)
+        public void connect(ServerState server) throws IOException {
+            socket = new Socket("localhost", server.port); // Подключаемся
+            socket.setTcpNoDelay(true); // Запросы не должны ждать в буфере ядра
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 256 * 1024)); // Поток ответов
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 256 * 1024)); // Поток запросов
+            queueName = ("bench-" + server.queues.incrementAndGet()).getBytes(StandardCharsets.UTF_8); // Своя очередь у каждого соединения
+            payload = new byte[payloadSize]; // Сообщение заданного размера
+
+            out.writeByte(BinaryProtocol.MAGIC); // Начинаем двоичное соединение
+            out.writeByte(BinaryProtocol.VERSION); // Версия протокола
+            writeHeader(BinaryProtocol.OP_OPEN, 0); // Создаем очередь
+            out.flush(); // Отправляем запрос
+            readReply(); // Ждем ответ
+        }
+
+        // Метод для закрытия соединения
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            socket.close(); // Закрываем сокет
+        }
+
+        // Метод для записи запроса PUBLISH в буфер
+        void publish() throws IOException {
+            writeHeader(BinaryProtocol.OP_PUBLISH, payload.length); // Заголовок кадра
+            out.write(payload); // Тело сообщения
+        }
+
+        // Метод для записи запроса FETCH в буфер
+        void fetch(int max) throws IOException {
+            writeHeader(BinaryProtocol.OP_FETCH, 4); // Заголовок кадра
+            out.writeInt(max); // Сколько сообщений извлечь
+        }
+
+        // Метод для отправки накопленных запросов
+        void flush() throws IOException {
+            out.flush(); // Отправляем буфер одной записью
+        }
+
+        // Метод для записи заголовка кадра запроса
+        private void writeHeader(byte opcode, int bodyLength) throws IOException {
+            out.writeInt(BinaryProtocol.HEADER_LENGTH + queueName.length + bodyLength); // Длина кадра
+            out.writeByte(opcode); // Код операции
+            out.writeInt(correlationId++); // Идентификатор корреляции
+            out.writeShort(queueName.length); // Длина имени очереди
+            out.write(queueName); // Имя очереди
+        }
+
+        // Метод для чтения одного кадра ответа; возвращает код статуса
+        byte readReply() throws IOException {
+            int length = in.readInt(); // Длина кадра
+            if (length > reply.length) { // Если ответ не помещается в буфер
+                reply = new byte[Math.max(length, reply.length * 2)]; // Увеличиваем буфер
+            }
+            in.readFully(reply, 0, length); // Читаем кадр целиком
+            return reply[5]; // Код статуса после кода операции и идентификатора корреляции
+        }
+    }
+
+    // Метод для полного цикла одного сообщения: отправка, подтверждение, выборка
+    private static byte publishConsume(ClientState client) throws IOException {
+        client.publish(); // Отправляем сообщение
+        client.flush(); // Не дожидаясь следующего запроса
+        client.readReply(); // Ждем подтверждения
+        client.fetch(1); // Забираем сообщение обратно
+        client.flush(); // Отправляем запрос
+        return client.readReply(); // Ждем сообщение
+    }
+
+    // Метод для конвейерной отправки: PIPELINE_DEPTH сообщений и одна выборка всех сразу
+    private static byte pipelined(ClientState client) throws IOException {
+        for (int i = 0; i < PIPELINE_DEPTH; i++) { // Для каждого сообщения
+            client.publish(); // Кладем запрос в буфер
+        }
+        client.fetch(PIPELINE_DEPTH); // Выборка всех отправленных сообщений
+        client.flush(); // Отправляем все запросы одной записью
+        for (int i = 0; i < PIPELINE_DEPTH; i++) { // Для каждого сообщения
+            client.readReply(); // Читаем подтверждение
+        }
+        return client.readReply(); // Читаем выборку
+    }
+
+    // Отправка и получение одного сообщения, одно соединение
+    @Benchmark
+    @Threads(1)
+    public byte publishConsume1(ClientState client) throws IOException {
+        return publishConsume(client); // Полный цикл одного сообщения
+    }
+
+    // Отправка и получение одного сообщения, четыре соединения
+    @Benchmark
+    @Threads(4)
+    public byte publishConsume4(ClientState client) throws IOException {
+        return publishConsume(client); // Полный цикл одного сообщения
+    }
+
+    // Конвейерная отправка, одно соединение (время и пропускная способность - на одно сообщение)
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public byte pipelined1(ClientState client) throws IOException {
+        return pipelined(client); // Конвейер сообщений
+    }
+
+    // Конвейерная отправка, четыре соединения
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public byte pipelined4(ClientState client) throws IOException {
+        return pipelined(client); // Конвейер сообщений
+    }
+}
@@ -0,0 +1,110 @@
+package org.broker;
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import org.openjdk.jmh.annotations.Benchmark; // Импортируем аннотации JMH
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Микротесты добавления и извлечения сообщений MessageQueue при разном числе потоков.
+// Число потоков offerPoll можно переопределить ключом -t при запуске benchmarks.jar.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    private static final int MAX_DEPTH = 100_000; // Производители ждут, чтобы очередь не росла без предела
+
+    // Очередь, общая для всех потоков теста
+    @State(Scope.Benchmark)
+    public static class SharedQueue {
+
+        @Param({"16", "1024"})
+        int payloadSize; // Размер сообщения в байтах
+
+        MessageQueue queue; // Очередь под нагрузкой
+        ByteBuffer payload; // Сообщение (буфер не изменяется, как и в брокере)
+
+        // Метод для подготовки очереди и сообщения
+        @Setup
+        public void setup() {
+            queue = new MessageQueue("bench"); // Очередь только в памяти
+            payload = ByteBuffer.allocate(payloadSize); // Сообщение заданного размера
+        }
+    }
+
+    // Очередь, общая для потоков одной группы производителей и потребителей
+    @State(Scope.Group)
+    public static class GroupQueue extends SharedQueue {
+    }
+
+    // Каждый поток добавляет сообщение и сразу извлекает одно - одиночный поток
+    @Benchmark
+    @Threads(1)
+    public ByteBuffer offerPoll1(SharedQueue state) {
+        state.queue.offer(state.payload); // Добавляем сообщение
+        return state.queue.poll(); // Извлекаем сообщение
+    }
+
+    // То же самое в четыре потока на одной очереди
+    @Benchmark
+    @Threads(4)
+    public ByteBuffer offerPoll4(SharedQueue state) {
+        state.queue.offer(state.payload); // Добавляем сообщение
+        return state.queue.poll(); // Извлекаем сообщение
+    }
+
+    // Один производитель и один потребитель
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public boolean spscOffer(GroupQueue state) {
+        return offerBounded(state); // Добавляем сообщение
+    }
+
+    // Потребитель группы spsc
+    @Benchmark
+    @Group("spsc")
+    @GroupThreads(1)
+    public ByteBuffer spscPoll(GroupQueue state) {
+        return state.queue.poll(); // Извлекаем сообщение (null, если очередь пуста)
+    }
+
+    // Четыре производителя и четыре потребителя
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(4)
+    public boolean mpmcOffer(GroupQueue state) {
+        return offerBounded(state); // Добавляем сообщение
+    }
+
+    // Потребители группы mpmc
+    @Benchmark
+    @Group("mpmc")
+    @GroupThreads(4)
+    public ByteBuffer mpmcPoll(GroupQueue state) {
+        return state.queue.poll(); // Извлекаем сообщение (null, если очередь пуста)
+    }
+
+    // Метод для добавления сообщения, только если очередь не переполнена
+    private static boolean offerBounded(SharedQueue state) {
+        if (state.queue.getDepth() >= MAX_DEPTH) { // Если потребители отстают
+            Thread.onSpinWait(); // Даем им догнать
+            return false; // Сообщение не добавлено
+        }
+        return state.queue.offer(state.payload); // Добавляем сообщение
+    }
+}
@@ -0,0 +1,283 @@
+package org.broker;
+
+import java.nio.BufferUnderflowException; // Импортируем исключение нехватки данных в буфере
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.ArrayList; // Импортируем список для пакетной выборки
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.ExecutionException; // Импортируем исключение асинхронной операции
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import java.util.concurrent.TimeoutException; // Импортируем исключение истечения времени
+import java.util.function.Consumer; // Импортируем функциональный интерфейс потребителя
+
+// Двоичный протокол брокера с кадрами фиксированного формата и идентификаторами корреляции.
+//
+// Клиент начинает соединение с байтов MAGIC и VERSION, после чего шлет кадры запросов:
+//   [int длина][byte код операции][int идентификатор корреляции][short длина имени][имя очереди UTF-8][тело]
+// Сервер отвечает кадрами в порядке поступления запросов:
+//   [int длина][byte код операции][int идентификатор корреляции][byte код статуса][тело]
+// Длина кадра не включает сами 4 байта длины. Клиент может отправлять запросы, не дожидаясь ответов.
+//
+// В кластере запрос к очереди другого узла пересылается ее владельцу, и ответ на него может прийти
+// позже ответов на следующие запросы: клиент должен сопоставлять ответы по идентификатору корреляции.
+// Пересланный кадр помечается битом FLAG_FORWARDED в коде операции, и владелец выполняет его сам, не пересылая дальше.
+public final class BinaryProtocol {
+
+    public static final byte MAGIC = (byte) 0xB7; // Первый байт двоичного соединения (не может начинать текстовую команду в UTF-8)
+    public static final byte VERSION = 1; // Версия протокола
+
+    public static final byte OP_OPEN = 1; // Создать очередь, если ее нет (тело пустое или int число разделов)
+    public static final byte OP_PUBLISH = 2; // Добавить одно сообщение (тело - байты сообщения)
+    public static final byte OP_PUBLISH_BATCH = 3; // Добавить N сообщений (тело - int N, затем N раз [int длина][байты])
+    public static final byte OP_FETCH = 4; // Извлечь до N сообщений (тело - int N, затем необязательный int ожидание в мс)
+    public static final byte OP_PUBLISH_KEYED = 5; // Добавить сообщение с ключом раздела (тело - [short длина ключа][ключ UTF-8][байты])
+
+    public static final byte STATUS_OK = 0; // Операция выполнена
+    public static final byte STATUS_CREATED = 1; // Очередь создана
+    public static final byte STATUS_EXISTS = 2; // Очередь уже существует
+    public static final byte STATUS_EMPTY = 3; // Очередь пуста
+    public static final byte STATUS_NOT_FOUND = 4; // Очередь не существует
+    public static final byte STATUS_BAD_REQUEST = 5; // Кадр запроса поврежден
+    public static final byte STATUS_UNKNOWN_OPCODE = 6; // Неизвестный код операции
+    public static final byte STATUS_FULL = 7; // Очередь переполнена, сообщение отклонено (политика reject)
+    public static final byte STATUS_UNAVAILABLE = 8; // Узел-владелец очереди недоступен
+
+    static final byte FLAG_FORWARDED = (byte) 0x80; // Признак кадра, пересланного другим узлом кластера
+
+    public static final int HEADER_LENGTH = 1 + 4 + 2; // Код операции, идентификатор корреляции и длина имени очереди
+    public static final int MAX_FRAME_LENGTH = Integer.getInteger("broker.maxFrameBytes", 16 * 1024 * 1024); // Наибольшая допустимая длина кадра
+
+    private BinaryProtocol() { // Экземпляры не нужны, все методы статические
+    }
+
+    // Метод для обработки одного кадра запроса (без 4 байтов длины); возвращает готовый кадр ответа частями для групповой записи.
+    // Сообщения сохраняются как срезы буфера запроса, поэтому буфер запроса после вызова нельзя переиспользовать.
+    // Выборка с ожиданием здесь не ждет: пустая очередь сразу дает STATUS_EMPTY
+    public static ByteBuffer[] handle(ByteBuffer request) {
+        return handle(request, null, null); // Без ожидания
+    }
+
+    // Метод для обработки кадра запроса соединением, которое умеет отправлять ответы позже: выборка с ожиданием из пустой
+    // очереди ставит потребителя в consumers соединения и возвращает null, а ответ придет через later
+    public static ByteBuffer[] handle(ByteBuffer request, List<Subscriber> consumers, Consumer<ByteBuffer[]> later) {
+        long start = System.nanoTime(); // Начало обработки
+        byte opcode = 0; // Код операции
+        int correlationId = 0; // Идентификатор корреляции
+        try {
+            opcode = (byte) (request.get() & ~FLAG_FORWARDED); // Читаем код операции без признака пересылки
+            correlationId = request.getInt(); // Читаем идентификатор корреляции
+            byte[] nameBytes = new byte[request.getShort() & 0xFFFF]; // Буфер для имени очереди
+            request.get(nameBytes); // Читаем имя очереди
+            String queueName = new String(nameBytes, StandardCharsets.UTF_8); // Преобразуем имя в строку
+
+            switch (opcode) {
+                case OP_OPEN: // Создание очереди
+                    int partitions = request.remaining() >= 4 ? request.getInt() : 1; // Число разделов (по умолчанию один)
+                    MessageQueue created = Server.namedQueues.createIfAbsent(queueName, partitions); // Атомарно создаем очередь
+                    if (created == null) { // Если очередь уже была
+                        return status(opcode, correlationId, STATUS_EXISTS); // Сообщаем, что она существует
+                    }
+                    Server.startQueueTimer(created); // Ставим очередь под наблюдение колеса таймеров
+                    return status(opcode, correlationId, STATUS_CREATED); // Сообщаем о создании
+                case OP_PUBLISH: // Одно сообщение
+                    return publish(opcode, correlationId, queueName, null, List.of(request.slice())); // Добавляем сообщение без копирования
+                case OP_PUBLISH_KEYED: // Одно сообщение с ключом
+                    byte[] keyBytes = new byte[request.getShort() & 0xFFFF]; // Буфер для ключа
+                    request.get(keyBytes); // Читаем ключ
+                    String key = new String(keyBytes, StandardCharsets.UTF_8); // Преобразуем ключ в строку
+                    return publish(opcode, correlationId, queueName, key, List.of(request.slice())); // Добавляем сообщение в раздел ключа
+                case OP_PUBLISH_BATCH: // Пакет сообщений
+                    int count = request.getInt(); // Количество сообщений в пакете
+                    if (count < 0) { // Отрицательное количество недопустимо
+                        return status(opcode, correlationId, STATUS_BAD_REQUEST); // Сообщаем об ошибке
+                    }
+                    List<ByteBuffer> batch = new ArrayList<>(Math.min(count, 1024)); // Сообщения пакета
+                    for (int i = 0; i < count; i++) { // Для каждого сообщения
+                        int length = request.getInt(); // Длина сообщения
+                        if (length < 0 || length > request.remaining()) { // Сообщение выходит за границы кадра
+                            return status(opcode, correlationId, STATUS_BAD_REQUEST); // Сообщаем об ошибке
+                        }
+                        batch.add(request.slice(request.position(), length)); // Срез кадра вместо копии
+                        request.position(request.position() + length); // Переходим к следующему сообщению
+                    }
+                    return publish(opcode, correlationId, queueName, null, batch); // Добавляем весь пакет
+                case OP_FETCH: // Выборка сообщений
+                    int max = request.getInt(); // Наибольшее число сообщений
+                    int waitMillis = request.remaining() >= 4 && later != null ? request.getInt() : 0; // Время ожидания (старые клиенты его не передают)
+                    return fetch(opcode, correlationId, queueName, max, waitMillis, consumers, later); // Извлекаем до N сообщений
+                default: // Неизвестная операция
+                    return status(opcode, correlationId, STATUS_UNKNOWN_OPCODE); // Сообщаем об ошибке
+            }
+        } catch (BufferUnderflowException e) { // Кадр короче, чем заявлено в его полях
+            return status(opcode, correlationId, STATUS_BAD_REQUEST); // Сообщаем об ошибке
+        } finally {
+            Server.metrics.binary.recordSince(start); // Учитываем время обработки кадра
+        }
+    }
+
+    // Метод для пересылки кадра запроса узлу-владельцу очереди; null, если запрос нужно выполнить на этом узле.
+    // Результат - готовый кадр ответа с идентификатором корреляции клиента; он никогда не завершается с ошибкой
+    static CompletableFuture<ByteBuffer[]> forward(ByteBuffer request) {
+        if (!Cluster.ENABLED || request.limit() < HEADER_LENGTH || (request.get(0) & FLAG_FORWARDED) != 0) { // Кластера нет или кадр уже переслан
+            return null; // Выполняем запрос здесь
+        }
+        String queueName = queueName(request); // Имя очереди
+        byte opcode = request.get(0); // Код операции
+        if (queueName == null || (opcode == OP_FETCH ? Cluster.isLocal(queueName) : Cluster.acceptsLocally(queueName))) { // Очередь принадлежит этому узлу или еще передается (поврежденный кадр тоже разбирает handle)
+            return null; // Выполняем запрос здесь
+        }
+        int correlationId = request.getInt(1); // Идентификатор корреляции клиента
+        int bodyStart = HEADER_LENGTH + (request.getShort(5) & 0xFFFF); // Начало тела
+        ByteBuffer body = request.slice(bodyStart, request.limit() - bodyStart); // Тело без копирования
+        return Cluster.forward(Cluster.owner(queueName), forwardTimeoutMillis(request), opcode, queueName, body).handle((reply, error) -> { // Пересылаем владельцу
+            if (error != null) { // Владелец недоступен
+                return status(opcode, correlationId, STATUS_UNAVAILABLE); // Сообщаем об ошибке
+            }
+            ByteBuffer head = header(opcode, correlationId, reply.get(), reply.remaining(), 0); // Заголовок со статусом владельца
+            head.flip(); // Готовим буфер к чтению - тело передается отдельной частью
+            return new ByteBuffer[] {head, reply}; // Ответ владельца с идентификатором клиента
+        });
+    }
+
+    // Метод для получения времени ожидания ответа владельца на пересланный кадр запроса
+    private static long forwardTimeoutMillis(ByteBuffer request) {
+        int bodyStart = HEADER_LENGTH + (request.getShort(5) & 0xFFFF); // Начало тела
+        long timeoutMillis = Cluster.FORWARD_TIMEOUT_MILLIS; // Сколько ждать ответа владельца
+        if (request.get(0) == OP_FETCH && request.limit() - bodyStart >= 8) { // Выборка с ожиданием отвечает не раньше, чем истечет ожидание
+            timeoutMillis += Math.max(0, request.getInt(bodyStart + 4)); // Владелец ждет сообщение сам
+        }
+        return timeoutMillis; // Возвращаем время ожидания
+    }
+
+    // Метод для ожидания ответа на кадр, пересланный через forward, в блокирующем режиме: поток клиента ждет не дольше
+    // времени ожидания пересылки и при его истечении получает STATUS_UNAVAILABLE, как при недоступном владельце
+    static ByteBuffer[] await(CompletableFuture<ByteBuffer[]> forwarded, ByteBuffer request) {
+        try {
+            return forwarded.get(forwardTimeoutMillis(request), TimeUnit.MILLISECONDS); // Ждем ответ владельца
+        } catch (InterruptedException e) { // Поток клиента прерван
+            Thread.currentThread().interrupt(); // Сохраняем признак прерывания
+            return status(request.get(0), request.getInt(1), STATUS_UNAVAILABLE); // Ответа нет
+        } catch (ExecutionException | TimeoutException e) { // Владелец не ответил вовремя
+            return status(request.get(0), request.getInt(1), STATUS_UNAVAILABLE); // Тот же ответ, что и при ошибке пересылки
+        }
+    }
+
+    // Метод для получения имени очереди, в которую добавляет сообщения кадр запроса; null, если это не добавление.
+    // Читает кадр по абсолютным смещениям, поэтому его можно вызывать и после handle
+    static String publishTarget(ByteBuffer request) {
+        if (request.limit() < HEADER_LENGTH) { // Если кадр короче заголовка
+            return null; // Имени нет
+        }
+        byte opcode = (byte) (request.get(0) & ~FLAG_FORWARDED); // Код операции (пересланные сообщения тоже приостанавливают соединение)
+        if (opcode != OP_PUBLISH && opcode != OP_PUBLISH_BATCH && opcode != OP_PUBLISH_KEYED) { // Если это не добавление
+            return null; // Производителя приостанавливать не из-за чего
+        }
+        return queueName(request); // Имя очереди
+    }
+
+    // Метод для чтения имени очереди из кадра запроса по абсолютным смещениям; null, если кадр поврежден
+    private static String queueName(ByteBuffer request) {
+        if (request.limit() < HEADER_LENGTH) { // Если кадр короче заголовка
+            return null; // Имени нет
+        }
+        int nameLength = request.getShort(5) & 0xFFFF; // Длина имени очереди
+        if (request.limit() < HEADER_LENGTH + nameLength) { // Если имя не помещается в кадр
+            return null; // Имени нет
+        }
+        byte[] name = new byte[nameLength]; // Буфер для имени
+        request.get(HEADER_LENGTH, name); // Читаем имя, не меняя позицию
+        return new String(name, StandardCharsets.UTF_8); // Преобразуем имя в строку
+    }
+
+    // Метод для добавления сообщений в очередь (key - ключ раздела или null); тело ответа - количество добавленных сообщений
+    private static ByteBuffer[] publish(byte opcode, int correlationId, String queueName, String key, List<ByteBuffer> batch) {
+        MessageQueue queue = Server.namedQueues.get(queueName); // Получаем очередь по имени
+        if (queue == null) { // Если очередь не существует
+            return status(opcode, correlationId, STATUS_NOT_FOUND); // Сообщаем об ошибке
+        }
+        int accepted = 0; // Количество добавленных сообщений
+        for (ByteBuffer payload : batch) { // Для каждого сообщения пакета
+            if (!queue.offer(payload, key)) { // Если очередь удалили во время добавления
+                break; // Прекращаем добавление
+            }
+            accepted++; // Увеличиваем счетчик
+        }
+        if (accepted == 0 && !batch.isEmpty()) { // Ничего не добавлено - очередь была удалена или переполнена
+            return status(opcode, correlationId, queue.isClosed() ? STATUS_NOT_FOUND : STATUS_FULL); // Сообщаем об ошибке
+        }
+        ByteBuffer response = header(opcode, correlationId, STATUS_OK, 4, 4); // Ответ с количеством сообщений
+        response.putInt(accepted); // Записываем количество
+        response.flip(); // Готовим буфер к чтению
+        return new ByteBuffer[] {response}; // Возвращаем ответ
+    }
+
+    // Метод для извлечения до max сообщений; тело ответа - int N, затем N раз [int длина][байты].
+    // Если очередь пуста и waitMillis больше нуля, соединение ждет одно сообщение (как receive с таймаутом):
+    // ответ с ним или STATUS_EMPTY по истечении времени придет через later, а метод вернет null
+    private static ByteBuffer[] fetch(byte opcode, int correlationId, String queueName, int max, int waitMillis,
+            List<Subscriber> consumers, Consumer<ByteBuffer[]> later) {
+        MessageQueue queue = Server.namedQueues.get(queueName); // Получаем очередь по имени
+        if (queue == null) { // Если очередь не существует
+            return status(opcode, correlationId, STATUS_NOT_FOUND); // Сообщаем об ошибке
+        }
+        List<ByteBuffer> messages = new ArrayList<>(); // Извлеченные сообщения
+        long bodyLength = 4; // Длина тела ответа
+        long room = Long.MAX_VALUE; // Первое сообщение отдается при любой длине, иначе очередь встанет на нем
+        ByteBuffer message; // Переменная для очередного сообщения
+        while (messages.size() < max && (message = queue.poll(room)) != null) { // Пока не набрали max и следующее сообщение помещается в кадр
+            messages.add(message); // Добавляем сообщение в ответ
+            bodyLength += 4 + message.remaining(); // Учитываем длину сообщения
+            room = MAX_FRAME_LENGTH - (1 + 4 + 1) - bodyLength - 4; // Сколько байтов тела еще помещается в кадр
+        }
+        if (messages.isEmpty() && (waitMillis <= 0 || max <= 0 || queue instanceof PartitionedQueue)) { // Если ничего не извлечено и ждать не нужно (разделы раздаются только группам)
+            return status(opcode, correlationId, STATUS_EMPTY); // Сообщаем, что очередь пуста
+        }
+        if (messages.isEmpty()) { // Если очередь пуста, а клиент готов ждать
+            Waiter waiter = new Waiter(queue, // Ожидающий потребитель
+                    m -> later.accept(messages(opcode, correlationId, List.of(m), 4 + 4 + m.remaining())), // Ответ, когда сообщение придет
+                    () -> later.accept(status(opcode, correlationId, STATUS_EMPTY))); // Ответ, если время истечет
+            consumers.removeIf(c -> !c.isActive()); // Забываем завершенных потребителей соединения
+            consumers.add(waiter); // Запоминаем ожидание, чтобы отменить его при отключении клиента
+            waiter.start(waitMillis); // Начинаем ожидание
+            return null; // Ответ будет отправлен позже
+        }
+        return messages(opcode, correlationId, messages, bodyLength); // Ответ с сообщениями
+    }
+
+    // Метод для создания ответа на выборку из извлеченных сообщений; байты сообщений не копируются:
+    // каждое передается в сокет отдельной частью групповой записи
+    private static ByteBuffer[] messages(byte opcode, int correlationId, List<ByteBuffer> messages, long bodyLength) {
+        ByteBuffer[] response = new ByteBuffer[1 + messages.size() * 2]; // Заголовок, затем длина и тело каждого сообщения
+        ByteBuffer lengths = ByteBuffer.allocate(messages.size() * 4); // Все поля длины в одном буфере
+        response[0] = header(opcode, correlationId, STATUS_OK, bodyLength, 4); // Заголовок ответа с местом под количество
+        response[0].putInt(messages.size()).flip(); // Записываем количество сообщений
+        for (int i = 0; i < messages.size(); i++) { // Для каждого сообщения
+            ByteBuffer payload = messages.get(i); // Сообщение
+            lengths.putInt(payload.remaining()); // Записываем его длину
+            response[1 + i * 2] = lengths.slice(i * 4, 4); // Поле длины
+            response[2 + i * 2] = payload.duplicate(); // Тело сообщения как есть
+        }
+        return response; // Возвращаем ответ
+    }
+
+    // Метод для создания ответа, состоящего только из кода статуса
+    static ByteBuffer[] status(byte opcode, int correlationId, byte status) {
+        ByteBuffer response = header(opcode, correlationId, status, 0, 0); // Ответ без тела
+        response.flip(); // Готовим буфер к чтению
+        return new ByteBuffer[] {response}; // Возвращаем ответ
+    }
+
+    // Метод для создания буфера заголовка ответа: тело длиной bodyLength идет следом отдельными частями,
+    // кроме первых inlineLength байтов, которые вызывающий дописывает в этот же буфер
+    static ByteBuffer header(byte opcode, int correlationId, byte status, long bodyLength, int inlineLength) {
+        long length = 1 + 4 + 1 + bodyLength; // Длина кадра без поля длины
+        if (length > Integer.MAX_VALUE) { // Длина кадра передается четырьмя байтами
+            throw new IllegalArgumentException("Ответ длиннее " + Integer.MAX_VALUE + " байт"); // Такой кадр не передать
+        }
+        ByteBuffer response = ByteBuffer.allocate(4 + 1 + 4 + 1 + inlineLength); // Буфер только под заголовок и начало тела
+        response.putInt((int) length); // Длина кадра без поля длины
+        response.put(opcode).putInt(correlationId).put(status); // Заголовок ответа
+        return response; // Возвращаем буфер, готовый к записи начала тела
+    }
+}
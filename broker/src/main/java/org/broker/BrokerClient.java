@@ -0,0 +1,245 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.ArrayList; // Импортируем список
+import java.util.Collections; // Импортируем пустой список
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.CompletionException; // Импортируем обертку ошибки результата
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем атомарный счетчик
+
+// Асинхронный клиент брокера для встраивания в программы (в отличие от консольного Client).
+// Работает по двоичному протоколу: каждое соединение пула передает много запросов, не дожидаясь ответов,
+// а ответы сопоставляются с запросами по идентификатору корреляции. Клиент можно использовать из любых потоков.
+//
+// Результаты завершаются в потоке чтения соединения, поэтому долгую обработку лучше выполнять
+// через thenApplyAsync и подобные методы со своим исполнителем.
+public class BrokerClient implements AutoCloseable {
+
+    private final String host; // Адрес брокера
+    private final int port; // Порт брокера
+    private final BrokerConnection[] pool; // Пул соединений
+    private final AtomicInteger next = new AtomicInteger(); // Номер соединения для следующего запроса
+    private volatile boolean closed; // Закрыт ли клиент
+
+    // Конструктор, создающий одно соединение с брокером
+    public BrokerClient(String host, int port) throws IOException {
+        this(host, port, 1); // Одно соединение
+    }
+
+    // Конструктор, создающий пул из connections соединений
+    public BrokerClient(String host, int port, int connections) throws IOException {
+        this.host = host; // Сохраняем адрес
+        this.port = port; // Сохраняем порт
+        this.pool = new BrokerConnection[Math.max(1, connections)]; // Хотя бы одно соединение
+        try {
+            for (int i = 0; i < pool.length; i++) { // Для каждого места в пуле
+                pool[i] = new BrokerConnection(host, port); // Подключаемся
+            }
+        } catch (IOException e) { // Если подключиться не удалось
+            close(); // Закрываем уже открытые соединения
+            throw e; // Сообщаем об ошибке
+        }
+    }
+
+    // Метод для создания очереди; результат - true, если очередь создана, и false, если она уже была
+    public CompletableFuture<Boolean> open(String queueName) {
+        return open(queueName, 1); // Обычная очередь
+    }
+
+    // Метод для создания очереди из partitions разделов; если очередь уже есть, число ее разделов не меняется
+    public CompletableFuture<Boolean> open(String queueName, int partitions) {
+        ByteBuffer body = ByteBuffer.allocate(4).putInt(partitions).flip(); // Тело запроса - число разделов
+        return request(BinaryProtocol.OP_OPEN, queueName, body).thenApply(reply -> { // Отправляем запрос
+            byte status = reply.get(); // Код статуса
+            if (status == BinaryProtocol.STATUS_CREATED || status == BinaryProtocol.STATUS_EXISTS) { // Очередь есть
+                return status == BinaryProtocol.STATUS_CREATED; // Создана ли она этим запросом
+            }
+            throw error(status, queueName); // Иначе сообщаем об ошибке
+        });
+    }
+
+    // Метод для добавления одного сообщения; буфер не изменяется и не должен меняться до завершения результата
+    public CompletableFuture<Void> publish(String queueName, ByteBuffer payload) {
+        return request(BinaryProtocol.OP_PUBLISH, queueName, payload).thenApply(reply -> { // Отправляем запрос
+            checkOk(reply.get(), queueName); // Проверяем статус
+            return null; // Результата нет
+        });
+    }
+
+    // Метод для добавления сообщения с ключом: сообщения с одинаковым ключом попадают в один раздел и сохраняют порядок
+    public CompletableFuture<Void> publish(String queueName, String key, ByteBuffer payload) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8); // Ключ в UTF-8
+        if (keyBytes.length > 0xFFFF) { // Длина ключа передается двумя байтами
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Слишком длинный ключ")); // Сообщаем об ошибке
+        }
+        ByteBuffer head = ByteBuffer.allocate(2 + keyBytes.length); // Длина и байты ключа
+        head.putShort((short) keyBytes.length).put(keyBytes).flip(); // Заполняем заголовок тела
+        return request(BinaryProtocol.OP_PUBLISH_KEYED, queueName, head, payload).thenApply(reply -> { // Отправляем запрос
+            checkOk(reply.get(), queueName); // Проверяем статус
+            return null; // Результата нет
+        });
+    }
+
+    // Метод для добавления одного сообщения из массива байтов
+    public CompletableFuture<Void> publish(String queueName, byte[] payload) {
+        return publish(queueName, ByteBuffer.wrap(payload)); // Оборачиваем массив без копирования
+    }
+
+    // Метод для добавления пакета сообщений одним кадром; результат - количество добавленных сообщений
+    public CompletableFuture<Integer> publishBatch(String queueName, List<ByteBuffer> payloads) {
+        ByteBuffer[] body = new ByteBuffer[1 + payloads.size() * 2]; // Количество, затем длина и байты каждого сообщения
+        ByteBuffer lengths = ByteBuffer.allocate(4 + payloads.size() * 4); // Все числовые поля в одном буфере
+        lengths.putInt(payloads.size()); // Количество сообщений
+        body[0] = lengths.slice(0, 4); // Поле количества
+        for (int i = 0; i < payloads.size(); i++) { // Для каждого сообщения
+            ByteBuffer payload = payloads.get(i); // Сообщение
+            lengths.putInt(payload.remaining()); // Его длина
+            body[1 + i * 2] = lengths.slice(4 + i * 4, 4); // Поле длины
+            body[2 + i * 2] = payload; // Байты сообщения без копирования
+        }
+        return request(BinaryProtocol.OP_PUBLISH_BATCH, queueName, body).thenApply(reply -> { // Отправляем запрос
+            checkOk(reply.get(), queueName); // Проверяем статус
+            return reply.getInt(); // Количество добавленных сообщений
+        });
+    }
+
+    // Метод для извлечения одного сообщения; результат - сообщение или null, если очередь пуста
+    public CompletableFuture<ByteBuffer> receive(String queueName) {
+        return receive(queueName, 0); // Без ожидания
+    }
+
+    // Метод для извлечения одного сообщения с ожиданием до waitMillis, если очередь пуста; результат - null, если время истекло
+    public CompletableFuture<ByteBuffer> receive(String queueName, int waitMillis) {
+        return fetch(queueName, 1, waitMillis).thenApply(messages -> messages.isEmpty() ? null : messages.get(0)); // Выборка одного сообщения
+    }
+
+    // Метод для извлечения до max сообщений; результат - пустой список, если очередь пуста
+    public CompletableFuture<List<ByteBuffer>> fetch(String queueName, int max) {
+        return fetch(queueName, max, 0); // Без ожидания
+    }
+
+    // Метод для извлечения до max сообщений; если очередь пуста, брокер ждет одно сообщение до waitMillis
+    // (в кластере ждет узел-владелец очереди), а по истечении времени результат - пустой список
+    public CompletableFuture<List<ByteBuffer>> fetch(String queueName, int max, int waitMillis) {
+        ByteBuffer body = waitMillis > 0 ? ByteBuffer.allocate(8).putInt(max).putInt(waitMillis).flip() // Число сообщений и время ожидания
+                : ByteBuffer.allocate(4).putInt(max).flip(); // Тело запроса - число сообщений
+        return request(BinaryProtocol.OP_FETCH, queueName, body).thenApply(reply -> { // Отправляем запрос
+            byte status = reply.get(); // Код статуса
+            if (status == BinaryProtocol.STATUS_EMPTY) { // Если очередь пуста
+                return Collections.<ByteBuffer>emptyList(); // Сообщений нет
+            }
+            checkOk(status, queueName); // Проверяем статус
+            int count = reply.getInt(); // Количество сообщений
+            List<ByteBuffer> messages = new ArrayList<>(count); // Сообщения
+            for (int i = 0; i < count; i++) { // Для каждого сообщения
+                int length = reply.getInt(); // Длина сообщения
+                messages.add(reply.slice(reply.position(), length)); // Срез кадра ответа без копирования
+                reply.position(reply.position() + length); // Переходим к следующему сообщению
+            }
+            return messages; // Возвращаем сообщения
+        });
+    }
+
+    // Метод для отправки запроса по очередному соединению пула
+    private CompletableFuture<ByteBuffer> request(byte opcode, String queueName, ByteBuffer... body) {
+        BrokerConnection connection; // Соединение для запроса
+        try {
+            connection = connection(); // Берем соединение по кругу
+        } catch (IOException e) { // Если соединение не удалось восстановить
+            return CompletableFuture.failedFuture(e); // Сообщаем об ошибке через результат
+        }
+        return connection.send(opcode, queueName, body); // Отправляем запрос
+    }
+
+    // Метод для пересылки запроса другим узлом кластера: к коду операции добавляется признак пересылки,
+    // а соединение выбирается по имени очереди, чтобы запросы к одной очереди приходили к владельцу по порядку.
+    // Ответ - остаток кадра ответа начиная с кода статуса, статус не проверяется. Буфер соединения не сбрасывается:
+    // пересылающий поток отправляет несколько запросов подряд и затем вызывает flush
+    CompletableFuture<ByteBuffer> forward(byte opcode, String queueName, ByteBuffer... body) {
+        BrokerConnection connection; // Соединение для запроса
+        try {
+            connection = connection(Math.floorMod(queueName.hashCode(), pool.length)); // Соединение этой очереди
+        } catch (IOException e) { // Если соединение не удалось восстановить
+            return CompletableFuture.failedFuture(e); // Сообщаем об ошибке через результат
+        }
+        return connection.send((byte) (opcode | BinaryProtocol.FLAG_FORWARDED), queueName, false, body); // Отправляем запрос
+    }
+
+    // Метод для отправки запросов, накопленных в буферах всех соединений пула
+    void flush() {
+        for (BrokerConnection connection : pool) { // Для каждого соединения
+            connection.flush(); // Сбрасываем его буфер
+        }
+    }
+
+    // Метод для выбора соединения по кругу
+    private BrokerConnection connection() throws IOException {
+        return connection(Math.floorMod(next.getAndIncrement(), pool.length)); // Номер соединения
+    }
+
+    // Метод для получения соединения с номером index; закрытое соединение заменяется новым
+    private BrokerConnection connection(int index) throws IOException {
+        if (closed) { // Если клиент закрыт
+            throw new IOException("Клиент закрыт"); // Запросы больше не принимаются
+        }
+        BrokerConnection connection = pool[index]; // Соединение
+        if (connection.isOpen()) { // Если оно работает
+            return connection; // Используем его
+        }
+        synchronized (pool) { // Переподключается только один поток
+            if (!pool[index].isOpen() && !closed) { // Если соединение еще не заменили
+                pool[index] = new BrokerConnection(host, port); // Подключаемся заново (запросы упавшего соединения уже завершены с ошибкой)
+            }
+            return pool[index]; // Возвращаем рабочее соединение
+        }
+    }
+
+    // Метод для проверки, что запрос выполнен успешно
+    private static void checkOk(byte status, String queueName) {
+        if (status != BinaryProtocol.STATUS_OK) { // Если брокер сообщил об ошибке
+            throw error(status, queueName); // Завершаем результат с ошибкой
+        }
+    }
+
+    // Метод для создания ошибки по коду статуса; CompletionException результат не оборачивает повторно,
+    // поэтому причиной ошибки результата (getCause у ExecutionException и CompletionException) будет BrokerException
+    private static CompletionException error(byte status, String queueName) {
+        String message; // Текст ошибки
+        switch (status) {
+            case BinaryProtocol.STATUS_NOT_FOUND:
+                message = "Очередь '" + queueName + "' не существует."; // Очереди нет
+                break;
+            case BinaryProtocol.STATUS_BAD_REQUEST:
+                message = "Брокер не смог разобрать запрос."; // Поврежденный кадр
+                break;
+            case BinaryProtocol.STATUS_FULL:
+                message = "Очередь '" + queueName + "' переполнена, сообщение отклонено."; // Сработала политика reject
+                break;
+            case BinaryProtocol.STATUS_UNKNOWN_OPCODE:
+                message = "Брокер не поддерживает операцию."; // Неизвестный код операции
+                break;
+            case BinaryProtocol.STATUS_UNAVAILABLE:
+                message = "Узел-владелец очереди '" + queueName + "' недоступен."; // Узел кластера не смог переслать запрос
+                break;
+            default:
+                message = "Неожиданный код статуса " + status + "."; // Любой другой статус
+        }
+        return new CompletionException(new BrokerException(message, status)); // Ошибка с кодом статуса
+    }
+
+    // Метод для закрытия всех соединений; незавершенные запросы завершаются с ошибкой
+    @Override
+    public void close() {
+        closed = true; // Новые запросы не принимаются
+        synchronized (pool) { // Не пересекаемся с переподключением
+            for (BrokerConnection connection : pool) { // Для каждого соединения
+                if (connection != null) { // Если оно было открыто
+                    connection.close(); // Закрываем его
+                }
+            }
+        }
+    }
+}
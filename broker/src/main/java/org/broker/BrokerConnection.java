@@ -0,0 +1,177 @@
+package org.broker;
+
+import java.io.BufferedInputStream; // Импортируем буферизованный поток ввода
+import java.io.BufferedOutputStream; // Импортируем буферизованный поток вывода
+import java.io.DataInputStream; // Импортируем поток для чтения чисел в сетевом порядке байтов
+import java.io.DataOutputStream; // Импортируем поток для записи чисел в сетевом порядке байтов
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.net.Socket; // Импортируем класс для работы с сокетами
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.Map; // Импортируем интерфейс отображения
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.ConcurrentHashMap; // Импортируем потокобезопасную хеш-таблицу
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем атомарный счетчик
+
+// Одно соединение двоичного протокола. Любой поток может отправлять запросы, не дожидаясь ответов;
+// отдельный поток чтения сопоставляет ответы с запросами по идентификатору корреляции.
+class BrokerConnection implements AutoCloseable {
+
+    private final Socket socket; // Сокет соединения
+    private final DataOutputStream out; // Буферизованный поток запросов
+    private final Map<Integer, CompletableFuture<ByteBuffer>> pending = new ConcurrentHashMap<>(); // Запросы, ожидающие ответа
+    private final AtomicInteger nextCorrelationId = new AtomicInteger(); // Идентификатор следующего запроса
+    private final AtomicInteger writers = new AtomicInteger(); // Потоки, которые пишут или ждут записи запроса
+    private volatile IOException failure; // Причина закрытия соединения или null, пока оно работает
+
+    // Конструктор, подключающийся к брокеру и запускающий поток чтения ответов
+    BrokerConnection(String host, int port) throws IOException {
+        socket = new Socket(host, port); // Подключаемся к брокеру
+        socket.setTcpNoDelay(true); // Запросы отправляются сразу после сброса буфера
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)); // Поток запросов
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024)); // Поток ответов
+        out.writeByte(BinaryProtocol.MAGIC); // Объявляем двоичный протокол
+        out.writeByte(BinaryProtocol.VERSION); // И его версию
+        out.flush(); // Отправляем приветствие
+
+        Thread reader = new Thread(() -> readLoop(in), "broker-client-reader"); // Поток чтения ответов
+        reader.setDaemon(true); // Поток не должен мешать завершению программы
+        reader.start(); // Запускаем поток
+    }
+
+    // Метод для проверки, работает ли соединение
+    boolean isOpen() {
+        return failure == null; // Соединение работает, пока не было ошибки или закрытия
+    }
+
+    // Метод для отправки запроса; тело передается частями без склейки. Ответ - остаток кадра ответа начиная с кода статуса.
+    // Если вызывающий завершит будущий ответ с ошибкой (например, по таймауту), запрос перестает ждать ответа
+    CompletableFuture<ByteBuffer> send(byte opcode, String queueName, ByteBuffer... body) {
+        return send(opcode, queueName, true, body); // Буфер сбрасывает последний из пишущих потоков
+    }
+
+    // Метод для отправки запроса; при flush = false буфер не сбрасывается, и вызывающий должен позже вызвать flush
+    CompletableFuture<ByteBuffer> send(byte opcode, String queueName, boolean flush, ByteBuffer... body) {
+        CompletableFuture<ByteBuffer> reply = new CompletableFuture<>(); // Будущий ответ
+        byte[] name = queueName.getBytes(StandardCharsets.UTF_8); // Имя очереди в UTF-8
+        if (name.length > 0xFFFF) { // Длина имени передается двумя байтами
+            reply.completeExceptionally(new IllegalArgumentException("Слишком длинное имя очереди")); // Сообщаем об ошибке
+            return reply; // Запрос не отправляется
+        }
+        long length = BinaryProtocol.HEADER_LENGTH + name.length; // Длина кадра без поля длины
+        for (ByteBuffer part : body) { // Для каждой части тела
+            length += part.remaining(); // Учитываем ее длину
+        }
+        if (length > BinaryProtocol.MAX_FRAME_LENGTH) { // Сервер закроет соединение на слишком длинном кадре
+            reply.completeExceptionally(new IllegalArgumentException("Кадр длиннее " + BinaryProtocol.MAX_FRAME_LENGTH + " байт")); // Сообщаем об ошибке
+            return reply; // Запрос не отправляется
+        }
+
+        writers.incrementAndGet(); // Отмечаемся до захвата блокировки, чтобы предыдущий писатель не сбрасывал буфер зря
+        synchronized (out) { // Кадры разных потоков не должны перемешиваться
+            try {
+                IOException closed = failure; // Текущее состояние соединения
+                if (closed != null) { // Если соединение уже закрыто
+                    throw closed; // Запрос не отправляется
+                }
+                int correlationId = nextCorrelationId.getAndIncrement(); // Идентификатор запроса
+                pending.put(correlationId, reply); // Регистрируем запрос до отправки - ответ может прийти сразу
+                reply.whenComplete((r, e) -> { // Запрос, завершенный снаружи (по таймауту), больше не ждет ответа
+                    if (e != null) { // Ответ не получен
+                        pending.remove(correlationId, reply); // Забываем запрос, поздний ответ будет пропущен
+                    }
+                });
+                if (failure != null) { // Соединение закрылось, пока мы регистрировались, и запрос мог не попасть в fail
+                    throw failure; // Запрос не отправляется
+                }
+                out.writeInt((int) length); // Длина кадра
+                out.writeByte(opcode); // Код операции
+                out.writeInt(correlationId); // Идентификатор корреляции
+                out.writeShort(name.length); // Длина имени очереди
+                out.write(name); // Имя очереди
+                for (ByteBuffer part : body) { // Для каждой части тела
+                    writeBuffer(part.duplicate()); // Пишем ее, не меняя позицию буфера вызывающего
+                }
+                if (writers.decrementAndGet() == 0 && flush) { // Если за нами никто не ждет записи
+                    out.flush(); // Отправляем накопленные кадры одной записью
+                }
+            } catch (IOException e) { // Обработка ошибок записи (счетчик писателей больше не важен - соединение закрывается)
+                fail(e); // Завершаем все ожидающие запросы с ошибкой
+                reply.completeExceptionally(e); // И этот запрос тоже
+            }
+        }
+        return reply; // Возвращаем будущий ответ
+    }
+
+    // Метод для отправки запросов, накопленных в буфере
+    void flush() {
+        synchronized (out) { // Не пересекаемся с записью кадров
+            try {
+                if (failure == null) { // Если соединение работает
+                    out.flush(); // Отправляем накопленные кадры
+                }
+            } catch (IOException e) { // Обработка ошибок записи
+                fail(e); // Завершаем все ожидающие запросы с ошибкой
+            }
+        }
+    }
+
+    // Метод для записи буфера в поток запросов
+    private void writeBuffer(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) { // Если у буфера есть массив
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()); // Пишем массив без копирования
+            return; // Выходим из метода
+        }
+        byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)]; // Буфер для копирования порциями
+        while (buffer.hasRemaining()) { // Пока есть байты
+            int n = Math.min(chunk.length, buffer.remaining()); // Размер порции
+            buffer.get(chunk, 0, n); // Копируем порцию
+            out.write(chunk, 0, n); // Пишем порцию
+        }
+    }
+
+    // Основной цикл потока чтения: кадр ответа читается целиком, даже если он пришел несколькими частями
+    private void readLoop(DataInputStream in) {
+        try {
+            while (true) { // Цикл чтения кадров
+                int length = in.readInt(); // Длина кадра
+                if (length < 6) { // Код операции, идентификатор и статус занимают 6 байтов
+                    throw new IOException("Поврежденный кадр ответа длиной " + length); // Поток рассинхронизирован
+                }
+                byte[] frame = new byte[length]; // Буфер под кадр
+                in.readFully(frame); // Читаем кадр целиком
+                ByteBuffer response = ByteBuffer.wrap(frame); // Кадр как буфер
+                response.get(); // Код операции не нужен - запрос определяется по идентификатору
+                CompletableFuture<ByteBuffer> reply = pending.remove(response.getInt()); // Запрос с этим идентификатором
+                if (reply != null) { // Если такой запрос был
+                    reply.complete(response.slice()); // Передаем статус и тело ответа
+                }
+            }
+        } catch (IOException e) { // Соединение закрыто или поток поврежден
+            fail(e); // Завершаем ожидающие запросы с ошибкой
+        }
+    }
+
+    // Метод для закрытия соединения из-за ошибки: все ожидающие запросы завершаются с этой ошибкой
+    private void fail(IOException cause) {
+        if (failure == null) { // Запоминаем только первую причину
+            failure = cause; // Соединение больше не работает
+        }
+        try {
+            socket.close(); // Закрываем сокет, поток чтения завершится
+        } catch (IOException ignored) { // Ошибку закрытия игнорируем
+        }
+        for (Integer correlationId : pending.keySet()) { // Для каждого ожидающего запроса
+            CompletableFuture<ByteBuffer> reply = pending.remove(correlationId); // Забираем его
+            if (reply != null) { // Если ответ еще не пришел
+                reply.completeExceptionally(failure); // Сообщаем об ошибке
+            }
+        }
+    }
+
+    // Метод для закрытия соединения
+    @Override
+    public void close() {
+        fail(new IOException("Соединение закрыто")); // Ожидающие запросы завершаются с ошибкой
+    }
+}
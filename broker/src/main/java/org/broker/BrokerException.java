@@ -0,0 +1,22 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+
+// Ошибка, о которой сообщил брокер кодом статуса двоичного протокола (очередь не существует, кадр поврежден и т.п.)
+public class BrokerException extends IOException {
+
+    private static final long serialVersionUID = 1L; // Версия формата сериализации
+
+    private final byte status; // Код статуса из ответа брокера
+
+    // Конструктор, принимающий текст ошибки и код статуса
+    public BrokerException(String message, byte status) {
+        super(message); // Передаем текст ошибки
+        this.status = status; // Сохраняем код статуса
+    }
+
+    // Метод для получения кода статуса (константы STATUS_* класса BinaryProtocol)
+    public byte getStatus() {
+        return status; // Возвращаем код статуса
+    }
+}
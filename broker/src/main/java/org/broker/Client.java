@@ -0,0 +1,236 @@
+package org.broker; // Определение пакета, в котором находится класс Client
+
+import java.io.*; // Импортируем классы для работы с вводом и выводом
+import java.net.Socket; // Импортируем класс для работы с сокетами
+import java.net.UnknownHostException; // Импортируем класс для обработки ошибок, связанных с незнакомыми хостами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.Map; // Импортируем интерфейс отображения
+import java.util.Scanner; // Импортируем класс Scanner для считывания пользовательского ввода
+import java.util.concurrent.ConcurrentHashMap; // Импортируем потокобезопасную хеш-таблицу
+import java.util.regex.Matcher; // Импортируем результат сопоставления с образцом
+import java.util.regex.Pattern; // Импортируем регулярные выражения
+
+public class Client {
+
+    public static final int PORT = Integer.getInteger("broker.port", 1234); // Порт сервера (тот же параметр, что и у сервера)
+
+    // Ответ узла кластера на subscribe/join для очереди другого узла (см. Cluster.redirect)
+    private static final Pattern REDIRECT = Pattern.compile("^Очередь '(.*)' обслуживает узел (\\S+), подключитесь к нему\\.$");
+
+    private DataInputStream inputStream; // Поток для чтения данных с сокета
+    private OutputStream outputStream; // Поток для записи данных в сокет
+    private final Map<String, String> awaitingRedirect = new ConcurrentHashMap<>(); // Команды subscribe/join по именам очередей, пока нет ответа
+    private final Map<String, OutputStream> routes = new ConcurrentHashMap<>(); // Соединения с узлами-владельцами по именам очередей
+    private final Map<String, OutputStream> owners = new ConcurrentHashMap<>(); // Соединения с узлами-владельцами по адресам
+    private Scanner scanner; // Объект Scanner для считывания пользовательского ввода
+    private String queueNameMes; // Переменная для хранения имени текущей очереди сообщений
+
+    public static void main(String[] args) { // Главный метод, точка входа в программу
+        new Client().startClient(); // Создаем экземпляр Client и запускаем метод startClient
+    }
+
+    public void startClient() { // Метод для запуска клиента
+        try (Socket socket = new Socket("localhost", PORT)) { // Устанавливаем соединение с сервером на localhost и указанном порту
+            scanner = new Scanner(System.in); // Инициализируем Scanner для считывания ввода с клавиатуры
+            inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream())); // Получаем буферизованный поток ввода для чтения данных от сервера
+            outputStream = new BufferedOutputStream(socket.getOutputStream()); // Получаем буферизованный поток вывода для отправки данных на сервер
+
+            System.out.print("Введите команду: "); // Запрашиваем у пользователя ввод команды
+
+            startReader(inputStream, "Сервер: "); // Запускаем поток для обработки сообщений
+
+            while (true) { // Бесконечный цикл для ввода команд
+                String command = scanner.nextLine().trim(); // Считываем введенную команду
+
+                if (command.isEmpty()) { // Если команда пустая
+                    System.out.println("Команда не должна быть пустой."); // Сообщаем об ошибке
+                    continue; // Продолжаем цикл
+                }
+
+                if (command.equalsIgnoreCase("exit")) { // Если команда "exit"
+                    System.out.println("Завершение работы клиента."); // Сообщаем о завершении работы
+                    break; // Выходим из цикла
+                }
+
+                if (command.equalsIgnoreCase("help")) { // Если команда "help"
+                    printHelp(); // Выводим справку по командам
+                    System.out.print("Введите команду: "); // Запрашиваем ввод следующей команды
+                    continue; // Продолжаем цикл
+                }
+
+                if (command.startsWith("message")) { // Если команда начинается с "message"
+                    String[] len = command.split(" ", 2); // Разделяем команду на части, чтобы получить длину сообщения
+                    sendMessage(len[1]); // Отправляем сообщение
+                } else {
+                    if (command.startsWith("send")) { // Если команда начинается с "send"
+                        String[] lenSend = command.split(" ", 2); // Разделяем команду на части, чтобы получить имя очереди
+                        queueNameMes = lenSend[1]; // Сохраняем имя очереди
+                    } else {
+                        if (command.startsWith("receive")) { // Если команда начинается с "receive"
+                            queueNameMes = null; // Сбрасываем имя очереди
+                        }
+                    }
+                    write(route(command), command); // Отправляем команду на сервер или узлу-владельцу очереди
+                }
+            }
+
+            /*send myQueue1
+              message 13
+              Hello, world1
+              receive myQueue1*/
+
+            /*send myQueue1
+              message 12
+              Hello world2
+              receive myQueue1
+            */
+
+            /*send jokesQueue
+              message 41
+              Why don’t scientists trust atoms? They...
+              receive jokesQueue
+            */
+
+            /*send myQueue4
+              message 10
+              OpenAI bot
+              receive myQueue4
+            */
+
+            /*send myQueue2
+              message 11
+              Hi there!!!
+              receive myQueue2
+           */
+
+        } catch (UnknownHostException e) { // Обработка исключения, если хост неизвестен
+            System.err.println("Не удалось подключиться к серверу: " + e.getMessage()); // Сообщаем об ошибке подключения
+        } catch (IOException e) { // Обработка исключения ввода-вывода
+            System.err.println("Ошибка ввода-вывода: " + e.getMessage()); // Сообщаем об ошибке ввода-вывода
+        } finally { // Блок finally для выполнения кода после завершения блока try
+            if (scanner != null) { // Если scanner не равен null
+                scanner.close(); // Закрываем Scanner
+            }
+        }
+    }
+
+    // Метод для запуска потока, который печатает ответы одного соединения; перенаправление subscribe/join
+    // к узлу-владельцу очереди выполняется автоматически
+    private void startReader(DataInputStream in, String prefix) {
+        Thread reader = new Thread(() -> { // Создаем новый поток для обработки входящих сообщений от сервера
+            try {
+                while (true) { // Бесконечный цикл для чтения сообщений
+                    int messageLength = in.readInt(); // Читаем 4 байта, которые содержат длину сообщения (ждем, пока придут все)
+
+                    byte[] messageBuffer = new byte[messageLength]; // Создаем буфер для чтения самого сообщения
+                    in.readFully(messageBuffer); // Читаем сообщение целиком, даже если оно пришло несколькими частями
+
+                    String message = new String(messageBuffer, StandardCharsets.UTF_8); // Преобразуем байты в строку
+                    Matcher redirect = REDIRECT.matcher(message.strip()); // Не перенаправление ли это (без перевода строки в конце ответа)
+                    String command = redirect.matches() ? awaitingRedirect.remove(redirect.group(1)) : null; // Команда, которую нужно повторить
+                    if (command != null) { // Если это ответ на нашу подписку
+                        follow(redirect.group(1), redirect.group(2), command); // Повторяем команду на узле-владельце
+                        continue; // Ответ придет от владельца
+                    }
+                    System.out.println(prefix + message); // Выводим сообщение от сервера
+
+                    System.out.print("Введите команду: "); // Запрашиваем ввод следующей команды
+                }
+            } catch (IOException e) { // Если сервер закрыл соединение или произошла ошибка ввода-вывода
+                System.out.println("Соединение потеряно."); // Сообщаем пользователю о потере соединения
+            }
+        });
+        reader.setDaemon(true); // Соединения с владельцами не должны мешать выходу по exit
+        reader.start(); // Запускаем поток для обработки сообщений
+    }
+
+    // Метод для повторения команды на узле-владельце очереди; дальнейшие ack/unsubscribe/leave этой очереди идут туда же
+    private void follow(String queueName, String node, String command) {
+        try {
+            OutputStream owner = owners.get(node); // Соединение с владельцем, если оно уже есть
+            if (owner == null) { // Если соединения еще нет
+                int colon = node.lastIndexOf(':'); // Двоеточие перед портом
+                Socket socket = new Socket(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1))); // Подключаемся к владельцу
+                startReader(new DataInputStream(new BufferedInputStream(socket.getInputStream())), "Узел " + node + ": "); // Его ответы печатаются отдельно
+                owner = new BufferedOutputStream(socket.getOutputStream()); // Поток для команд владельцу
+                owners.put(node, owner); // Запоминаем соединение
+            }
+            routes.put(queueName, owner); // Команды этой очереди теперь идут владельцу
+            write(owner, command); // Повторяем команду
+        } catch (IOException | RuntimeException e) { // Если подключиться не удалось
+            System.err.println("Не удалось подключиться к узлу " + node + ": " + e.getMessage()); // Сообщаем об ошибке
+        }
+    }
+
+    // Метод для выбора соединения для команды подписки: у очереди, перенаправленной к владельцу, это соединение с ним
+    private OutputStream route(String command) {
+        String[] parts = command.split(" ", 2); // Действие и аргументы
+        if (parts.length < 2 || !parts[0].matches("subscribe|ack|unsubscribe|join|leave")) { // Остальные команды выполняет сервер
+            return outputStream; // Основное соединение
+        }
+        for (Map.Entry<String, OutputStream> route : routes.entrySet()) { // Для каждой перенаправленной очереди
+            if (parts[1].equals(route.getKey()) || parts[1].startsWith(route.getKey() + " ")) { // Если команда относится к ней
+                return route.getValue(); // Соединение с владельцем
+            }
+        }
+        if (parts[0].equals("subscribe") || parts[0].equals("join")) { // Ответом может быть перенаправление
+            String queueName = parts[1].replaceFirst(" -?\\d+$", ""); // Без необязательного размера окна
+            if (parts[0].equals("join")) { // После имени очереди указана группа
+                queueName = queueName.substring(0, Math.max(0, queueName.lastIndexOf(' '))); // Имя очереди без группы
+            }
+            awaitingRedirect.put(queueName, command); // Повторим команду, если очередь обслуживает другой узел
+        }
+        return outputStream; // Основное соединение
+    }
+
+    // Метод для отправки команды в соединение (ответы на перенаправление отправляются из потоков чтения)
+    private static void write(OutputStream out, String command) throws IOException {
+        synchronized (out) { // Команды не должны перемешиваться
+            out.write((command + "\n").getBytes(StandardCharsets.UTF_8)); // Отправляем команду
+            out.flush(); // Очищаем буфер вывода
+        }
+    }
+
+    private void printHelp() { // Метод для вывода справки
+        System.out.println("Доступные команды:"); // Сообщаем о доступных командах
+        System.out.println("send <queue> [partitions] - подключиться как отправитель к очереди (создать ее из partitions разделов)"); // Описание команды send
+        System.out.println("receive <queue> - подключиться как получатель к очереди"); // Описание команды receive
+        System.out.println("receive <queue> <timeout> - ждать сообщение до timeout миллисекунд"); // Описание receive с ожиданием
+        System.out.println("subscribe <queue> [prefetch] - получать сообщения очереди без запросов"); // Описание команды subscribe
+        System.out.println("ack <queue> [n] - подтвердить n полученных по подписке сообщений"); // Описание команды ack
+        System.out.println("unsubscribe <queue> - отменить подписку"); // Описание команды unsubscribe
+        System.out.println("join <queue> <group> [prefetch] - получать сообщения своих разделов очереди в составе группы"); // Описание команды join
+        System.out.println("ack <queue> [group] [n] - подтвердить n полученных в группе сообщений"); // Описание ack для группы
+        System.out.println("leave <queue> <group> - выйти из группы, разделы перейдут к остальным"); // Описание команды leave
+        System.out.println("stats [queue] - статистика брокера или одной очереди"); // Описание команды stats
+        System.out.println("message <length> [key]" + "\\" + "n" + "<message> - отправить сообщение в текущую очередь (длина сообщения - это число символов)"); // Описание команды message
+        System.out.println("exit - выход из клиента"); // Описание команды exit
+    }
+
+    private void sendMessage(String messageLength) { // Метод для отправки сообщения
+        try {
+            String[] args = messageLength.split(" ", 2); // Отделяем необязательный ключ раздела
+            int number = Integer.parseInt(args[0]); // Преобразуем строку с длиной сообщения в целое число
+            String key = args.length > 1 ? " " + args[1] : ""; // Ключ передается после длины
+            outputStream.write(("message " + number + key + "\n").getBytes(StandardCharsets.UTF_8)); // Отправляем команду message с длиной сообщения
+            outputStream.flush(); // Очищаем буфер вывода
+            if (queueNameMes != null) { // Если имя очереди не равно null
+                boolean messang = true; // Флаг для управления циклом
+                do {
+                    String secondLine = scanner.nextLine().trim(); // Считываем сообщение от пользователя
+                    if (secondLine.length() != number) { // Если длина введенного сообщения не соответствует ожидаемой
+                        System.out.println("Длина сообщения не соответствует указанной, введите сообщение ещё раз:"); // Сообщаем об ошибке
+                    } else { // Если длина сообщения соответствует
+                        byte[] messageBytes = secondLine.getBytes(StandardCharsets.UTF_8); // Преобразуем сообщение в массив байтов
+                        outputStream.write(messageBytes); // Отправляем все байты сообщения одной записью
+                        outputStream.flush(); // Очищаем буфер вывода
+                        messang = false; // Устанавливаем флаг в false для выхода из цикла
+                    }
+                } while (messang); // Продолжаем цикл, пока флаг messang равен true
+            }
+
+        } catch (IOException e) { // Обработка исключений ввода-вывода
+            System.err.println("Ошибка при отправке сообщения: " + e.getMessage()); // Сообщаем об ошибке отправки сообщения
+        }
+    }
+}
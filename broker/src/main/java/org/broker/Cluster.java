@@ -0,0 +1,449 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.ArrayList; // Импортируем список
+import java.util.LinkedHashSet; // Импортируем множество с порядком добавления
+import java.util.List; // Импортируем интерфейс списка
+import java.util.Set; // Импортируем интерфейс множества
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.ConcurrentHashMap; // Импортируем потокобезопасную хеш-таблицу
+import java.util.concurrent.ExecutionException; // Импортируем исключение асинхронной операции
+import java.util.concurrent.ExecutorService; // Импортируем интерфейс исполнителя
+import java.util.concurrent.Executors; // Импортируем фабрику пулов потоков
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import java.util.concurrent.TimeoutException; // Импортируем исключение истечения времени
+import java.util.concurrent.atomic.AtomicBoolean; // Импортируем атомарный флаг
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем атомарный счетчик
+import java.util.concurrent.atomic.LongAdder; // Импортируем счетчик с низкой конкуренцией
+import java.util.function.Consumer; // Импортируем функциональный интерфейс потребителя
+
+// Кластер из нескольких узлов брокера со статическим списком участников (broker.peers).
+// Каждая очередь принадлежит одному узлу, который выбирается согласованным хешированием имени очереди (HashRing).
+// Узел, получивший запрос к чужой очереди, пересылает его владельцу по двоичному протоколу через пул соединений
+// и возвращает клиенту ответ владельца, поэтому клиент может подключаться к любому узлу.
+//
+// Запросы к одному узлу отправляет один поток, а запросы к одной очереди идут по одному соединению пула,
+// поэтому владелец получает сообщения очереди в том порядке, в котором их принял узел-посредник.
+public final class Cluster {
+
+    public static final String SELF = System.getProperty("broker.advertise", "localhost:" + Server.PORT); // Адрес этого узла в списке участников
+    public static final List<String> NODES = nodes(System.getProperty("broker.peers", "")); // Все узлы кластера, включая этот
+    public static final boolean ENABLED = NODES.size() > 1; // Работает ли брокер в кластере
+    public static final int VIRTUAL_NODES = Integer.getInteger("broker.virtualNodes", 128); // Точек на кольце у каждого узла
+    public static final int PEER_CONNECTIONS = Integer.getInteger("broker.peerConnections", 2); // Соединений с каждым узлом
+    public static final int FORWARD_WINDOW = Integer.getInteger("broker.forwardWindow", 1024); // Пересланных кадров одного двоичного соединения в пути
+    public static final int FORWARD_TIMEOUT_MILLIS = Integer.getInteger("broker.forwardTimeoutMillis", 5000); // Сколько ждать ответа владельца
+    public static final int HANDOFF_RETRY_MILLIS = Integer.getInteger("broker.handoffRetryMillis", 5000); // Пауза перед повторной передачей очередей
+
+    static final HashRing ring = new HashRing(NODES, VIRTUAL_NODES); // Кольцо владельцев очередей
+    static final LongAdder forwarded = new LongAdder(); // Пересланные запросы
+    static final LongAdder failed = new LongAdder(); // Запросы, которые не удалось переслать
+
+    private static final ConcurrentHashMap<String, Peer> peers = new ConcurrentHashMap<>(); // Соединения с другими узлами
+    private static final Set<String> handoffs = ConcurrentHashMap.newKeySet(); // Очереди, которые еще передаются новым владельцам
+
+    private Cluster() { // Экземпляры не нужны, все методы статические
+    }
+
+    // Метод для разбора списка узлов "host:port,host:port"; этот узел добавляется, даже если его нет в списке
+    private static List<String> nodes(String text) {
+        Set<String> nodes = new LinkedHashSet<>(); // Узлы без повторов
+        for (String node : text.split(",")) { // Для каждого элемента списка
+            if (!node.isBlank()) { // Пустые элементы пропускаем
+                nodes.add(node.trim()); // Добавляем узел
+            }
+        }
+        nodes.add(SELF); // Этот узел всегда участвует в кольце
+        return List.copyOf(nodes); // Неизменяемый список
+    }
+
+    // Метод для получения узла-владельца очереди
+    public static String owner(String queueName) {
+        return ENABLED ? ring.owner(queueName) : SELF; // Без кластера все очереди принадлежат этому узлу
+    }
+
+    // Метод для проверки, принадлежит ли очередь этому узлу
+    public static boolean isLocal(String queueName) {
+        return !ENABLED || SELF.equals(ring.owner(queueName)); // Сравниваем владельца с адресом узла
+    }
+
+    // Метод для получения ответа на подписку, которую нельзя переслать (подписка держит соединение с владельцем;
+    // консольный Client повторяет команду на узле-владельце сам)
+    public static String redirect(String queueName) {
+        return "Очередь '" + queueName + "' обслуживает узел " + owner(queueName) + ", подключитесь к нему."; // Адрес владельца
+    }
+
+    // Метод для пересылки запроса узлу node; ответ - статус и тело ответа владельца
+    static CompletableFuture<ByteBuffer> forward(String node, byte opcode, String queueName, ByteBuffer... body) {
+        return forward(node, FORWARD_TIMEOUT_MILLIS, opcode, queueName, body); // Обычное время ожидания ответа
+    }
+
+    // Метод для пересылки запроса с ожиданием ответа не дольше timeoutMillis; если узел не ответил, результат
+    // завершается с TimeoutException, поэтому соединение клиента не остается приостановленным навсегда
+    static CompletableFuture<ByteBuffer> forward(String node, long timeoutMillis, byte opcode, String queueName, ByteBuffer... body) {
+        forwarded.increment(); // Учитываем пересылку
+        CompletableFuture<ByteBuffer> reply = peers.computeIfAbsent(node, Peer::new).send(timeoutMillis, opcode, queueName, body); // Отправляем через поток узла
+        reply.whenComplete((r, e) -> { // Когда ответ придет
+            if (e != null) { // Если узел недоступен
+                failed.increment(); // Учитываем ошибку
+            }
+        });
+        return reply; // Возвращаем будущий ответ
+    }
+
+    // Метод для обработки команды "send <очередь> [разделы]" на узле-владельце
+    public static CompletableFuture<ByteBuffer[]> openQueue(String queueName, String partitionsText) {
+        int partitions; // Число разделов
+        try {
+            partitions = partitionsText == null ? 1 : Integer.parseInt(partitionsText); // По умолчанию очередь не разделена
+        } catch (NumberFormatException e) { // Если число слишком большое
+            return CompletableFuture.completedFuture(Server.frame("Неверный формат команды send.")); // Сообщаем об ошибке
+        }
+        ByteBuffer body = ByteBuffer.allocate(4).putInt(partitions).flip(); // Тело запроса - число разделов
+        String owner = owner(queueName); // Узел-владелец
+        return forward(owner, BinaryProtocol.OP_OPEN, queueName, body).handle((reply, error) -> { // Пересылаем запрос
+            if (error != null) { // Если владелец недоступен
+                return unavailable(owner, error); // Сообщаем об ошибке
+            }
+            byte status = reply.get(); // Код статуса
+            if (status == BinaryProtocol.STATUS_CREATED) { // Очередь создана
+                return Server.frame("Очередь '" + queueName + "' создана на узле " + owner + "."); // Сообщаем о создании
+            }
+            if (status == BinaryProtocol.STATUS_EXISTS) { // Очередь уже была
+                return Server.frame("Очередь '" + queueName + "' уже существует."); // Сообщаем об этом
+            }
+            return Server.frame("Ошибка: узел " + owner + " ответил кодом " + status + "."); // Неожиданный ответ
+        });
+    }
+
+    // Метод для добавления сообщения (key - ключ раздела или null) в очередь на узле-владельце
+    public static CompletableFuture<ByteBuffer[]> putMessage(String queueName, ByteBuffer payload, String key) {
+        String owner = owner(queueName); // Узел-владелец
+        CompletableFuture<ByteBuffer> reply; // Будущий ответ владельца
+        if (key == null) { // Сообщение без ключа
+            reply = forward(owner, BinaryProtocol.OP_PUBLISH, queueName, payload); // Пересылаем тело без копирования
+        } else { // Сообщение с ключом раздела
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8); // Ключ в UTF-8
+            ByteBuffer head = ByteBuffer.allocate(2 + keyBytes.length).putShort((short) keyBytes.length).put(keyBytes).flip(); // Длина и байты ключа
+            reply = forward(owner, BinaryProtocol.OP_PUBLISH_KEYED, queueName, head, payload); // Пересылаем ключ и тело
+        }
+        return reply.handle((response, error) -> { // Преобразуем ответ в текст
+            if (error != null) { // Если владелец недоступен
+                return unavailable(owner, error); // Сообщаем об ошибке
+            }
+            byte status = response.get(); // Код статуса
+            if (status == BinaryProtocol.STATUS_OK) { // Сообщение добавлено
+                return Server.frame("Сообщение '", payload, "' добавлено в очередь '" + queueName + "'."); // Сообщаем об успехе
+            }
+            if (status == BinaryProtocol.STATUS_FULL) { // Сработала политика reject
+                return Server.frame("Очередь '" + queueName + "' переполнена, сообщение отклонено."); // Сообщаем об ошибке
+            }
+            return Server.frame("Очередь с именем '" + queueName + "' была удалена."); // Очереди на владельце нет
+        });
+    }
+
+    // Метод для извлечения одного сообщения из очереди на узле-владельце
+    public static CompletableFuture<ByteBuffer[]> takeMessage(String queueName) {
+        String owner = owner(queueName); // Узел-владелец
+        return fetch(owner, queueName, 0).handle((reply, error) -> taken(owner, queueName, reply, error)); // Пересылаем запрос
+    }
+
+    // Метод для обработки "receive <очередь> <таймаут>" для очереди другого узла: ждет сам владелец, а ответ
+    // (сообщение или "пуста" по истечении времени) приходит через later. Если клиент отключился раньше,
+    // полученное для него сообщение возвращается владельцу, как вернулось бы в местную очередь
+    public static void takeMessage(String queueName, long waitMillis, List<Subscriber> consumers, Consumer<ByteBuffer[]> later) {
+        String owner = owner(queueName); // Узел-владелец
+        RemoteWaiter waiter = new RemoteWaiter(); // Ожидание на стороне этого узла
+        consumers.removeIf(c -> !c.isActive()); // Забываем завершенных потребителей соединения
+        consumers.add(waiter); // Запоминаем ожидание, чтобы отменить его при отключении клиента
+        fetch(owner, queueName, waitMillis).whenComplete((reply, error) -> { // Когда владелец ответит
+            if (waiter.finish()) { // Если клиент еще ждет
+                later.accept(taken(owner, queueName, reply, error)); // Отправляем ответ
+            } else if (error == null && reply.get(reply.position()) == BinaryProtocol.STATUS_OK) { // Сообщение пришло, но получать его некому
+                forward(owner, BinaryProtocol.OP_PUBLISH, queueName, message(reply)); // Возвращаем его владельцу
+            }
+        });
+    }
+
+    // Метод для выборки одного сообщения у владельца с ожиданием до waitMillis (0 - без ожидания)
+    private static CompletableFuture<ByteBuffer> fetch(String owner, String queueName, long waitMillis) {
+        int wait = (int) Math.max(0, Math.min(waitMillis, Integer.MAX_VALUE - FORWARD_TIMEOUT_MILLIS)); // Ожидание помещается в int
+        ByteBuffer body = ByteBuffer.allocate(8).putInt(1).putInt(wait).flip(); // Тело запроса - одно сообщение и время ожидания
+        return forward(owner, FORWARD_TIMEOUT_MILLIS + (long) wait, BinaryProtocol.OP_FETCH, queueName, body); // Ответа ждем дольше ожидания
+    }
+
+    // Метод для преобразования ответа владельца на выборку одного сообщения в текстовый ответ
+    private static ByteBuffer[] taken(String owner, String queueName, ByteBuffer reply, Throwable error) {
+        if (error != null) { // Если владелец недоступен
+            return unavailable(owner, error); // Сообщаем об ошибке
+        }
+        byte status = reply.get(reply.position()); // Код статуса
+        if (status == BinaryProtocol.STATUS_EMPTY) { // Очередь пуста
+            return Server.frame("Очередь '" + queueName + "' пуста."); // Сообщаем об этом
+        }
+        if (status != BinaryProtocol.STATUS_OK) { // Очереди нет
+            return Server.frame("Очередь '" + queueName + "' не существует."); // Сообщаем об ошибке
+        }
+        return Server.frame("Сообщение из очереди: ", message(reply), ""); // Сообщение без копирования
+    }
+
+    // Метод для получения единственного сообщения из ответа на выборку: [статус][int 1][int длина][байты]
+    private static ByteBuffer message(ByteBuffer reply) {
+        return reply.slice(reply.position() + 9, reply.getInt(reply.position() + 5)); // Срез без копирования
+    }
+
+    // Метод для ожидания текстового ответа на пересланную команду в блокирующем режиме: поток клиента ждет не дольше
+    // FORWARD_TIMEOUT_MILLIS и при истечении времени получает тот же ответ, что и при недоступном владельце
+    public static ByteBuffer[] await(String queueName, CompletableFuture<ByteBuffer[]> reply) {
+        try {
+            return reply.get(FORWARD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS); // Ждем ответ владельца
+        } catch (InterruptedException e) { // Поток клиента прерван
+            Thread.currentThread().interrupt(); // Сохраняем признак прерывания
+            return unavailable(owner(queueName), e); // Ответа нет
+        } catch (ExecutionException | TimeoutException e) { // Владелец не ответил вовремя
+            return unavailable(owner(queueName), e); // Сообщаем об ошибке
+        }
+    }
+
+    // Метод для создания ответа о недоступном владельце
+    private static ByteBuffer[] unavailable(String owner, Throwable error) {
+        Throwable cause = error.getCause() != null ? error.getCause() : error; // Снимаем обертку CompletionException
+        String reason = cause instanceof TimeoutException ? "нет ответа за " + FORWARD_TIMEOUT_MILLIS + " мс" : cause.getMessage(); // Причина
+        return Server.frame("Ошибка: узел " + owner + " недоступен (" + reason + ")."); // Текст ошибки
+    }
+
+    // Метод для запуска передачи очередей, которые после изменения списка узлов принадлежат другим узлам.
+    // Вызывается после восстановления очередей с диска и до приема соединений: при добавлении узла переезжают только
+    // очереди с дуг кольца, которые он занял. Пока новый владелец недоступен, передача повторяется каждые HANDOFF_RETRY_MILLIS
+    public static void startHandoff() {
+        if (!ENABLED) { // Без кластера передавать некому
+            return; // Выходим из метода
+        }
+        for (String queueName : Server.namedQueues.names()) { // Для каждой восстановленной очереди
+            if (!isLocal(queueName)) { // Если она теперь чужая
+                handoffs.add(queueName); // Новые сообщения остаются здесь, пока очередь не передана
+            }
+        }
+        if (handoffs.isEmpty()) { // Если передавать нечего
+            return; // Поток не нужен
+        }
+        Thread handoff = new Thread(Cluster::handoffAll, "broker-handoff"); // Поток передачи очередей
+        handoff.setDaemon(true); // Поток не должен мешать завершению программы
+        handoff.start(); // Запускаем поток
+    }
+
+    // Метод для проверки, добавляются ли сообщения очереди на этом узле: очередь своя или еще передается владельцу.
+    // Во время передачи новые сообщения встают в конец местной очереди и уходят владельцу следом за старыми, поэтому
+    // порядок не нарушается; сообщения извлекаются у владельца, и поток передачи - единственный местный потребитель.
+    // Закрытая очередь уже передана целиком - добавление пересылается владельцу
+    public static boolean acceptsLocally(String queueName) {
+        return isLocal(queueName) || handoffs.contains(queueName) && Server.namedQueues.containsKey(queueName); // Своя или передаваемая очередь
+    }
+
+    // Основной цикл потока передачи очередей
+    private static void handoffAll() {
+        while (true) { // Пока остаются непереданные очереди
+            for (String queueName : new ArrayList<>(handoffs)) { // Для каждой передаваемой очереди
+                if (handoff(queueName)) { // Если очередь передана целиком
+                    handoffs.remove(queueName); // Дальше ее запросы пересылаются владельцу
+                }
+            }
+            if (handoffs.isEmpty()) { // Если все очереди переданы
+                return; // Поток завершается
+            }
+            try {
+                Thread.sleep(HANDOFF_RETRY_MILLIS); // Ждем перед повторной попыткой
+            } catch (InterruptedException e) { // Если поток прервали
+                return; // Завершаем передачу
+            }
+        }
+    }
+
+    // Метод для передачи одной очереди владельцу. Сообщения читаются через peek и извлекаются только после ответа
+    // STATUS_OK, поэтому при отказе владельца они остаются на своих местах; если узел упадет посреди порции, владелец
+    // получит часть сообщений повторно, но ни одно не потеряется. Возвращает true, если очередь передана и удалена
+    private static boolean handoff(String queueName) {
+        MessageQueue queue = Server.namedQueues.get(queueName); // Получаем очередь по имени
+        if (queue == null) { // Если очередь уже удалена
+            return true; // Передавать нечего
+        }
+        String owner = owner(queueName); // Новый владелец
+        PartitionedQueue partitioned = queue instanceof PartitionedQueue ? (PartitionedQueue) queue : null; // Разделенная очередь или null
+        int partitions = partitioned != null ? partitioned.getPartitionCount() : 1; // Число разделов
+        ByteBuffer reply = forward(owner, BinaryProtocol.OP_OPEN, queueName, ByteBuffer.allocate(4).putInt(partitions).flip()).exceptionally(e -> null).join(); // Создаем очередь у владельца
+        byte status = reply == null ? BinaryProtocol.STATUS_UNAVAILABLE : reply.get(); // Статус владельца
+        if (status != BinaryProtocol.STATUS_CREATED && status != BinaryProtocol.STATUS_EXISTS) { // Если очередь не создана
+            System.err.println("Ошибка передачи очереди '" + queueName + "' узлу " + owner + ": код " + status + "."); // Сообщаем об ошибке
+            return false; // Повторим позже
+        }
+        while (true) { // Пока в очередь добавляются новые сообщения
+            long moved = 0; // Переданные сообщения
+            for (int i = 0; i < partitions; i++) { // Каждый раздел передается по порядку в раздел с тем же номером
+                long sent = drain(owner, queueName, partitioned != null ? partitioned.partition(i) : queue, partitioned != null ? partitionKey(partitioned, i) : null); // Передаем раздел
+                if (sent < 0) { // Если владелец не принял сообщение
+                    return false; // Повторим позже с того же места
+                }
+                moved += sent; // Учитываем переданные сообщения
+            }
+            if (moved > 0) { // Если сообщения были
+                System.out.println("Очередь '" + queueName + "': передано узлу " + owner + " " + moved + " сообщений."); // Сообщаем о передаче
+            }
+            if (Server.namedQueues.removeIfEmpty(queue) || queue.isClosed()) { // Закрытая очередь больше не принимает сообщений
+                return true; // Очередь передана
+            }
+            if (queue.isEmpty()) { // Очередь пуста, но ее ждут потребители
+                return false; // Удалим позже
+            }
+        }
+    }
+
+    // Метод для передачи владельцу всех сообщений одной очереди или раздела (key - ключ раздела или null).
+    // Порция отправляется без ожидания ответов, а затем сообщения извлекаются по порядку ответов.
+    // Возвращает число переданных сообщений или -1, если владелец отказал
+    private static long drain(String owner, String queueName, MessageQueue source, String key) {
+        ByteBuffer keyHead = null; // Длина и байты ключа раздела
+        if (key != null) { // Если передается раздел
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8); // Ключ в UTF-8
+            keyHead = ByteBuffer.allocate(2 + keyBytes.length).putShort((short) keyBytes.length).put(keyBytes).flip(); // Заголовок тела
+        }
+        long moved = 0; // Переданные сообщения
+        while (true) { // Пока в очереди есть сообщения
+            List<ByteBuffer> batch = source.peek(QueueLimits.PAGE_IN_BATCH); // Очередная порция без извлечения
+            if (batch.isEmpty()) { // Если очередь опустела
+                return moved; // Передача закончена
+            }
+            List<CompletableFuture<ByteBuffer>> replies = new ArrayList<>(batch.size()); // Ответы владельца
+            for (ByteBuffer payload : batch) { // Для каждого сообщения порции
+                replies.add(keyHead == null ? forward(owner, BinaryProtocol.OP_PUBLISH, queueName, payload.duplicate()) // Отправляем копию указателей, не дожидаясь ответа
+                        : forward(owner, BinaryProtocol.OP_PUBLISH_KEYED, queueName, keyHead.duplicate(), payload.duplicate())); // С ключом нужного раздела
+            }
+            for (int i = 0; i < batch.size(); i++) { // Для каждого ответа по порядку
+                ByteBuffer reply = replies.get(i).exceptionally(e -> null).join(); // Ждем ответ
+                byte status = reply == null ? BinaryProtocol.STATUS_UNAVAILABLE : reply.get(); // Статус владельца
+                if (status != BinaryProtocol.STATUS_OK) { // Если сообщение не принято (например, очередь владельца переполнена)
+                    System.err.println("Ошибка передачи очереди '" + queueName + "' узлу " + owner + ": код " + status + ", передано " + (moved + i) + " сообщений."); // Сообщаем об ошибке
+                    return -1; // Остальные сообщения остаются в очереди по порядку
+                }
+                source.removeIfHead(batch.get(i)); // Извлекаем принятое сообщение (вытесненное drop-oldest уже извлечено)
+            }
+            moved += batch.size(); // Учитываем переданную порцию
+        }
+    }
+
+    // Метод для подбора ключа, который у владельца попадет в раздел index (разбиение по ключу одинаково на всех узлах)
+    private static String partitionKey(PartitionedQueue queue, int index) {
+        for (int candidate = 0; ; candidate++) { // Перебираем короткие ключи
+            String key = Integer.toString(candidate); // Очередной ключ
+            if (queue.partitionFor(key) == index) { // Если он попадает в нужный раздел
+                return key; // Возвращаем ключ
+            }
+        }
+    }
+
+    // Метод для получения строки состояния кластера для сводки статистики
+    static String describe() {
+        return "Кластер: узел " + SELF + ", узлов " + NODES.size() + ", переслано запросов " + forwarded.sum() + ", ошибок пересылки " + failed.sum() + "."; // Состояние кластера
+    }
+
+    // Ожидание receive, которое выполняет узел-владелец: в местную очередь не встает, а только помнит, ждет ли еще клиент
+    private static final class RemoteWaiter extends Subscriber {
+
+        private final AtomicBoolean done = new AtomicBoolean(); // Ответ отправлен или клиент отключился
+
+        // Конструктор ожидания без местной очереди
+        RemoteWaiter() {
+            super(null); // Очередь находится на другом узле
+        }
+
+        // Метод для завершения ожидания ответом владельца; false, если ожидание уже отменено
+        boolean finish() {
+            return done.compareAndSet(false, true); // Завершает только первый
+        }
+
+        @Override
+        boolean reserve() {
+            return false; // Местная очередь этому потребителю сообщений не раздает
+        }
+
+        @Override
+        void release() {
+            // Резервировать нечего
+        }
+
+        @Override
+        void deliver(ByteBuffer message) {
+            // Сообщение приходит от владельца, а не из местной очереди
+        }
+
+        @Override
+        boolean hasCredit() {
+            return false; // Местная очередь этому потребителю сообщений не раздает
+        }
+
+        @Override
+        public boolean isActive() {
+            return !done.get(); // Активно, пока владелец не ответил
+        }
+
+        @Override
+        public void cancel() {
+            done.set(true); // Ответ владельца больше некому отправлять
+        }
+    }
+
+    // Соединения с одним узлом кластера и поток, который отправляет ему запросы
+    private static final class Peer {
+
+        private final String node; // Адрес узла "host:port"
+        private final ExecutorService sender; // Поток отправки: подключение не задерживает циклы событий, а порядок запросов сохраняется
+        private final AtomicInteger queued = new AtomicInteger(); // Запросы, еще не записанные потоком отправки
+        private BrokerClient client; // Пул соединений (создается при первом запросе, доступен только потоку отправки)
+
+        // Конструктор, принимающий адрес узла "host:port" (адрес разбирается при подключении, ошибка в нем - отказ узла)
+        Peer(String node) {
+            this.node = node; // Сохраняем адрес
+            this.sender = Executors.newSingleThreadExecutor(r -> { // Один поток на узел
+                Thread thread = new Thread(r, "broker-forward-" + node); // Поток отправки
+                thread.setDaemon(true); // Поток не должен мешать завершению программы
+                return thread; // Возвращаем поток
+            });
+        }
+
+        // Метод для отправки запроса; подключение выполняется при первом запросе и после отказа узла.
+        // Буферы соединений сбрасываются, когда поток отправки записал все накопившиеся запросы
+        CompletableFuture<ByteBuffer> send(long timeoutMillis, byte opcode, String queueName, ByteBuffer... body) {
+            CompletableFuture<ByteBuffer> reply = new CompletableFuture<>(); // Будущий ответ
+            queued.incrementAndGet(); // Запрос ждет записи
+            sender.execute(() -> { // Отправляем в потоке узла
+                try {
+                    if (client == null) { // Если соединений еще нет или узел был недоступен
+                        int colon = node.lastIndexOf(':'); // Двоеточие перед портом
+                        client = new BrokerClient(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)), PEER_CONNECTIONS); // Подключаемся
+                    }
+                    CompletableFuture<ByteBuffer> sent = client.forward(opcode, queueName, body); // Отправляем запрос
+                    sent.whenComplete((r, e) -> { // Когда придет ответ
+                        if (e != null) { // Если соединение оборвалось
+                            reply.completeExceptionally(e); // Сообщаем об ошибке
+                        } else {
+                            reply.complete(r); // Передаем ответ
+                        }
+                    });
+                    reply.whenComplete((r, e) -> { // Если время ожидания истекло раньше ответа
+                        if (e != null) { // Запрос завершен с ошибкой
+                            sent.completeExceptionally(e); // Соединение забывает запрос, поздний ответ не попадет в чужое ожидание
+                        }
+                    });
+                } catch (IOException | RuntimeException e) { // Узел недоступен или его адрес неверен
+                    reply.completeExceptionally(e); // Сообщаем об ошибке
+                } finally {
+                    if (queued.decrementAndGet() == 0 && client != null) { // Если это последний запрос в очереди потока
+                        client.flush(); // Отправляем все записанные запросы
+                    }
+                }
+            });
+            return reply.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS); // Зависший узел не должен держать запрос вечно
+        }
+    }
+}
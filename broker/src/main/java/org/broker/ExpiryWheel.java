@@ -0,0 +1,90 @@
+package org.broker;
+
+import java.util.ArrayList; // Импортируем список для временного хранения записей слота
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.ConcurrentLinkedQueue; // Импортируем неблокирующую очередь для слотов колеса
+
+// Хешированное колесо таймеров: один поток следит за сроком жизни всех пустых очередей
+public class ExpiryWheel {
+
+    private static final int WHEEL_SIZE = 512; // Количество слотов колеса (степень двойки)
+
+    private final QueueRegistry registry; // Реестр очередей, из которого удаляются просроченные
+    private final long ttlMillis; // Время простоя, после которого пустая очередь удаляется
+    private final long tickMillis; // Длительность одного шага колеса
+    private final long startMillis = System.currentTimeMillis(); // Момент запуска колеса
+    private final List<ConcurrentLinkedQueue<MessageQueue>> slots = new ArrayList<>(WHEEL_SIZE); // Слоты колеса
+    private volatile long tick = 0; // Номер шага, который обрабатывается сейчас
+
+    // Конструктор, принимающий реестр, срок жизни и длительность шага
+    public ExpiryWheel(QueueRegistry registry, long ttlMillis, long tickMillis) {
+        this.registry = registry; // Сохраняем реестр
+        this.ttlMillis = ttlMillis; // Сохраняем срок жизни
+        this.tickMillis = Math.max(1, tickMillis); // Шаг не может быть нулевым
+        for (int i = 0; i < WHEEL_SIZE; i++) { // Для каждого слота
+            slots.add(new ConcurrentLinkedQueue<>()); // Создаем пустой слот
+        }
+
+        Thread worker = new Thread(this::run, "broker-expiry"); // Единственный поток колеса
+        worker.setDaemon(true); // Поток не должен мешать завершению программы
+        worker.start(); // Запускаем поток
+    }
+
+    // Метод для постановки очереди под наблюдение (вызывается один раз при создании очереди, O(1))
+    public void schedule(MessageQueue queue) {
+        scheduleAt(queue, queue.getLastActivity() + ttlMillis); // Проверяем очередь, когда истечет срок простоя
+    }
+
+    // Метод для помещения очереди в слот, соответствующий моменту проверки
+    private void scheduleAt(MessageQueue queue, long deadlineMillis) {
+        long deadlineTick = (deadlineMillis - startMillis + tickMillis - 1) / tickMillis; // Шаг, на котором наступает срок
+        deadlineTick = Math.max(deadlineTick, tick + 1); // Никогда не планируем в уже обработанный шаг
+        queue.expiryTick = deadlineTick; // Запоминаем шаг проверки
+        slots.get((int) (deadlineTick & (WHEEL_SIZE - 1))).add(queue); // Кладем очередь в слот
+    }
+
+    // Основной цикл потока колеса
+    private void run() {
+        while (true) { // Бесконечный цикл шагов
+            long next = startMillis + (tick + 1) * tickMillis; // Время следующего шага
+            long delay = next - System.currentTimeMillis(); // Сколько осталось ждать
+            if (delay > 0) { // Если время шага еще не наступило
+                try {
+                    Thread.sleep(delay); // Ждем до следующего шага
+                } catch (InterruptedException e) { // Если поток прервали
+                    return; // Завершаем работу колеса
+                }
+            }
+            tick++; // Переходим к следующему шагу
+            expire(tick); // Обрабатываем слот этого шага
+        }
+    }
+
+    // Метод для обработки одного слота колеса
+    private void expire(long currentTick) {
+        ConcurrentLinkedQueue<MessageQueue> slot = slots.get((int) (currentTick & (WHEEL_SIZE - 1))); // Слот текущего шага
+        List<MessageQueue> due = new ArrayList<>(); // Очереди, срок проверки которых мог наступить
+        MessageQueue queue; // Переменная для очередной очереди
+        while ((queue = slot.poll()) != null) { // Забираем все записи слота
+            due.add(queue); // Добавляем запись в список
+        }
+
+        long now = System.currentTimeMillis(); // Текущее время
+        for (MessageQueue candidate : due) { // Для каждой записи слота
+            if (candidate.expiryTick > currentTick) { // Срок наступит на одном из следующих оборотов колеса
+                slots.get((int) (candidate.expiryTick & (WHEEL_SIZE - 1))).add(candidate); // Возвращаем запись в слот
+                continue; // Переходим к следующей записи
+            }
+            if (candidate.isClosed()) { // Очередь уже удалена
+                continue; // Забываем о ней
+            }
+            long idleDeadline = candidate.getLastActivity() + ttlMillis; // Когда истечет срок простоя
+            if (idleDeadline <= now && registry.removeIfEmpty(candidate)) { // Если очередь простаивает и пуста - удаляем
+                Server.metrics.queueExpired(); // Учитываем удаление по простою
+                System.out.println("Очередь '" + candidate.getName() + "' удалена из-за пустоты."); // Сообщаем об удалении очереди
+            } else {
+                scheduleAt(candidate, idleDeadline > now ? idleDeadline : now + ttlMillis); // Иначе проверяем, когда истечет простой (а простаивающую непустую очередь - через ttl)
+            }
+        }
+    }
+}
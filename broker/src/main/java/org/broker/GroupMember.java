@@ -0,0 +1,120 @@
+package org.broker;
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.concurrent.atomic.AtomicBoolean; // Импортируем атомарный флаг
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем атомарный счетчик
+import java.util.function.BiConsumer; // Импортируем функциональный интерфейс для доставки с номером раздела
+
+// Участник группы потребителей разделенной очереди. Получает сообщения только из назначенных ему разделов
+// (по подписке на каждый раздел), а окно неподтвержденных сообщений у этих подписок общее
+public class GroupMember extends Subscriber {
+
+    private final String group; // Имя группы
+    private final int prefetch; // Размер общего окна
+    private final AtomicInteger credit; // Сколько еще сообщений можно отправить без подтверждения
+    private final AtomicBoolean cancelled = new AtomicBoolean(); // Отменен ли участник
+    private final BiConsumer<Integer, ByteBuffer> push; // Как отправить сообщение участнику (номер раздела и сообщение)
+    private final Subscription[] owned; // Подписки на назначенные разделы (null, если раздел не назначен)
+
+    // Конструктор, принимающий разделенную очередь, имя группы, размер окна и способ отправки
+    GroupMember(PartitionedQueue queue, String group, int prefetch, BiConsumer<Integer, ByteBuffer> push) {
+        super(queue); // Сохраняем очередь
+        this.group = group; // Сохраняем имя группы
+        this.prefetch = Math.max(1, prefetch); // Окно не может быть меньше одного сообщения
+        this.credit = new AtomicInteger(this.prefetch); // Изначально окно полностью свободно
+        this.push = push; // Сохраняем способ отправки
+        this.owned = new Subscription[queue.getPartitionCount()]; // Пока разделов нет
+    }
+
+    // Метод для получения имени группы
+    public String getGroup() {
+        return group; // Возвращаем имя
+    }
+
+    // Метод для получения номеров назначенных разделов
+    public synchronized String getPartitions() {
+        StringBuilder partitions = new StringBuilder(); // Номера через запятую
+        for (int p = 0; p < owned.length; p++) { // Для каждого раздела
+            if (owned[p] != null) { // Если он назначен участнику
+                partitions.append(partitions.length() == 0 ? "" : ", ").append(p); // Добавляем его номер
+            }
+        }
+        return partitions.toString(); // Возвращаем строку
+    }
+
+    // Метод для отказа от разделов, которые больше не назначены (вызывается под блокировкой групп очереди)
+    synchronized void release(boolean[] assignment) {
+        for (int p = 0; p < owned.length; p++) { // Для каждого раздела
+            if (owned[p] != null && !assignment[p]) { // Если раздел забирают
+                owned[p].cancel(); // Больше не получаем его сообщения
+                owned[p] = null; // Раздел не назначен
+            }
+        }
+    }
+
+    // Метод для применения нового распределения разделов (вызывается под блокировкой групп очереди)
+    synchronized void assign(boolean[] assignment) {
+        release(assignment); // Отказываемся от чужих разделов
+        if (cancelled.get()) { // Отмененный участник новых разделов не получает
+            return; // Выходим из метода
+        }
+        PartitionedQueue partitioned = (PartitionedQueue) queue; // Очередь участника
+        for (int p = 0; p < owned.length; p++) { // Для каждого раздела
+            if (owned[p] == null && assignment[p]) { // Если раздел назначен впервые
+                int partition = p; // Номер раздела для доставки
+                owned[p] = new Subscription(partitioned.partition(p), prefetch, credit,
+                        message -> push.accept(partition, message)); // Подписка с общим окном
+                owned[p].start(); // Начинаем получать сообщения раздела
+            }
+        }
+    }
+
+    // Метод для подтверждения n сообщений, освобождающего место в общем окне
+    public void ack(int n) {
+        int current; // Текущее значение окна
+        do {
+            current = credit.get(); // Читаем окно
+        } while (!credit.compareAndSet(current, Math.min(prefetch, current + Math.max(0, n)))); // Окно не растет больше prefetch
+        Subscription[] subscriptions; // Снимок назначенных разделов
+        synchronized (this) { // Распределение может меняться одновременно
+            subscriptions = owned.clone(); // Копируем его
+        }
+        for (Subscription subscription : subscriptions) { // Для каждого назначенного раздела
+            if (subscription != null) { // Если раздел назначен
+                subscription.resume(); // Раздел снова может отправлять сообщения
+            }
+        }
+    }
+
+    @Override
+    boolean reserve() {
+        return false; // Сам участник сообщений не получает - их отправляют подписки разделов
+    }
+
+    @Override
+    void release() {
+        // Места не резервируются, возвращать нечего
+    }
+
+    @Override
+    void deliver(ByteBuffer message) {
+        // Сообщения доставляются подписками разделов
+    }
+
+    @Override
+    boolean hasCredit() {
+        return false; // Участник не стоит в списке готовых самой очереди
+    }
+
+    @Override
+    public boolean isActive() {
+        return !cancelled.get(); // Участник действует, пока не отменен
+    }
+
+    @Override
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) { // Отменяем один раз
+            ((PartitionedQueue) queue).leave(this); // Выходим из группы, разделы переходят к остальным
+        }
+    }
+}
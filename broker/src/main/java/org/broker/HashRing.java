@@ -0,0 +1,62 @@
+package org.broker;
+
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.Arrays; // Импортируем сортировку и двоичный поиск
+import java.util.Collection; // Импортируем интерфейс коллекции
+
+// Кольцо согласованного хеширования. Каждый узел занимает virtualNodes точек на кольце, а очередь принадлежит
+// первому узлу по часовой стрелке от хеша ее имени. При добавлении узла владельца меняют только очереди,
+// попавшие на дуги перед его точками (примерно 1/N всех очередей), остальные остаются на своих узлах.
+// Кольцо неизменяемо: точки хранятся в отсортированном массиве, поиск - двоичный, без блокировок.
+public class HashRing {
+
+    private final long[] points; // Хеши точек по возрастанию
+    private final String[] owners; // Узел, которому принадлежит каждая точка
+
+    // Конструктор, принимающий адреса узлов и число виртуальных точек на узел
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        int perNode = Math.max(1, virtualNodes); // Хотя бы одна точка на узел
+        long[][] pairs = new long[nodes.size() * perNode][]; // Пары (хеш, номер узла)
+        String[] names = nodes.toArray(new String[0]); // Узлы по номерам
+        for (int n = 0; n < names.length; n++) { // Для каждого узла
+            for (int v = 0; v < perNode; v++) { // Для каждой его точки
+                pairs[n * perNode + v] = new long[] {hash(names[n] + "#" + v), n}; // Точка зависит только от адреса узла
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : names[(int) a[1]].compareTo(names[(int) b[1]])); // Одинаковый порядок на всех узлах
+        points = new long[pairs.length]; // Массив хешей
+        owners = new String[pairs.length]; // Массив владельцев
+        for (int i = 0; i < pairs.length; i++) { // Для каждой точки
+            points[i] = pairs[i][0]; // Хеш точки
+            owners[i] = names[(int) pairs[i][1]]; // Ее узел
+        }
+    }
+
+    // Метод для получения узла, которому принадлежит ключ (имя очереди); null, если узлов нет
+    public String owner(String key) {
+        if (points.length == 0) { // Если кольцо пусто
+            return null; // Владельца нет
+        }
+        int index = Arrays.binarySearch(points, hash(key)); // Ищем точку с таким же или большим хешем
+        if (index < 0) { // Точного совпадения нет
+            index = -index - 1; // Позиция первой большей точки
+        }
+        return owners[index == points.length ? 0 : index]; // За последней точкой кольцо замыкается на первую
+    }
+
+    // Метод для вычисления 64-битного хеша строки: FNV-1a по байтам UTF-8 с финальным перемешиванием
+    // (без перемешивания близкие имена вроде "q1" и "q2" ложились бы на кольцо рядом)
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L; // Начальное значение FNV-1a
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) { // Для каждого байта
+            h ^= b & 0xFF; // Смешиваем байт
+            h *= 0x100000001b3L; // Умножаем на простое число FNV
+        }
+        h ^= h >>> 33; // Финальное перемешивание MurmurHash3
+        h *= 0xff51afd7ed558ccdL; // Умножение
+        h ^= h >>> 33; // Сдвиг
+        h *= 0xc4ceb9fe1a85ec53L; // Умножение
+        h ^= h >>> 33; // Сдвиг
+        return h; // Возвращаем хеш
+    }
+}
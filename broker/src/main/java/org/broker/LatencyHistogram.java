@@ -0,0 +1,104 @@
+package org.broker;
+
+import java.util.concurrent.atomic.AtomicLong; // Импортируем атомарный счетчик для максимума
+import java.util.concurrent.atomic.AtomicLongArray; // Импортируем атомарный массив счетчиков корзин
+import java.util.concurrent.atomic.LongAdder; // Импортируем распределенный счетчик
+
+// Гистограмма задержек без блокировок. Значения (в наносекундах) раскладываются по корзинам:
+// 16 точных корзин для значений 0..15, дальше по 8 корзин на каждую степень двойки,
+// поэтому погрешность процентиля не больше 12,5%, а запись - одно атомарное увеличение.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3; // Число корзин на степень двойки - 2^3
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 8 корзин на степень двойки
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2; // Значения меньше 16 хранятся точно
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - 4) * SUB_BUCKETS; // Корзины для всех неотрицательных long
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // Количество значений в каждой корзине
+    private final LongAdder count = new LongAdder(); // Общее количество значений
+    private final LongAdder sum = new LongAdder(); // Сумма значений для среднего
+    private final AtomicLong max = new AtomicLong(); // Наибольшее значение
+
+    // Метод для записи одного значения в наносекундах
+    public void record(long nanos) {
+        long value = Math.max(0, nanos); // Отрицательные значения (сдвиг часов) считаем нулем
+        counts.incrementAndGet(index(value)); // Увеличиваем счетчик корзины
+        count.increment(); // Увеличиваем общее количество
+        sum.add(value); // Добавляем значение к сумме
+        if (value > max.get()) { // Обновляем максимум только при необходимости, чтобы не делать CAS на каждой записи
+            max.accumulateAndGet(value, Math::max); // Атомарно сохраняем наибольшее значение
+        }
+    }
+
+    // Метод для записи времени, прошедшего с момента start (значение System.nanoTime())
+    public void recordSince(long start) {
+        record(System.nanoTime() - start); // Записываем прошедшее время
+    }
+
+    // Метод для получения количества записанных значений
+    public long getCount() {
+        return count.sum(); // Возвращаем количество
+    }
+
+    // Метод для получения среднего значения в наносекундах
+    public long getMean() {
+        long n = count.sum(); // Количество значений
+        return n == 0 ? 0 : sum.sum() / n; // Среднее или 0, если значений нет
+    }
+
+    // Метод для получения наибольшего значения в наносекундах
+    public long getMax() {
+        return max.get(); // Возвращаем максимум
+    }
+
+    // Метод для получения процентиля (q от 0 до 1) в наносекундах - верхней границы корзины, в которую он попал
+    public long getPercentile(double q) {
+        long total = 0; // Количество значений по корзинам (может немного отличаться от count при одновременной записи)
+        for (int i = 0; i < BUCKETS; i++) { // Для каждой корзины
+            total += counts.get(i); // Суммируем счетчики
+        }
+        if (total == 0) { // Если значений нет
+            return 0; // Процентиль не определен
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total)); // Номер значения, соответствующего процентилю
+        long seen = 0; // Сколько значений пройдено
+        for (int i = 0; i < BUCKETS; i++) { // Идем по корзинам от меньших значений к большим
+            seen += counts.get(i); // Учитываем значения корзины
+            if (seen >= rank) { // Если процентиль попал в эту корзину
+                return Math.min(upperBound(i), max.get()); // Верхняя граница корзины, но не больше максимума
+            }
+        }
+        return max.get(); // Значения дописаны во время обхода - возвращаем максимум
+    }
+
+    // Метод для определения корзины значения
+    private static int index(long value) {
+        if (value < LINEAR_BUCKETS) { // Маленькие значения хранятся точно
+            return (int) value; // Корзина равна значению
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // Номер старшего бита (не меньше 4)
+        int sub = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1)); // Три бита после старшего
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub; // Корзина внутри своей степени двойки
+    }
+
+    // Метод для получения наибольшего значения, попадающего в корзину
+    private static long upperBound(int index) {
+        if (index < LINEAR_BUCKETS) { // Точные корзины
+            return index; // Граница равна значению
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4; // Степень двойки корзины
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS; // Номер корзины внутри степени
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1; // Последнее значение корзины
+    }
+
+    // Метод для краткого описания гистограммы в микросекундах
+    public String summary() {
+        return "p50=" + micros(getPercentile(0.5)) + " p99=" + micros(getPercentile(0.99))
+                + " max=" + micros(getMax()) + " мкс (n=" + getCount() + ")"; // Процентили и количество
+    }
+
+    // Метод для перевода наносекунд в микросекунды
+    static long micros(long nanos) {
+        return nanos / 1000; // Округляем вниз
+    }
+}
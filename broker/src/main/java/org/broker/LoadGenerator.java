@@ -0,0 +1,265 @@
+package org.broker;
+
+import java.io.BufferedInputStream; // Импортируем буферизованный поток ввода
+import java.io.DataInputStream; // Импортируем поток для чтения чисел
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.io.OutputStream; // Импортируем поток вывода
+import java.net.Socket; // Импортируем класс для работы с сокетами
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.ArrayList; // Импортируем список
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.Semaphore; // Импортируем ограничение числа запросов в пути
+import java.util.concurrent.ThreadLocalRandom; // Импортируем генератор случайных чисел потока
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import java.util.concurrent.atomic.AtomicReference; // Импортируем атомарную ссылку для смены интервальных гистограмм
+import java.util.concurrent.atomic.LongAdder; // Импортируем распределенный счетчик
+import java.util.concurrent.locks.LockSupport; // Импортируем точное ожидание до момента отправки
+
+// Генератор нагрузки для планирования мощности и длительных прогонов против запущенного Server.
+// Работает по настоящему двоичному протоколу через BrokerClient. Настройки задаются системными свойствами:
+//   load.host, load.port             - адрес брокера (localhost:1234)
+//   load.producers, load.consumers   - число потоков производителей и потребителей (1 и 1)
+//   load.queues                      - на сколько очередей распределяются сообщения (1)
+//   load.partitions                  - число разделов каждой очереди (1 - обычная очередь)
+//   load.connections                 - размер пула соединений (производители + потребители)
+//   load.rate                        - общая целевая скорость, сообщений в секунду; 0 - без ограничения (1000)
+//   load.size                        - размер сообщения: 1024, диапазон 128-4096 или список 128,1024,65536 (128)
+//   load.durationSeconds             - длительность прогона (60)
+//   load.reportSeconds               - период отчета (5)
+//   load.maxInFlight                 - наибольшее число неподтвержденных сообщений (10000)
+//
+// Нагрузка открытая: каждое сообщение имеет запланированное время отправки, и задержки считаются от него,
+// поэтому замедление брокера не скрывается тем, что генератор сам начинает отправлять реже (coordinated omission).
+// В первые 8 байтов сообщения записывается запланированное время, по нему потребитель считает сквозную задержку.
+public class LoadGenerator {
+
+    private static final String QUEUE_PREFIX = "load-"; // Префикс имен очередей прогона
+
+    private final String host = System.getProperty("load.host", "localhost"); // Адрес брокера
+    private final int port = Integer.getInteger("load.port", 1234); // Порт брокера (литерал: обращение к Server.PORT запустило бы статическую инициализацию сервера)
+    private final int producers = Math.max(0, Integer.getInteger("load.producers", 1)); // Число производителей
+    private final int consumers = Math.max(0, Integer.getInteger("load.consumers", 1)); // Число потребителей
+    private final int queues = Math.max(1, Integer.getInteger("load.queues", 1)); // Число очередей
+    private final int partitions = Math.max(1, Integer.getInteger("load.partitions", 1)); // Число разделов очереди
+    private final int connections = Integer.getInteger("load.connections", Math.max(1, producers + consumers)); // Размер пула
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "1000")); // Целевая скорость
+    private final int[] sizes = parseSizes(System.getProperty("load.size", "128")); // Распределение размеров
+    private final long durationNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("load.durationSeconds", 60)); // Длительность
+    private final long reportNanos = TimeUnit.SECONDS.toNanos(Math.max(1, Integer.getInteger("load.reportSeconds", 5))); // Период отчета
+    private final Semaphore inFlight = new Semaphore(Integer.getInteger("load.maxInFlight", 10_000)); // Ограничение запросов в пути
+
+    private final LongAdder sent = new LongAdder(); // Отправлено сообщений
+    private final LongAdder acked = new LongAdder(); // Подтверждено брокером
+    private final LongAdder consumed = new LongAdder(); // Получено потребителями
+    private final LongAdder errors = new LongAdder(); // Ошибки отправки и получения
+    private final LatencyHistogram ackTotal = new LatencyHistogram(); // Задержка подтверждения за весь прогон
+    private final LatencyHistogram endToEndTotal = new LatencyHistogram(); // Сквозная задержка за весь прогон
+    private final AtomicReference<LatencyHistogram> ackInterval = new AtomicReference<>(new LatencyHistogram()); // Задержка подтверждения за интервал
+    private final AtomicReference<LatencyHistogram> endToEndInterval = new AtomicReference<>(new LatencyHistogram()); // Сквозная задержка за интервал
+    private volatile boolean running = true; // Идет ли прогон
+
+    public static void main(String[] args) { // Главный метод, точка входа в программу
+        try {
+            new LoadGenerator().run(); // Запускаем прогон
+        } catch (IOException | InterruptedException e) { // Обработка ошибок подключения
+            System.err.println("Ошибка генератора нагрузки: " + e.getMessage()); // Сообщаем об ошибке
+        }
+    }
+
+    // Метод для проведения прогона: потоки нагрузки, периодические отчеты, итог
+    public void run() throws IOException, InterruptedException {
+        System.out.println("Нагрузка: производителей " + producers + ", потребителей " + consumers + ", очередей " + queues
+                + ", соединений " + connections + ", скорость " + (rate > 0 ? rate + "/с" : "без ограничения")
+                + ", размер " + System.getProperty("load.size", "128") + " байт."); // Сообщаем о настройках
+        try (BrokerClient client = new BrokerClient(host, port, connections)) { // Пул соединений для всех потоков
+            for (int q = 0; q < queues; q++) { // Для каждой очереди
+                client.open(QUEUE_PREFIX + q, partitions).join(); // Создаем ее заранее
+            }
+
+            List<Thread> threads = new ArrayList<>(); // Потоки нагрузки
+            long start = System.nanoTime(); // Начало прогона
+            for (int p = 0; p < producers; p++) { // Для каждого производителя
+                int id = p; // Номер производителя
+                threads.add(new Thread(() -> produce(client, id, start), "load-producer-" + p)); // Поток производителя
+            }
+            for (int c = 0; c < consumers; c++) { // Для каждого потребителя
+                int id = c; // Номер потребителя
+                threads.add(new Thread(() -> consume(client, id), "load-consumer-" + c)); // Поток потребителя
+            }
+            for (Thread thread : threads) { // Для каждого потока
+                thread.setDaemon(true); // Потоки не должны мешать завершению программы
+                thread.start(); // Запускаем поток
+            }
+
+            long nextReport = start + reportNanos; // Время следующего отчета
+            long lastSent = 0, lastAcked = 0, lastConsumed = 0; // Счетчики на момент прошлого отчета
+            while (System.nanoTime() - start < durationNanos) { // Пока прогон не закончился
+                LockSupport.parkNanos(Math.max(0, Math.min(nextReport, start + durationNanos) - System.nanoTime())); // Ждем до отчета
+                if (System.nanoTime() < nextReport) { // Прогон закончился раньше отчета или ожидание прервалось
+                    continue; // Проверяем условие цикла
+                }
+                double seconds = reportNanos / 1e9; // Длина интервала
+                long s = sent.sum(), a = acked.sum(), c = consumed.sum(); // Текущие счетчики
+                System.out.printf("%6.0f с: отправлено %.0f/с, подтверждено %.0f/с, получено %.0f/с, ошибок %d%n"
+                                + "        подтверждение %s%n        сквозная %s%n        %s%n",
+                        (System.nanoTime() - start) / 1e9, (s - lastSent) / seconds, (a - lastAcked) / seconds,
+                        (c - lastConsumed) / seconds, errors.sum(),
+                        describe(ackInterval.getAndSet(new LatencyHistogram())),
+                        describe(endToEndInterval.getAndSet(new LatencyHistogram())), serverMemory()); // Отчет за интервал
+                lastSent = s; // Запоминаем счетчики
+                lastAcked = a;
+                lastConsumed = c;
+                nextReport += reportNanos; // Следующий отчет
+            }
+            running = false; // Останавливаем производителей и потребителей
+            for (Thread thread : threads) { // Для каждого потока
+                thread.join(TimeUnit.SECONDS.toMillis(5)); // Даем потребителям дочитать очереди
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9; // Фактическая длительность
+            System.out.printf("Итог за %.0f с: отправлено %d (%.0f/с), подтверждено %d, получено %d, ошибок %d%n"
+                            + "  подтверждение %s%n  сквозная %s%n  %s%n",
+                    seconds, sent.sum(), sent.sum() / seconds, acked.sum(), consumed.sum(), errors.sum(),
+                    describe(ackTotal), describe(endToEndTotal), serverMemory()); // Итоговый отчет
+        }
+    }
+
+    // Основной цикл производителя: сообщения отправляются по расписанию, не дожидаясь подтверждений
+    private void produce(BrokerClient client, int id, long start) {
+        double perProducer = rate / Math.max(1, producers); // Доля целевой скорости на производителя
+        long intervalNanos = rate > 0 ? (long) (1e9 / perProducer) : 0; // Промежуток между сообщениями
+        long intended = start + (intervalNanos * id) / Math.max(1, producers); // Сдвигаем производителей, чтобы не отправляли разом
+        long sequence = id; // Номер сообщения для выбора очереди
+        while (running && intended - start < durationNanos) { // Пока прогон идет
+            if (intervalNanos > 0) { // Открытая нагрузка
+                long wait = intended - System.nanoTime(); // Сколько ждать до запланированного времени
+                if (wait > 0) { // Если время еще не пришло
+                    LockSupport.parkNanos(wait); // Ждем
+                }
+            } else { // Без ограничения скорости
+                intended = System.nanoTime(); // Отправляем сразу
+            }
+            long scheduled = intended; // Запланированное время этого сообщения
+            try {
+                inFlight.acquire(); // Ожидание свободного места тоже входит в задержку - она считается от запланированного времени
+            } catch (InterruptedException e) { // Если поток прервали
+                return; // Завершаем производителя
+            }
+            ByteBuffer payload = ByteBuffer.allocate(nextSize()); // Сообщение
+            payload.putLong(0, scheduled); // Запланированное время для расчета сквозной задержки
+            String queue = QUEUE_PREFIX + (sequence++ % queues); // Очередь сообщения
+            sent.increment(); // Учитываем отправку
+            client.publish(queue, payload).whenComplete((ignored, error) -> { // Отправляем асинхронно
+                inFlight.release(); // Освобождаем место
+                if (error != null) { // Если брокер не принял сообщение
+                    errors.increment(); // Учитываем ошибку
+                    return; // Выходим из обработчика
+                }
+                long latency = System.nanoTime() - scheduled; // Задержка подтверждения
+                acked.increment(); // Учитываем подтверждение
+                ackTotal.record(latency); // Записываем задержку за прогон
+                ackInterval.get().record(latency); // И за интервал
+            });
+            intended += intervalNanos; // Следующее запланированное время
+        }
+    }
+
+    // Основной цикл потребителя: забирает сообщения из своих очередей пакетами
+    private void consume(BrokerClient client, int id) {
+        List<String> own = new ArrayList<>(); // Очереди потребителя
+        for (int q = id % queues; q < queues; q += Math.max(1, consumers)) { // Очереди распределяются по кругу
+            own.add(QUEUE_PREFIX + q); // Добавляем очередь
+        }
+        if (own.isEmpty()) { // Потребителей больше, чем очередей
+            own.add(QUEUE_PREFIX + (id % queues)); // Несколько потребителей делят одну очередь
+        }
+        long idleSince = 0; // Время, с которого очереди пусты после окончания прогона
+        while (true) { // Цикл получения
+            boolean empty = true; // Были ли все очереди пусты за этот проход
+            for (String queue : own) { // Для каждой очереди
+                List<ByteBuffer> messages; // Полученные сообщения
+                try {
+                    messages = client.fetch(queue, 256).join(); // Забираем до 256 сообщений
+                } catch (RuntimeException e) { // Ошибка получения
+                    errors.increment(); // Учитываем ошибку
+                    continue; // Переходим к следующей очереди
+                }
+                long now = System.nanoTime(); // Время получения
+                for (ByteBuffer message : messages) { // Для каждого сообщения
+                    long latency = now - message.getLong(0); // Сквозная задержка от запланированного времени
+                    endToEndTotal.record(latency); // Записываем задержку за прогон
+                    endToEndInterval.get().record(latency); // И за интервал
+                }
+                consumed.add(messages.size()); // Учитываем полученные сообщения
+                empty &= messages.isEmpty(); // Запоминаем, была ли очередь пуста
+            }
+            if (!empty) { // Если сообщения были
+                idleSince = 0; // Сбрасываем время простоя
+                continue; // Сразу забираем следующие
+            }
+            if (!running) { // Прогон закончился и очереди пусты
+                if (idleSince == 0) { // Первый пустой проход после окончания
+                    idleSince = System.nanoTime(); // Запоминаем время
+                } else if (System.nanoTime() - idleSince > TimeUnit.MILLISECONDS.toNanos(200)) { // Сообщений больше не будет
+                    return; // Завершаем потребителя
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100)); // Короткая пауза, чтобы не нагружать брокер пустыми выборками
+        }
+    }
+
+    // Метод для выбора размера очередного сообщения
+    private int nextSize() {
+        ThreadLocalRandom random = ThreadLocalRandom.current(); // Генератор потока
+        int size; // Размер сообщения
+        if (sizes.length == 3 && sizes[0] < 0) { // Диапазон: [-1, от, до]
+            size = random.nextInt(sizes[1], sizes[2] + 1); // Равномерно в диапазоне
+        } else { // Список размеров (или один размер)
+            size = sizes[random.nextInt(sizes.length)]; // Любой из списка
+        }
+        return Math.max(8, size); // В сообщение должно поместиться время отправки
+    }
+
+    // Метод для разбора распределения размеров: 1024, 128-4096 или 128,1024,65536
+    private static int[] parseSizes(String spec) {
+        String[] range = spec.split("-"); // Диапазон задается через дефис
+        if (range.length == 2) { // Если это диапазон
+            return new int[] {-1, Integer.parseInt(range[0].trim()), Integer.parseInt(range[1].trim())}; // Признак диапазона и границы
+        }
+        String[] list = spec.split(","); // Список через запятую
+        int[] sizes = new int[list.length]; // Размеры
+        for (int i = 0; i < list.length; i++) { // Для каждого элемента
+            sizes[i] = Integer.parseInt(list[i].trim()); // Разбираем число
+        }
+        return sizes; // Возвращаем список
+    }
+
+    // Метод для описания гистограммы задержек в микросекундах
+    private static String describe(LatencyHistogram histogram) {
+        return "p50=" + LatencyHistogram.micros(histogram.getPercentile(0.5))
+                + " p99=" + LatencyHistogram.micros(histogram.getPercentile(0.99))
+                + " p999=" + LatencyHistogram.micros(histogram.getPercentile(0.999))
+                + " max=" + LatencyHistogram.micros(histogram.getMax()) + " мкс (n=" + histogram.getCount() + ")"; // Процентили
+    }
+
+    // Метод для получения строки о памяти сервера командой stats текстового протокола
+    private String serverMemory() {
+        try (Socket socket = new Socket(host, port)) { // Отдельное текстовое соединение
+            OutputStream out = socket.getOutputStream(); // Поток команд
+            out.write("stats\n".getBytes(StandardCharsets.UTF_8)); // Запрашиваем сводку
+            out.flush(); // Отправляем команду
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream())); // Поток ответа
+            byte[] reply = new byte[in.readInt()]; // Буфер под ответ
+            in.readFully(reply); // Читаем ответ целиком
+            for (String line : new String(reply, StandardCharsets.UTF_8).split("\n")) { // Ищем строку о памяти
+                if (line.startsWith("Память")) { // Если нашли
+                    return "Сервер: " + line; // Возвращаем ее
+                }
+            }
+            return "Сервер: память неизвестна."; // Сервер не сообщает о памяти
+        } catch (IOException e) { // Сервер недоступен
+            return "Сервер: ошибка запроса статистики: " + e.getMessage(); // Сообщаем об ошибке
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.ArrayList; // Импортируем список
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.ConcurrentLinkedQueue; // Импортируем неблокирующую очередь для множества производителей и потребителей
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем атомарный счетчик
+import java.util.concurrent.atomic.AtomicLong; // Импортируем атомарный счетчик для объема очереди
+
+// Именованная очередь сообщений, безопасная для одновременной работы нескольких потоков.
+// Сообщения хранятся как есть - байтами, прочитанными из сокета; буфер сообщения никогда не изменяется,
+// а при отправке каждый раз берется его duplicate().
+// Память под сообщения ограничивается QueueLimits; при политике spill хвост очереди уходит на диск
+// и подкачивается обратно по мере извлечения, так что порядок сообщений сохраняется.
+public class MessageQueue {
+
+    private static final int CLOSED = Integer.MIN_VALUE; // Признак закрытой (удаленной) очереди
+
+    private final String name; // Имя очереди
+    private final QueueLog log; // Журнал на диске или null, если очередь хранится только в памяти
+    private final ConcurrentLinkedQueue<Entry> messages = new ConcurrentLinkedQueue<>(); // Сообщения очереди с временем добавления
+    private final AtomicInteger depth = new AtomicInteger(); // Количество сообщений в памяти
+    private final AtomicLong bytes = new AtomicLong(); // Суммарный размер сообщений в памяти в байтах
+    private final int quotaShare; // На сколько частей делятся ограничения очереди (у раздела - число разделов)
+    private final Object overflowLock = new Object(); // Блокировка выгрузки хвоста на диск и его подкачки
+    private OverflowStore overflow; // Хвост очереди на диске или null (под overflowLock)
+    private volatile boolean overflowing; // Есть ли хвост на диске: пока он есть, новые сообщения тоже идут на диск
+    private volatile int spilledDepth; // Количество сообщений на диске (меняется под overflowLock)
+    private volatile long spilledBytes; // Размер сообщений на диске (меняется под overflowLock)
+    private final AtomicInteger producers = new AtomicInteger(); // Число производителей, добавляющих сообщение прямо сейчас, или CLOSED
+    private final ConcurrentLinkedQueue<Subscriber> ready = new ConcurrentLinkedQueue<>(); // Потребители, готовые принять сообщение
+    private final AtomicInteger dispatching = new AtomicInteger(); // Счетчик запросов на раздачу (раздает только один поток)
+    private final AtomicInteger consumers = new AtomicInteger(); // Число ожидающих потребителей и подписок
+    private volatile long lastActivity = System.currentTimeMillis(); // Время последнего добавления или извлечения сообщения
+    long expiryTick; // Шаг колеса таймеров, на котором очередь будет проверена (записывается до постановки в слот)
+    private final QueueMetrics metrics; // Показатели очереди (у разделов - общие с разделенной очередью)
+
+    // Конструктор, принимающий имя очереди
+    public MessageQueue(String name) {
+        this(name, (QueueLog) null); // Очередь только в памяти
+    }
+
+    // Конструктор, принимающий имя очереди и журнал на диске
+    public MessageQueue(String name, QueueLog log) {
+        this.name = name; // Сохраняем имя
+        this.log = log; // Сохраняем журнал
+        this.metrics = new QueueMetrics(this); // Собственные показатели
+        this.quotaShare = 1; // Ограничения очереди целиком ее
+    }
+
+    // Конструктор раздела разделенной очереди: раздел пишет в показатели всей очереди и получает долю ее ограничений
+    MessageQueue(String name, QueueMetrics metrics, int quotaShare) {
+        this.name = name; // Сохраняем имя
+        this.log = null; // Разделы хранятся только в памяти
+        this.metrics = metrics; // Общие показатели
+        this.quotaShare = quotaShare; // Доля ограничений
+    }
+
+    // Метод для получения журнала очереди (null, если очередь хранится только в памяти)
+    QueueLog getLog() {
+        return log; // Возвращаем журнал
+    }
+
+    // Метод для получения показателей очереди
+    public QueueMetrics getMetrics() {
+        return metrics; // Возвращаем показатели
+    }
+
+    // Метод для получения числа ожидающих потребителей и подписок
+    public int getConsumers() {
+        return consumers.get(); // Возвращаем число потребителей
+    }
+
+    // Метод для получения имени очереди
+    public String getName() {
+        return name; // Возвращаем имя
+    }
+
+    // Метод для получения времени последней активности очереди
+    public long getLastActivity() {
+        return lastActivity; // Возвращаем время в миллисекундах
+    }
+
+    // Метод для получения количества сообщений в очереди (в памяти и на диске)
+    public int getDepth() {
+        return depth.get() + spilledDepth; // Возвращаем количество
+    }
+
+    // Метод для получения суммарного размера сообщений очереди (в памяти и на диске)
+    public long getBytes() {
+        return bytes.get() + spilledBytes; // Возвращаем размер в байтах
+    }
+
+    // Метод для получения количества сообщений, выгруженных на диск
+    public int getSpilledDepth() {
+        return spilledDepth; // Возвращаем количество
+    }
+
+    // Метод для получения размера сообщений, выгруженных на диск
+    public long getSpilledBytes() {
+        return spilledBytes; // Возвращаем размер в байтах
+    }
+
+    // Метод для проверки, нужно ли приостановить производителей (очередь или память заполнены, политика block)
+    public boolean blocksProducers() {
+        return QueueLimits.check(depth.get(), bytes.get(), quotaShare, 1) == QueueLimits.Policy.BLOCK; // Следующее сообщение не поместится
+    }
+
+    // Метод для добавления сообщения; возвращает false, если очередь уже удалена (isClosed) или переполнена и сообщение отклонено
+    public boolean offer(ByteBuffer message) {
+        while (true) { // Повторяем, пока не удастся отметить себя как производителя
+            int state = producers.get(); // Текущее состояние
+            if (state == CLOSED) { // Если очередь закрыта
+                return false; // Сообщение не добавлено
+            }
+            if (producers.compareAndSet(state, state + 1)) { // Отмечаем начало добавления
+                break; // Выходим из цикла
+            }
+        }
+        try {
+            QueueLimits.Policy policy = QueueLimits.check(depth.get(), bytes.get(), quotaShare, message.remaining()); // Есть ли место в памяти
+            if (policy == QueueLimits.Policy.REJECT) { // Если переполненная очередь отклоняет сообщения
+                metrics.rejected.increment(); // Учитываем отказ
+                return false; // Сообщение не добавлено
+            }
+            if (policy == QueueLimits.Policy.DROP_OLDEST) { // Если переполненная очередь вытесняет старые сообщения
+                dropOldest(message.remaining()); // Освобождаем место
+            }
+            if (log == null) { // Если очередь хранится только в памяти
+                store(new Entry(message, System.nanoTime(), false), policy == QueueLimits.Policy.SPILL); // Добавляем сообщение без блокировок (или на диск)
+            } else {
+                append(message, policy == QueueLimits.Policy.SPILL); // Записываем сообщение в журнал и в память в одном порядке
+            }
+            metrics.enqueued.increment(); // Учитываем добавление
+            lastActivity = System.currentTimeMillis(); // Отмечаем активность очереди
+        } finally {
+            producers.decrementAndGet(); // Отмечаем окончание добавления
+        }
+        if (!ready.isEmpty()) { // Если сообщения ждут потребители
+            dispatch(); // Раздаем сообщения
+        }
+        return true; // Сообщение добавлено
+    }
+
+    // Метод для добавления сообщения с ключом; обычная очередь ключ не использует, разделенная выбирает по нему раздел
+    public boolean offer(ByteBuffer message, String key) {
+        return offer(message); // Ключ не влияет на порядок в единственной очереди
+    }
+
+    // Метод для дозаписи сообщения в журнал; порядок в журнале и в памяти должен совпадать, иначе смещение потребителя разойдется
+    // Сообщение, которое записать не удалось, остается только в памяти и не сдвигает смещение потребителя при извлечении
+    private void append(ByteBuffer message, boolean spill) {
+        synchronized (log) { // Дозапись в журнал одной очереди и так последовательна
+            boolean logged = false; // Записано ли сообщение в журнал
+            try {
+                logged = log.append(message.duplicate()); // Дописываем сообщение в сегмент (без сброса на диск)
+            } catch (IOException e) { // Обработка ошибок записи
+                System.err.println("Ошибка записи в журнал очереди '" + name + "': " + e.getMessage()); // Сообщение останется только в памяти
+            }
+            store(new Entry(message, System.nanoTime(), logged), spill); // Добавляем сообщение в память или в хвост на диске
+        }
+    }
+
+    // Метод для размещения сообщения: в память или, если хвост уже на диске либо так требует политика, в хвост на диске
+    private void store(Entry message, boolean spill) {
+        if ((spill || overflowing) && spill(message)) { // Пока хвост на диске, новые сообщения идут за ним, иначе порядок нарушится
+            return; // Сообщение выгружено
+        }
+        int size = message.payload.remaining(); // Размер сообщения
+        depth.incrementAndGet(); // Учитываем сообщение до того, как его увидят потребители
+        bytes.addAndGet(size); // Учитываем его размер
+        QueueLimits.added(size); // Учитываем его в общей памяти
+        messages.offer(message); // Добавляем сообщение без блокировок
+    }
+
+    // Метод для выгрузки сообщения в хвост на диске; false, если записать не удалось (сообщение останется в памяти)
+    private boolean spill(Entry message) {
+        synchronized (overflowLock) { // Выгрузка и подкачка не пересекаются
+            try {
+                if (overflow == null) { // Если хвоста еще нет
+                    overflow = new OverflowStore(name); // Создаем его
+                }
+                overflow.append(message.payload, message.enqueuedAt, message.logged); // Дописываем сообщение
+                spilledDepth++; // Учитываем сообщение на диске
+                spilledBytes += message.payload.remaining(); // Учитываем его размер
+                overflowing = true; // Следующие сообщения тоже пойдут на диск
+                metrics.spilled.increment(); // Учитываем выгрузку
+                return true; // Сообщение выгружено
+            } catch (IOException e) { // Обработка ошибок записи
+                System.err.println("Ошибка выгрузки сообщения очереди '" + name + "' на диск: " + e.getMessage()); // Сообщение останется в памяти
+                return false; // Сообщение не выгружено
+            }
+        }
+    }
+
+    // Метод для подкачки хвоста с диска в память, пока в памяти есть место (пустую память наполняем хотя бы одним сообщением)
+    private void pageIn() {
+        synchronized (overflowLock) { // Выгрузка и подкачка не пересекаются
+            try {
+                for (int loaded = 0; overflowing && loaded < QueueLimits.PAGE_IN_BATCH; loaded++) { // Подкачиваем порцию сообщений
+                    int length = overflow.nextLength(); // Длина следующего сообщения
+                    if (length < 0) { // Если хвост прочитан целиком
+                        overflow.clear(); // Удаляем его сегменты
+                        overflowing = false; // Новые сообщения снова идут в память
+                        break; // Выходим из цикла
+                    }
+                    if (depth.get() > 0 && QueueLimits.check(depth.get(), bytes.get(), quotaShare, length) != null) { // Если в памяти нет места
+                        break; // Подкачаем позже
+                    }
+                    long enqueuedAt = overflow.nextEnqueuedAt(); // Время добавления сообщения
+                    boolean logged = overflow.nextLogged(); // Записано ли сообщение в журнал
+                    ByteBuffer payload = overflow.read(); // Читаем сообщение
+                    spilledDepth--; // Сообщение покинуло диск
+                    spilledBytes -= length; // Освобождаем его размер
+                    depth.incrementAndGet(); // Учитываем сообщение в памяти
+                    bytes.addAndGet(length); // Учитываем его размер
+                    QueueLimits.added(length); // Учитываем его в общей памяти
+                    messages.offer(new Entry(payload, enqueuedAt, logged)); // Сообщение становится в конец памяти (новые пока идут на диск)
+                }
+                if (overflowing && spilledDepth == 0) { // Если хвост прочитан целиком
+                    overflow.clear(); // Удаляем его сегменты
+                    overflowing = false; // Новые сообщения снова идут в память
+                }
+            } catch (IOException e) { // Обработка ошибок чтения
+                System.err.println("Ошибка подкачки очереди '" + name + "' с диска, потеряно сообщений: " + spilledDepth + ": " + e.getMessage()); // Сообщаем об ошибке
+                overflow.clear(); // Поврежденный хвост больше не читается
+                spilledDepth = 0; // Сообщений на диске нет
+                spilledBytes = 0; // Размер на диске нулевой
+                overflowing = false; // Новые сообщения снова идут в память
+            }
+        }
+    }
+
+    // Метод для вытеснения самых старых сообщений, пока сообщение размером size не поместится
+    private void dropOldest(int size) {
+        while (QueueLimits.check(depth.get(), bytes.get(), quotaShare, size) != null) { // Пока места нет
+            if (remove() == null) { // Если вытеснять больше нечего (память занята другими очередями)
+                return; // Сообщение все равно будет добавлено
+            }
+            metrics.dropped.increment(); // Учитываем вытеснение
+        }
+    }
+
+    // Метод для возврата в очередь сообщения, прочитанного из журнала при восстановлении
+    void restore(ByteBuffer message) {
+        depth.incrementAndGet(); // Учитываем сообщение
+        bytes.addAndGet(message.remaining()); // Учитываем его размер
+        QueueLimits.added(message.remaining()); // Учитываем его в общей памяти
+        messages.offer(new Entry(message, System.nanoTime(), true)); // Сообщение уже есть в журнале, дописывать его не нужно (время в очереди считается с восстановления)
+    }
+
+    // Метод для удаления первого сообщения из памяти с учетом смещения потребителя в журнале и подкачкой хвоста с диска
+    private Entry remove() {
+        Entry entry = messages.poll(); // Извлекаем сообщение без блокировок
+        if (entry == null && overflowing) { // Если память пуста, но хвост на диске
+            pageIn(); // Подкачиваем его
+            entry = messages.poll(); // И пробуем снова
+        }
+        if (entry == null) { // Если очередь пуста
+            return null; // Извлекать нечего
+        }
+        return removed(entry); // Учитываем удаление
+    }
+
+    // Метод для учета сообщения, снятого с головы очереди: размеры, смещение потребителя, подкачка хвоста
+    private Entry removed(Entry entry) {
+        depth.decrementAndGet(); // Сообщение покинуло очередь
+        bytes.addAndGet(-entry.payload.remaining()); // Освобождаем его размер
+        QueueLimits.removed(entry.payload.remaining()); // Освобождаем общую память
+        if (entry.logged) { // Если сообщение записано в журнал
+            log.markConsumed(); // Сдвигаем смещение потребителя
+        }
+        if (overflowing && depth.get() < QueueLimits.PAGE_IN_BATCH) { // Если память почти опустела, а хвост на диске
+            pageIn(); // Подкачиваем его заранее, чтобы потребители не ждали диска
+        }
+        return entry; // Возвращаем сообщение
+    }
+
+    // Метод для извлечения сообщения потребителем
+    private ByteBuffer take() {
+        Entry entry = remove(); // Удаляем первое сообщение
+        if (entry == null) { // Если очередь пуста
+            return null; // Извлекать нечего
+        }
+        metrics.dequeued.increment(); // Учитываем извлечение
+        metrics.timeInQueue.recordSince(entry.enqueuedAt); // Учитываем время, проведенное сообщением в очереди
+        return entry.payload; // Возвращаем сообщение
+    }
+
+    // Метод для регистрации потребителя (пока он есть, очередь не удаляется по простою)
+    void attach() {
+        consumers.incrementAndGet(); // Увеличиваем число потребителей
+        lastActivity = System.currentTimeMillis(); // Отмечаем активность очереди
+    }
+
+    // Метод для снятия потребителя с учета
+    void detach() {
+        consumers.decrementAndGet(); // Уменьшаем число потребителей
+        lastActivity = System.currentTimeMillis(); // Отмечаем активность очереди
+    }
+
+    // Метод для постановки потребителя в список готовых и раздачи ему сообщений
+    void ready(Subscriber subscriber) {
+        enqueue(subscriber); // Ставим потребителя в конец списка готовых
+        dispatch(); // Раздаем сообщения, если они есть
+    }
+
+    // Метод для постановки потребителя в конец списка готовых (не более одного раза)
+    private void enqueue(Subscriber subscriber) {
+        if (subscriber.queued.compareAndSet(false, true)) { // Если потребителя еще нет в списке
+            ready.add(subscriber); // Добавляем его
+        }
+    }
+
+    // Метод для раздачи сообщений готовым потребителям по кругу; одновременно раздает только один поток
+    private void dispatch() {
+        if (dispatching.getAndIncrement() != 0) { // Если раздачей уже занят другой поток
+            return; // Он учтет наш запрос и повторит проход
+        }
+        int missed = 1; // Количество учтенных запросов на раздачу
+        do {
+            while (hasMessages()) { // Пока есть сообщения
+                Subscriber subscriber = ready.poll(); // Берем первого готового потребителя
+                if (subscriber == null) { // Если готовых потребителей нет
+                    break; // Сообщения подождут
+                }
+                subscriber.queued.set(false); // Потребитель покинул список готовых
+                if (!subscriber.reserve()) { // Если потребитель отменен или его окно исчерпано
+                    continue; // Он вернется в список сам, когда снова сможет принимать
+                }
+                ByteBuffer message = take(); // Извлекаем сообщение
+                if (message == null) { // Сообщение успел забрать обычный receive
+                    subscriber.release(); // Возвращаем зарезервированное место
+                    enqueue(subscriber); // Потребитель остается готовым
+                    break; // Сообщений больше нет
+                }
+                lastActivity = System.currentTimeMillis(); // Отмечаем активность очереди
+                subscriber.deliver(message); // Передаем сообщение потребителю
+                if (subscriber.hasCredit()) { // Если потребитель может принять еще
+                    enqueue(subscriber); // Ставим его в конец - потребители получают сообщения по очереди
+                }
+            }
+            missed = dispatching.addAndGet(-missed); // Проверяем, не просили ли раздачу во время прохода
+        } while (missed != 0); // Повторяем, пока запросы есть
+    }
+
+    // Метод для извлечения сообщения; возвращает null, если очередь пуста
+    public ByteBuffer poll() {
+        ByteBuffer message = take(); // Извлекаем сообщение
+        if (message != null) { // Если сообщение было
+            lastActivity = System.currentTimeMillis(); // Отмечаем активность очереди
+        }
+        return message; // Возвращаем сообщение или null
+    }
+
+    // Метод для извлечения первого сообщения, только если оно не длиннее maxBytes (для выборки пачкой с
+    // ограничением размера кадра); null, если очередь пуста или первое сообщение не помещается
+    public ByteBuffer poll(long maxBytes) {
+        while (true) { // Повторяем, пока первое сообщение забирают другие потребители
+            Entry entry = messages.peek(); // Первое сообщение в памяти
+            if (entry == null && overflowing) { // Если память пуста, но хвост на диске
+                pageIn(); // Подкачиваем его
+                entry = messages.peek(); // И смотрим снова
+            }
+            if (entry == null || entry.payload.remaining() > maxBytes) { // Очередь пуста или сообщение не помещается
+                return null; // Ничего не извлекаем
+            }
+            if (messages.remove(entry)) { // Если сообщение никто не забрал раньше нас
+                removed(entry); // Учитываем удаление
+                metrics.dequeued.increment(); // Учитываем извлечение
+                metrics.timeInQueue.recordSince(entry.enqueuedAt); // Учитываем время, проведенное сообщением в очереди
+                lastActivity = System.currentTimeMillis(); // Отмечаем активность очереди
+                return entry.payload; // Возвращаем сообщение
+            }
+        }
+    }
+
+    // Метод для чтения до max первых сообщений без извлечения (для передачи очереди другому узлу кластера).
+    // Если память пуста, а хвост на диске, он подкачивается, поэтому первые сообщения всегда видны
+    List<ByteBuffer> peek(int max) {
+        if (messages.isEmpty() && overflowing) { // Если сообщения только на диске
+            pageIn(); // Подкачиваем их
+        }
+        List<ByteBuffer> head = new ArrayList<>(); // Первые сообщения
+        for (Entry entry : messages) { // Обходим память от головы
+            if (head.size() >= max) { // Порция набрана
+                break; // Выходим из цикла
+            }
+            head.add(entry.payload); // Добавляем сообщение
+        }
+        return head; // Возвращаем сообщения по порядку
+    }
+
+    // Метод для извлечения первого сообщения, только если это payload, прочитанное через peek;
+    // возвращает false, если его уже забрал другой потребитель или вытеснила политика drop-oldest
+    boolean removeIfHead(ByteBuffer payload) {
+        Entry entry = messages.peek(); // Первое сообщение в памяти
+        if (entry == null || entry.payload != payload || !messages.remove(entry)) { // Сообщение уже не первое или его забрали
+            return false; // Ничего не извлекаем
+        }
+        removed(entry); // Учитываем удаление
+        metrics.dequeued.increment(); // Учитываем извлечение
+        lastActivity = System.currentTimeMillis(); // Отмечаем активность очереди
+        return true; // Сообщение извлечено
+    }
+
+    // Метод для проверки, пуста ли очередь
+    public boolean isEmpty() {
+        return !hasMessages(); // Проверяем наличие сообщений
+    }
+
+    // Метод для проверки наличия сообщений в памяти или на диске
+    private boolean hasMessages() {
+        return !messages.isEmpty() || overflowing; // Сообщения есть в памяти или в хвосте
+    }
+
+    // Метод для проверки, закрыта ли очередь
+    public boolean isClosed() {
+        return producers.get() == CLOSED; // Сравниваем состояние с признаком закрытия
+    }
+
+    // Метод для атомарного закрытия очереди, только если она пуста и в нее никто не пишет
+    boolean closeIfEmpty() {
+        if (hasMessages() || consumers.get() > 0) { // Если в очереди есть сообщения или ее ждут потребители
+            return false; // Закрывать нельзя
+        }
+        if (!producers.compareAndSet(0, CLOSED)) { // Если кто-то добавляет сообщение прямо сейчас
+            return false; // Закрывать нельзя
+        }
+        if (hasMessages()) { // Сообщение успело появиться до закрытия
+            producers.set(0); // Снова открываем очередь
+            return false; // Закрывать нельзя
+        }
+        return true; // Очередь закрыта, новые сообщения в нее не попадут
+    }
+
+    // Метод для отмены закрытия, если очередь все-таки не удаляется (используется разделенной очередью)
+    void reopen() {
+        producers.compareAndSet(CLOSED, 0); // Снова принимаем сообщения
+    }
+
+    // Сообщение вместе со временем добавления (для гистограммы времени нахождения в очереди)
+    private static final class Entry {
+
+        final ByteBuffer payload; // Байты сообщения
+        final long enqueuedAt; // Время добавления
+        final boolean logged; // Записано ли сообщение в журнал (только такие сообщения занимают смещение)
+
+        // Конструктор, принимающий байты сообщения, время добавления (у подкачанного с диска - исходное) и признак записи в журнал
+        Entry(ByteBuffer payload, long enqueuedAt, boolean logged) {
+            this.payload = payload; // Сохраняем сообщение
+            this.enqueuedAt = enqueuedAt; // Сохраняем время
+            this.logged = logged; // Сохраняем признак
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.broker;
+
+import java.lang.management.ManagementFactory; // Импортируем доступ к серверу MBean платформы
+import java.util.ArrayList; // Импортируем список
+import java.util.Comparator; // Импортируем сравнение очередей при выборе самых нагруженных
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import java.util.concurrent.atomic.LongAdder; // Импортируем распределенный счетчик
+import javax.management.JMException; // Импортируем исключения JMX
+import javax.management.MBeanServer; // Импортируем сервер MBean
+import javax.management.ObjectName; // Импортируем имена MBean
+
+// Показатели брокера: соединения, создание и удаление очередей, задержки обработки команд.
+// На горячем пути только увеличиваются LongAdder и корзины гистограмм; все суммирование выполняется
+// при запросе stats, обращении через JMX или в периодическом снимке.
+public class Metrics implements MetricsMBean {
+
+    public static final boolean JMX_ENABLED = Boolean.parseBoolean(System.getProperty("broker.jmx", "true")); // Регистрировать ли MBean
+    private static final int TOP_QUEUES = 5; // Сколько самых нагруженных очередей показывать в сводке
+
+    private final QueueRegistry registry; // Реестр очередей
+    private final MBeanServer mbeans = JMX_ENABLED ? ManagementFactory.getPlatformMBeanServer() : null; // Сервер MBean или null
+    private final LongAdder connectionsOpened = new LongAdder(); // Открыто соединений
+    private final LongAdder connectionsClosed = new LongAdder(); // Закрыто соединений
+    private final LongAdder queuesCreated = new LongAdder(); // Создано очередей
+    private final LongAdder queuesExpired = new LongAdder(); // Удалено очередей по простою
+    final LatencyHistogram send = new LatencyHistogram(); // Время обработки send
+    final LatencyHistogram receive = new LatencyHistogram(); // Время обработки receive (без ожидания сообщения)
+    final LatencyHistogram message = new LatencyHistogram(); // Время от команды message до добавления тела в очередь
+    final LatencyHistogram binary = new LatencyHistogram(); // Время обработки двоичного кадра
+    private long lastSample = System.nanoTime(); // Время прошлого замера скоростей (меняет только поток статистики)
+
+    // Конструктор, принимающий реестр очередей
+    public Metrics(QueueRegistry registry) {
+        this.registry = registry; // Сохраняем реестр
+        register(this, "org.broker:type=Broker"); // Регистрируем общие показатели в JMX
+    }
+
+    // Метод для запуска периодических замеров скоростей и записи снимка в журнал
+    public void start(int intervalSeconds, boolean log) {
+        if (intervalSeconds <= 0) { // Если замеры выключены
+            return; // Скорости останутся нулевыми
+        }
+        Server.scheduler.scheduleAtFixedRate(() -> { // Замеры выполняет общий поток таймеров
+            sample(); // Пересчитываем скорости
+            if (log) { // Если снимок нужно записать в журнал
+                System.out.println(summary()); // Пишем снимок
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS); // Первый замер - через один интервал
+    }
+
+    // Метод для учета нового соединения
+    public void connectionOpened() {
+        connectionsOpened.increment(); // Увеличиваем счетчик
+    }
+
+    // Метод для учета закрытого соединения
+    public void connectionClosed() {
+        connectionsClosed.increment(); // Увеличиваем счетчик
+    }
+
+    // Метод для учета созданной очереди и регистрации ее показателей в JMX
+    void queueCreated(MessageQueue queue) {
+        queuesCreated.increment(); // Увеличиваем счетчик
+        register(queue.getMetrics(), queueObjectName(queue.getName())); // Регистрируем показатели очереди
+    }
+
+    // Метод для снятия показателей удаленной очереди с регистрации
+    void queueRemoved(MessageQueue queue) {
+        if (mbeans == null) { // Если JMX выключен
+            return; // Снимать нечего
+        }
+        try {
+            ObjectName name = new ObjectName(queueObjectName(queue.getName())); // Имя MBean очереди
+            if (mbeans.isRegistered(name)) { // Под этим именем может уже быть новая очередь с тем же именем
+                mbeans.unregisterMBean(name); // Снимаем MBean с регистрации
+            }
+        } catch (JMException e) { // Обработка ошибок JMX
+            System.err.println("Ошибка снятия MBean очереди '" + queue.getName() + "': " + e.getMessage()); // Сообщаем об ошибке
+        }
+    }
+
+    // Метод для учета очереди, удаленной по простою
+    void queueExpired() {
+        queuesExpired.increment(); // Увеличиваем счетчик
+    }
+
+    // Метод для ответа на команду stats: сводка по брокеру или статистика одной очереди
+    public String stats(String queueName) {
+        if (queueName == null || queueName.isEmpty()) { // Если очередь не указана
+            return summary(); // Возвращаем сводку
+        }
+        return queueStats(queueName); // Возвращаем статистику очереди
+    }
+
+    @Override
+    public String queueStats(String queueName) {
+        MessageQueue queue = registry.get(queueName); // Получаем очередь по имени
+        if (queue == null) { // Если очереди нет
+            return "Очередь '" + queueName + "' не существует."; // Сообщаем об этом
+        }
+        return queue.getMetrics().describe(); // Возвращаем статистику очереди
+    }
+
+    // Метод для пересчета скоростей всех очередей
+    void sample() {
+        long now = System.nanoTime(); // Текущее время
+        double elapsed = Math.max(1e-3, (now - lastSample) / 1e9); // Прошедшее время в секундах
+        lastSample = now; // Запоминаем время замера
+        for (MessageQueue queue : queues()) { // Для каждой очереди
+            queue.getMetrics().sample(elapsed); // Пересчитываем ее скорости
+        }
+    }
+
+    // Метод для построения сводки: соединения, очереди, задержки и самые нагруженные очереди
+    String summary() {
+        StringBuilder summary = new StringBuilder(); // Текст сводки
+        summary.append("Соединений: ").append(getConnectionsActive()).append(" (всего ").append(getConnectionsTotal()).append(")"); // Соединения
+        summary.append(", очередей: ").append(getQueues()).append(" (создано ").append(getQueuesCreated())
+                .append(", удалено по простою ").append(getQueuesExpired()).append(").\n"); // Очереди
+        Runtime runtime = Runtime.getRuntime(); // Память процесса
+        summary.append("Память: занято ").append(getHeapUsedBytes() >> 20).append(" МБ, выделено ").append(runtime.totalMemory() >> 20)
+                .append(" МБ, максимум ").append(runtime.maxMemory() >> 20).append(" МБ.\n"); // Память кучи
+        summary.append(QueueLimits.describe()).append("\n"); // Использование квот
+        if (Cluster.ENABLED) { // Если брокер работает в кластере
+            summary.append(Cluster.describe()).append("\n"); // Состояние кластера
+        }
+        summary.append("send ").append(send.summary()).append("\n"); // Задержки send
+        summary.append("receive ").append(receive.summary()).append("\n"); // Задержки receive
+        summary.append("message ").append(message.summary()).append("\n"); // Задержки message
+        summary.append("binary ").append(binary.summary()); // Задержки двоичных кадров
+
+        List<MessageQueue> hottest = queues(); // Все очереди
+        hottest.sort(Comparator.comparingDouble((MessageQueue q) -> q.getMetrics().getEnqueueRate())
+                .thenComparingInt(MessageQueue::getDepth).reversed()); // Сначала самые нагруженные
+        for (int i = 0; i < Math.min(TOP_QUEUES, hottest.size()); i++) { // Для нескольких первых очередей
+            summary.append("\n").append(hottest.get(i).getMetrics().describe()); // Добавляем их статистику
+        }
+        return summary.toString(); // Возвращаем сводку
+    }
+
+    // Метод для получения списка существующих очередей
+    private List<MessageQueue> queues() {
+        List<MessageQueue> queues = new ArrayList<>(); // Список очередей
+        for (String name : registry.names()) { // Для каждого имени
+            MessageQueue queue = registry.get(name); // Получаем очередь
+            if (queue != null) { // Если она не удалена
+                queues.add(queue); // Добавляем ее в список
+            }
+        }
+        return queues; // Возвращаем список
+    }
+
+    // Метод для регистрации MBean, если JMX включен
+    private void register(Object mbean, String name) {
+        if (mbeans == null) { // Если JMX выключен
+            return; // Регистрировать негде
+        }
+        try {
+            ObjectName objectName = new ObjectName(name); // Имя MBean
+            if (mbeans.isRegistered(objectName)) { // Имя могла оставить очередь, удаленная одновременно с созданием новой
+                mbeans.unregisterMBean(objectName); // Заменяем прежний MBean
+            }
+            mbeans.registerMBean(mbean, objectName); // Регистрируем MBean
+        } catch (JMException e) { // Обработка ошибок JMX
+            System.err.println("Ошибка регистрации MBean " + name + ": " + e.getMessage()); // Сообщаем об ошибке
+        }
+    }
+
+    // Метод для получения имени MBean очереди
+    private static String queueObjectName(String queueName) {
+        return "org.broker:type=Queue,name=" + ObjectName.quote(queueName); // Имя очереди экранируется
+    }
+
+    @Override
+    public long getConnectionsActive() {
+        return connectionsOpened.sum() - connectionsClosed.sum(); // Открытые минус закрытые
+    }
+
+    @Override
+    public long getConnectionsTotal() {
+        return connectionsOpened.sum(); // Все открытые соединения
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        Runtime runtime = Runtime.getRuntime(); // Память процесса
+        return runtime.totalMemory() - runtime.freeMemory(); // Выделено минус свободно
+    }
+
+    @Override
+    public long getMemoryMessages() {
+        return QueueLimits.memoryMessages.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return QueueLimits.memoryBytes.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public int getQueues() {
+        return queues().size(); // Число существующих очередей
+    }
+
+    @Override
+    public long getQueuesCreated() {
+        return queuesCreated.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public long getQueuesExpired() {
+        return queuesExpired.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public long getSendP50Micros() {
+        return LatencyHistogram.micros(send.getPercentile(0.5)); // Медиана в микросекундах
+    }
+
+    @Override
+    public long getSendP99Micros() {
+        return LatencyHistogram.micros(send.getPercentile(0.99)); // 99-й процентиль в микросекундах
+    }
+
+    @Override
+    public long getReceiveP50Micros() {
+        return LatencyHistogram.micros(receive.getPercentile(0.5)); // Медиана в микросекундах
+    }
+
+    @Override
+    public long getReceiveP99Micros() {
+        return LatencyHistogram.micros(receive.getPercentile(0.99)); // 99-й процентиль в микросекундах
+    }
+
+    @Override
+    public long getMessageP50Micros() {
+        return LatencyHistogram.micros(message.getPercentile(0.5)); // Медиана в микросекундах
+    }
+
+    @Override
+    public long getMessageP99Micros() {
+        return LatencyHistogram.micros(message.getPercentile(0.99)); // 99-й процентиль в микросекундах
+    }
+
+    @Override
+    public long getBinaryP50Micros() {
+        return LatencyHistogram.micros(binary.getPercentile(0.5)); // Медиана в микросекундах
+    }
+
+    @Override
+    public long getBinaryP99Micros() {
+        return LatencyHistogram.micros(binary.getPercentile(0.99)); // 99-й процентиль в микросекундах
+    }
+}
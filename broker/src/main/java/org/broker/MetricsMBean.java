@@ -0,0 +1,39 @@
+package org.broker;
+
+// Общие показатели брокера, доступные через JMX (org.broker:type=Broker)
+public interface MetricsMBean {
+
+    long getConnectionsActive(); // Открытые соединения
+
+    long getConnectionsTotal(); // Соединения за все время
+
+    long getHeapUsedBytes(); // Занятая память кучи
+
+    long getMemoryMessages(); // Сообщений в памяти всех очередей (для общих квот)
+
+    long getMemoryBytes(); // Байтов сообщений в памяти всех очередей (для общих квот)
+
+    int getQueues(); // Существующие очереди
+
+    long getQueuesCreated(); // Созданные очереди за все время
+
+    long getQueuesExpired(); // Очереди, удаленные по простою
+
+    long getSendP50Micros(); // Медиана времени обработки send
+
+    long getSendP99Micros(); // 99-й процентиль времени обработки send
+
+    long getReceiveP50Micros(); // Медиана времени обработки receive
+
+    long getReceiveP99Micros(); // 99-й процентиль времени обработки receive
+
+    long getMessageP50Micros(); // Медиана времени приема тела message
+
+    long getMessageP99Micros(); // 99-й процентиль времени приема тела message
+
+    long getBinaryP50Micros(); // Медиана времени обработки двоичного кадра
+
+    long getBinaryP99Micros(); // 99-й процентиль времени обработки двоичного кадра
+
+    String queueStats(String queueName); // Статистика одной очереди строкой
+}
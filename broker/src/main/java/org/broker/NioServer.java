@@ -0,0 +1,573 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.net.InetSocketAddress; // Импортируем класс адреса сокета
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.channels.SelectionKey; // Импортируем ключ регистрации канала в селекторе
+import java.nio.channels.Selector; // Импортируем селектор для мультиплексирования каналов
+import java.nio.channels.ServerSocketChannel; // Импортируем серверный канал
+import java.nio.channels.SocketChannel; // Импортируем канал клиентского сокета
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.ArrayDeque; // Импортируем двустороннюю очередь для исходящих буферов
+import java.util.ArrayList; // Импортируем список потребителей соединения
+import java.util.Arrays; // Импортируем вспомогательные методы для массивов
+import java.util.Collections; // Импортируем добавление массива в коллекцию
+import java.util.Iterator; // Импортируем итератор по выбранным ключам
+import java.util.List; // Импортируем интерфейс списка
+import java.util.Queue; // Импортируем интерфейс очереди
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.ConcurrentLinkedQueue; // Импортируем потокобезопасную очередь для передачи каналов
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+
+// Неблокирующий сервер: один поток принимает соединения, небольшой пул циклов событий обслуживает клиентов
+public class NioServer {
+
+    private final int port; // Порт, на котором работает сервер
+    private final EventLoop[] loops; // Циклы событий, между которыми распределяются соединения
+    private int nextLoop = 0; // Номер цикла, которому достанется следующее соединение
+
+    // Конструктор, принимающий порт и количество циклов событий
+    public NioServer(int port, int threads) {
+        this.port = port; // Сохраняем порт
+        this.loops = new EventLoop[Math.max(1, threads)]; // Создаем хотя бы один цикл событий
+    }
+
+    // Метод для запуска сервера: блокирует текущий поток на приеме соединений
+    public void run() throws IOException {
+        for (int i = 0; i < loops.length; i++) { // Для каждого цикла событий
+            loops[i] = new EventLoop(i); // Создаем цикл со своим селектором
+            loops[i].start(); // Запускаем поток цикла
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) { // Открываем серверный канал
+            serverChannel.bind(new InetSocketAddress(port)); // Привязываем канал к порту
+            System.out.println("Сервер запущен (неблокирующий режим, циклов событий: " + loops.length + ")."); // Сообщаем о запуске сервера
+
+            while (true) { // Бесконечный цикл для приема входящих соединений
+                SocketChannel channel = serverChannel.accept(); // Принимаем соединение (блокирующий вызов)
+                loops[nextLoop].register(channel); // Передаем соединение очередному циклу событий
+                nextLoop = (nextLoop + 1) % loops.length; // Распределяем соединения по кругу
+            }
+        }
+    }
+
+    // Цикл событий: один поток и один селектор на множество соединений
+    static class EventLoop extends Thread {
+
+        private final Selector selector; // Селектор для ожидания готовности каналов
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>(); // Новые соединения, ожидающие регистрации
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // Задачи из других потоков (доставка сообщений подписчикам)
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024); // Общий буфер чтения для всех соединений цикла
+
+        // Конструктор, принимающий номер цикла
+        EventLoop(int index) throws IOException {
+            super("broker-loop-" + index); // Задаем имя потока
+            setDaemon(true); // Поток не должен мешать завершению программы
+            this.selector = Selector.open(); // Открываем селектор
+        }
+
+        // Метод для передачи нового соединения в цикл (вызывается из потока приема)
+        void register(SocketChannel channel) {
+            pending.add(channel); // Кладем канал в очередь на регистрацию
+            selector.wakeup(); // Будим селектор, чтобы он зарегистрировал канал
+        }
+
+        // Метод для выполнения задачи в потоке цикла (вызывается из любых потоков)
+        void execute(Runnable task) {
+            tasks.add(task); // Кладем задачу в очередь
+            selector.wakeup(); // Будим селектор, чтобы он выполнил задачу
+        }
+
+        @Override
+        public void run() { // Метод, выполняемый при запуске потока
+            while (true) { // Бесконечный цикл обработки событий
+                try {
+                    selector.select(); // Ждем готовности хотя бы одного канала
+                    registerPending(); // Регистрируем новые соединения
+                    runTasks(); // Выполняем задачи из других потоков
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); // Получаем готовые ключи
+                    while (keys.hasNext()) { // Перебираем готовые ключи
+                        SelectionKey key = keys.next(); // Получаем ключ
+                        keys.remove(); // Удаляем ключ из набора выбранных
+                        Connection connection = (Connection) key.attachment(); // Получаем соединение, связанное с ключом
+                        try {
+                            if (key.isValid() && key.isWritable()) { // Если канал готов к записи
+                                connection.flush(); // Дописываем накопленные ответы
+                            }
+                            if (key.isValid() && key.isReadable()) { // Если в канале есть данные
+                                connection.read(readBuffer); // Читаем и разбираем данные
+                            }
+                        } catch (IOException e) { // Обработка ошибок ввода-вывода
+                            connection.close(); // Закрываем соединение
+                        }
+                    }
+                } catch (IOException e) { // Обработка ошибок селектора
+                    System.err.println("Ошибка цикла событий: " + e.getMessage()); // Сообщаем об ошибке
+                }
+            }
+        }
+
+        // Метод для выполнения накопленных задач
+        private void runTasks() {
+            Runnable task; // Переменная для очередной задачи
+            while ((task = tasks.poll()) != null) { // Пока есть задачи
+                task.run(); // Выполняем задачу
+            }
+        }
+
+        // Метод для регистрации накопленных соединений в селекторе
+        private void registerPending() {
+            SocketChannel channel; // Переменная для очередного канала
+            while ((channel = pending.poll()) != null) { // Пока есть незарегистрированные каналы
+                try {
+                    channel.configureBlocking(false); // Переводим канал в неблокирующий режим
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ); // Регистрируем канал на чтение
+                    key.attach(new Connection(this, channel, key)); // Привязываем к ключу состояние соединения
+                } catch (IOException e) { // Обработка ошибок регистрации
+                    System.err.println("Ошибка регистрации соединения: " + e.getMessage()); // Сообщаем об ошибке
+                    try {
+                        channel.close(); // Закрываем канал
+                    } catch (IOException ignored) { // Ошибку закрытия игнорируем
+                    }
+                }
+            }
+        }
+    }
+
+    // Состояние одного соединения: инкрементальный разбор команд и очередь исходящих ответов
+    static class Connection {
+
+        private static final int PROTOCOL_UNKNOWN = 0; // Протокол еще не определен (не прочитано ни одного байта)
+        private static final int PROTOCOL_TEXT = 1; // Текстовые команды send/receive/message
+        private static final int PROTOCOL_BINARY_VERSION = 2; // Получен MAGIC, ожидается байт версии
+        private static final int PROTOCOL_BINARY = 3; // Двоичные кадры BinaryProtocol
+
+        private final EventLoop loop; // Цикл событий, которому принадлежит соединение
+        private final SocketChannel channel; // Канал клиента
+        private final SelectionKey key; // Ключ регистрации канала в селекторе
+        private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<>(); // Ответы, ожидающие записи в сокет
+        private int protocol = PROTOCOL_UNKNOWN; // Протокол соединения, определяется по первому байту
+        private byte[] line = new byte[128]; // Буфер для накопления текущей строки команды
+        private int lineLength = 0; // Количество байтов в буфере строки
+        private PayloadSink payload; // Приемник тела сообщения после команды message
+        private String messageKey; // Ключ раздела текущего сообщения или null
+        private int discardBytes = 0; // Сколько байтов слишком большого сообщения осталось пропустить
+        private String queueNameMes = null; // Имя очереди для текущего соединения
+        private int frameLength = 0; // Накапливаемая длина двоичного кадра
+        private int lengthBytesRead = 0; // Сколько байтов длины кадра уже прочитано
+        private ByteBuffer frame; // Буфер для тела текущего двоичного кадра
+        private List<Subscriber> consumers; // Ожидающие receive и подписки (создается при первой необходимости)
+        private long payloadStarted; // Время получения команды message
+        private boolean closed; // Закрыто ли соединение
+        private MessageQueue blockedOn; // Заполненная очередь, из-за которой чтение приостановлено, или null
+        private ByteBuffer backlog; // Прочитанные, но еще не разобранные байты на время приостановки
+        private int forwarding; // Запросы, пересланные другим узлам кластера и ожидающие ответа
+
+        // Конструктор, принимающий цикл событий, канал и ключ
+        Connection(EventLoop loop, SocketChannel channel, SelectionKey key) {
+            this.loop = loop; // Сохраняем цикл событий
+            this.channel = channel; // Сохраняем канал
+            this.key = key; // Сохраняем ключ
+            Server.metrics.connectionOpened(); // Учитываем соединение
+        }
+
+        // Метод для чтения доступных данных и их разбора
+        void read(ByteBuffer buffer) throws IOException {
+            buffer.clear(); // Готовим общий буфер к записи
+            int read = channel.read(buffer); // Читаем столько, сколько есть в сокете
+            if (read == -1) { // Если клиент закрыл соединение
+                close(); // Закрываем соединение
+                return; // Выходим из метода
+            }
+            buffer.flip(); // Готовим буфер к чтению
+            process(buffer); // Разбираем прочитанное
+            if (paused() && buffer.hasRemaining()) { // Если чтение приостановлено посреди буфера
+                backlog = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip(); // Сохраняем остаток - общий буфер понадобится другим соединениям
+            }
+
+            if (!outbound.isEmpty() && channel.isOpen()) { // Если за этот проход накопились ответы
+                flush(); // Отправляем их все одной групповой записью
+            }
+        }
+
+        // Метод для разбора прочитанных байтов; останавливается, если чтение приостановлено из-за заполненной очереди
+        // или ожидания ответа другого узла
+        private void process(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining() && channel.isOpen() && !paused()) { // Пока в буфере есть данные и соединение открыто
+                switch (protocol) {
+                    case PROTOCOL_UNKNOWN: // Первый байт соединения определяет протокол
+                        if (buffer.get(buffer.position()) == BinaryProtocol.MAGIC) { // Если это MAGIC двоичного протокола
+                            buffer.get(); // Пропускаем MAGIC
+                            protocol = PROTOCOL_BINARY_VERSION; // Дальше ожидаем версию
+                        } else {
+                            protocol = PROTOCOL_TEXT; // Иначе это текстовая команда
+                        }
+                        break;
+                    case PROTOCOL_BINARY_VERSION: // Байт версии двоичного протокола
+                        if (buffer.get() != BinaryProtocol.VERSION) { // Если версия не поддерживается
+                            close(); // Закрываем соединение
+                        } else {
+                            protocol = PROTOCOL_BINARY; // Переходим к чтению кадров
+                        }
+                        break;
+                    case PROTOCOL_BINARY: // Двоичные кадры
+                        readFrame(buffer); // Разбираем очередную часть кадра
+                        break;
+                    default: // Текстовые команды
+                        readText(buffer); // Разбираем очередную часть команды
+                }
+            }
+        }
+
+        // Метод для разбора очередной части текстового протокола
+        private void readText(ByteBuffer buffer) throws IOException {
+            if (payload != null) { // Если сейчас читается тело сообщения
+                payload.write(buffer); // Передаем приемнику всю доступную часть тела одной операцией
+                if (payload.isComplete()) { // Если тело прочитано целиком
+                    PayloadSink complete = payload; // Запоминаем приемник
+                    payload = null; // Возвращаемся к разбору команд
+                    putMessage(complete.finish()); // Добавляем сообщение в очередь как есть
+                }
+                return; // Выходим из метода
+            }
+            if (discardBytes > 0) { // Если пропускается тело слишком большого сообщения
+                int chunk = Math.min(buffer.remaining(), discardBytes); // Сколько байтов можно пропустить
+                buffer.position(buffer.position() + chunk); // Пропускаем их
+                discardBytes -= chunk; // Уменьшаем счетчик
+                return; // Выходим из метода
+            }
+
+            int start = buffer.position(); // Начало непрочитанной части
+            int end = start; // Позиция конца строки
+            while (end < buffer.limit() && buffer.get(end) != '\n') { // Ищем конец строки в буфере
+                end++; // Переходим к следующему байту
+            }
+            int chunk = end - start; // Сколько байтов строки есть в буфере
+            if (lineLength + chunk > Server.MAX_COMMAND_LENGTH) { // Если строка слишком длинная
+                close(); // Это не команда - закрываем соединение
+                return; // Выходим из метода
+            }
+            if (lineLength + chunk > line.length) { // Если буфер строки мал
+                line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + chunk)); // Увеличиваем его
+            }
+            buffer.get(line, lineLength, chunk); // Копируем часть строки одной операцией
+            lineLength += chunk; // Увеличиваем счетчик
+            if (end < buffer.limit()) { // Если строка закончилась
+                buffer.get(); // Пропускаем \n
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength; // Отбрасываем \r
+                lineLength = 0; // Сбрасываем буфер строки
+                handleCommand(new String(line, 0, length, StandardCharsets.UTF_8)); // Обрабатываем команду
+            }
+        }
+
+        // Метод для разбора очередной части двоичного кадра
+        private void readFrame(ByteBuffer buffer) {
+            if (frame == null) { // Если еще читается длина кадра
+                frameLength = (frameLength << 8) | (buffer.get() & 0xFF); // Добавляем очередной байт длины
+                if (++lengthBytesRead < 4) { // Если длина прочитана не полностью
+                    return; // Ждем остальные байты
+                }
+                int length = frameLength; // Длина кадра
+                frameLength = 0; // Сбрасываем накопленную длину
+                lengthBytesRead = 0; // Сбрасываем счетчик
+                if (length < BinaryProtocol.HEADER_LENGTH || length > BinaryProtocol.MAX_FRAME_LENGTH) { // Если длина недопустима
+                    close(); // Поток кадров рассинхронизирован - закрываем соединение
+                    return; // Выходим из метода
+                }
+                frame = ByteBuffer.allocate(length); // Буфер под тело кадра
+                return; // Тело будет прочитано на следующих шагах
+            }
+
+            int chunk = Math.min(buffer.remaining(), frame.remaining()); // Сколько байтов кадра можно взять
+            frame.put(buffer.slice(buffer.position(), chunk)); // Копируем байты кадра
+            buffer.position(buffer.position() + chunk); // Сдвигаем позицию общего буфера
+            if (!frame.hasRemaining()) { // Если кадр прочитан целиком
+                ByteBuffer request = frame.flip(); // Готовим кадр к разбору
+                frame = null; // Следующие байты - длина нового кадра
+                CompletableFuture<ByteBuffer[]> forwarded = BinaryProtocol.forward(request); // Запрос к очереди другого узла
+                if (forwarded != null) { // Если он переслан владельцу
+                    forward(forwarded); // Ответ придет позже, следующие кадры разбираются, пока не заполнено окно пересылки
+                    return; // Выходим из метода
+                }
+                sendResponse(BinaryProtocol.handle(request, consumers(), this::sendLater)); // Обрабатываем запрос и откладываем ответ до конца прохода (выборка с ожиданием ответит позже)
+                if (QueueLimits.ENABLED) { // Если заданы ограничения очередей
+                    pauseIfFull(BinaryProtocol.publishTarget(request)); // Если очередь заполнена, приостанавливаем чтение
+                }
+            }
+        }
+
+        // Метод для обработки одной текстовой команды (те же команды, что и в ClientHandler)
+        private void handleCommand(String clientCommand) throws IOException {
+            String[] parts = clientCommand.split(" ", 2); // Разделяем команду на части
+            String action = parts[0]; // Получаем действие из первой части команды
+
+            switch (action) {
+                case "send": // Если команда "send"
+                    if (parts.length < 2) { // Если аргументов меньше двух
+                        sendResponse("Неверный формат команды send."); // Сообщаем об ошибке
+                    } else {
+                        long start = System.nanoTime(); // Начало обработки
+                        String[] args = Server.splitCount(parts[1]); // Отделяем необязательное число разделов
+                        queueNameMes = args[0]; // Запоминаем имя очереди
+                        if (Cluster.acceptsLocally(queueNameMes)) { // Если очередь принадлежит этому узлу
+                            sendResponse(Server.openQueue(queueNameMes, args[1])); // Создаем очередь при необходимости
+                        } else {
+                            forward(Cluster.openQueue(queueNameMes, args[1])); // Создаем очередь на узле-владельце
+                        }
+                        Server.metrics.send.recordSince(start); // Учитываем время обработки
+                    }
+                    break;
+                case "receive": // Если команда "receive"
+                    if (parts.length < 2) { // Если аргументов меньше двух
+                        sendResponse("Неверный формат команды receive."); // Сообщаем об ошибке
+                    } else {
+                        long start = System.nanoTime(); // Начало обработки
+                        String[] args = Server.splitCount(parts[1]); // Отделяем таймаут от имени очереди
+                        if (args[1] == null && !Cluster.isLocal(args[0])) { // Простое извлечение из очереди другого узла
+                            forward(Cluster.takeMessage(args[0])); // Пересылаем владельцу, не блокируя цикл событий
+                        } else {
+                            sendResponse(Server.receive(parts[1], consumers(), this::sendLater)); // Извлекаем сообщение или начинаем ожидание
+                        }
+                        Server.metrics.receive.recordSince(start); // Учитываем время обработки (без ожидания)
+                    }
+                    queueNameMes = null; // Сбрасываем имя очереди
+                    break;
+                case "subscribe": // Если команда "subscribe"
+                    if (parts.length < 2) { // Если аргументов меньше двух
+                        sendResponse("Неверный формат команды subscribe."); // Сообщаем об ошибке
+                    } else {
+                        sendResponse(Server.subscribe(parts[1], consumers(), this::sendLater)); // Сообщения придут через цикл событий
+                    }
+                    break;
+                case "ack": // Если команда "ack"
+                    if (parts.length < 2) { // Если аргументов меньше двух
+                        sendResponse("Неверный формат команды ack."); // Сообщаем об ошибке
+                    } else {
+                        sendResponse(Server.ack(parts[1], consumers())); // Освобождаем место в окне подписки
+                    }
+                    break;
+                case "unsubscribe": // Если команда "unsubscribe"
+                    if (parts.length < 2) { // Если аргументов меньше двух
+                        sendResponse("Неверный формат команды unsubscribe."); // Сообщаем об ошибке
+                    } else {
+                        sendResponse(Server.unsubscribe(parts[1], consumers())); // Отменяем подписку
+                    }
+                    break;
+                case "join": // Если команда "join"
+                    if (parts.length < 2) { // Если аргументов меньше двух
+                        sendResponse("Неверный формат команды join."); // Сообщаем об ошибке
+                    } else {
+                        sendResponse(Server.joinGroup(parts[1], consumers(), this::sendLater)); // Сообщения разделов придут через цикл событий
+                    }
+                    break;
+                case "leave": // Если команда "leave"
+                    if (parts.length < 2) { // Если аргументов меньше двух
+                        sendResponse("Неверный формат команды leave."); // Сообщаем об ошибке
+                    } else {
+                        sendResponse(Server.leaveGroup(parts[1], consumers())); // Разделы переходят к остальным участникам
+                    }
+                    break;
+                case "message": // Если команда "message"
+                    if (queueNameMes == null) { // Если имя очереди не задано
+                        sendResponse("Прежде чем вводить сообщение необходимо создать очередь или задать имя очереди."); // Сообщаем об ошибке
+                    } else if (Cluster.acceptsLocally(queueNameMes) && !Server.namedQueues.containsKey(queueNameMes)) { // Если очередь была удалена (чужую проверяет владелец)
+                        sendResponse("Очередь была удалена, введите имя другой очереди."); // Сообщаем об ошибке
+                    } else if (parts.length < 2) { // Если не указана длина
+                        sendResponse("Неправильный формат команды message."); // Сообщаем об ошибке
+                    } else {
+                        startPayload(parts[1]); // Начинаем чтение тела сообщения
+                    }
+                    break;
+                case "stats": // Если команда "stats"
+                    sendResponse(Server.metrics.stats(parts.length < 2 ? null : parts[1])); // Сводка или статистика очереди
+                    break;
+                default: // Если команда не распознана
+                    sendResponse("Неизвестная команда."); // Сообщаем об ошибке
+            }
+        }
+
+        // Метод для подготовки к чтению тела сообщения указанной длины
+        private void startPayload(String argument) throws IOException {
+            payloadStarted = System.nanoTime(); // Начало приема сообщения
+            String[] args = argument.split(" ", 2); // Длина и необязательный ключ раздела
+            String lengthText = args[0]; // Длина сообщения
+            messageKey = args.length > 1 ? args[1] : null; // Запоминаем ключ
+            try {
+                int expectedBytes = Integer.parseInt(lengthText); // Получаем ожидаемое количество байтов
+                if (expectedBytes < 0) { // Отрицательная длина недопустима
+                    throw new NumberFormatException(lengthText); // Обрабатываем как неверный формат
+                }
+                if (expectedBytes == 0) { // Пустое сообщение не требует чтения
+                    putMessage(ByteBuffer.allocate(0)); // Сразу добавляем его в очередь
+                    return; // Выходим из метода
+                }
+                if (expectedBytes > PayloadSink.MAX_MESSAGE_BYTES) { // Если сообщение больше допустимого
+                    discardBytes = expectedBytes; // Пропускаем тело, чтобы не сбиться с разбора команд
+                    sendResponse("Ошибка: размер сообщения превышает допустимый (" + PayloadSink.MAX_MESSAGE_BYTES + " байт)."); // Сообщаем об ошибке
+                    return; // Выходим из метода
+                }
+                payload = PayloadSink.open(expectedBytes); // Большое тело пойдет во временный файл, а не в массив
+            } catch (NumberFormatException e) { // Если не удалось преобразовать строку в число
+                sendResponse("Ошибка: неверный формат длины сообщения."); // Сообщаем об ошибке
+            }
+        }
+
+        // Метод для добавления прочитанного сообщения в текущую очередь или пересылки его узлу-владельцу
+        private void putMessage(ByteBuffer message) {
+            if (!Cluster.acceptsLocally(queueNameMes)) { // Если очередь принадлежит другому узлу кластера
+                forward(Cluster.putMessage(queueNameMes, message, messageKey)); // Пересылаем сообщение владельцу
+                return; // Выходим из метода
+            }
+            sendResponse(Server.putMessage(queueNameMes, message, messageKey)); // Добавляем сообщение в очередь как есть
+            Server.metrics.message.recordSince(payloadStarted); // Учитываем время приема тела и добавления в очередь
+            pauseIfFull(queueNameMes); // Если очередь заполнена, приостанавливаем чтение
+        }
+
+        // Метод для получения списка потребителей соединения
+        private List<Subscriber> consumers() {
+            if (consumers == null) { // Если список еще не создан
+                consumers = new ArrayList<>(); // Создаем его только для соединений, которые ждут сообщений
+            }
+            return consumers; // Возвращаем список
+        }
+
+        // Метод для отправки текстового ответа клиенту (запись откладывается до конца прохода чтения)
+        private void sendResponse(String response) {
+            if (response != null) { // null означает, что ответ будет отправлен позже
+                sendResponse(Server.frame(response)); // Упаковываем ответ в кадр
+            }
+        }
+
+        // Метод для постановки готового кадра в очередь на запись (части кадра пишутся групповой записью)
+        private void sendResponse(ByteBuffer[] frame) {
+            if (frame != null) { // null означает, что ответ будет отправлен позже
+                Collections.addAll(outbound, frame); // Ставим все части кадра в очередь на запись
+            }
+        }
+
+        // Метод для отправки ответа из другого потока (доставка по подписке или окончание ожидания)
+        private void sendLater(ByteBuffer[] response) {
+            loop.execute(() -> { // Запись в канал выполняется только потоком цикла
+                if (!channel.isOpen()) { // Если клиент уже отключился
+                    return; // Отправлять некому
+                }
+                sendResponse(response); // Ставим ответ в очередь
+                try {
+                    flush(); // Сразу отправляем его
+                } catch (IOException e) { // Обработка ошибок записи
+                    close(); // Закрываем соединение
+                }
+            });
+        }
+
+        // Метод для записи накопленных ответов одной групповой записью
+        void flush() throws IOException {
+            channel.write(outbound.toArray(new ByteBuffer[0])); // Пишем в сокет столько, сколько он примет
+            while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) { // Убираем полностью записанные ответы
+                outbound.poll(); // Ответ записан
+            }
+            int reading = paused() ? 0 : SelectionKey.OP_READ; // Пока чтение приостановлено, сокет не читаем
+            if (outbound.isEmpty()) { // Если записано все
+                key.interestOps(reading); // Больше нечего писать - снова только чтение
+            } else {
+                key.interestOps(reading | SelectionKey.OP_WRITE); // Ждем готовности канала к записи
+            }
+        }
+
+        // Метод для приостановки чтения, если очередь заполнена при политике block: непрочитанные данные остаются
+        // в сокете, и производитель упирается в окно TCP
+        private void pauseIfFull(String queueName) {
+            MessageQueue queue = Server.blockingQueue(queueName); // Очередь, освобождения которой нужно ждать
+            if (queue == null) { // Если место есть
+                return; // Продолжаем чтение
+            }
+            queue.getMetrics().throttled.increment(); // Учитываем приостановку производителя
+            blockedOn = queue; // Запоминаем очередь
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ); // Перестаем читать сокет
+            scheduleResume(); // Проверим место позже
+        }
+
+        // Метод для отложенной проверки места в очереди (проверка выполняется в потоке цикла)
+        private void scheduleResume() {
+            Server.scheduler.schedule(() -> loop.execute(this::resume), QueueLimits.BACKPRESSURE_POLL_MILLIS, TimeUnit.MILLISECONDS); // Общий поток таймеров
+        }
+
+        // Метод для возобновления чтения, когда в очереди освободилось место
+        private void resume() {
+            if (closed) { // Если соединение уже закрыто
+                return; // Возобновлять нечего
+            }
+            if (blockedOn.blocksProducers() && !blockedOn.isClosed()) { // Если места все еще нет
+                scheduleResume(); // Проверим снова
+                return; // Выходим из метода
+            }
+            blockedOn = null; // Очередь больше не держит чтение
+            continueReading(); // Разбираем отложенные байты
+        }
+
+        // Метод для проверки, приостановлено ли чтение: очередь заполнена или ответы других узлов не пришли.
+        // Текстовые команды ждут ответа на каждую пересланную команду, чтобы ответы шли в порядке команд,
+        // а двоичные кадры сопоставляются по идентификатору корреляции, поэтому их в пути может быть FORWARD_WINDOW
+        private boolean paused() {
+            return blockedOn != null || forwarding >= (protocol == PROTOCOL_BINARY ? Cluster.FORWARD_WINDOW : 1); // Проверяем обе причины
+        }
+
+        // Метод для ожидания ответа узла-владельца: ответ ставится в очередь записи потоком цикла
+        private void forward(CompletableFuture<ByteBuffer[]> reply) {
+            forwarding++; // Еще один запрос в пути
+            if (paused()) { // Если больше запросов в пути быть не может
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ); // Перестаем читать сокет
+            }
+            reply.thenAccept(response -> loop.execute(() -> { // Ответ обрабатывается в потоке цикла
+                forwarding--; // Запрос завершен
+                if (closed) { // Если клиент уже отключился
+                    return; // Отправлять некому
+                }
+                sendResponse(response); // Ставим ответ в очередь
+                continueReading(); // Продолжаем разбор и отправляем ответ
+            }));
+        }
+
+        // Метод для продолжения разбора отложенных байтов после приостановки
+        private void continueReading() {
+            try {
+                ByteBuffer pending = backlog; // Байты, прочитанные до приостановки
+                if (pending != null && !paused()) { // Если они есть и их можно разбирать
+                    backlog = null; // Забираем их
+                    process(pending); // Разбираем их
+                    if (paused() && pending.hasRemaining()) { // Если чтение снова приостановлено
+                        backlog = pending; // Остаток подождет
+                    }
+                }
+                if (channel.isOpen()) { // Если соединение не закрыто при разборе
+                    flush(); // Отправляем ответы и восстанавливаем интерес к чтению
+                }
+            } catch (IOException e) { // Обработка ошибок ввода-вывода
+                close(); // Закрываем соединение
+            }
+        }
+
+        // Метод для закрытия соединения
+        void close() {
+            if (closed) { // Если соединение уже закрыто
+                return; // Повторно ничего не делаем
+            }
+            closed = true; // Отмечаем закрытие
+            Server.metrics.connectionClosed(); // Соединение закрыто
+            if (consumers != null) { // Если соединение ждало сообщений
+                Server.cancelAll(consumers); // Отменяем ожидания и подписки
+            }
+            if (payload != null) { // Если клиент отключился посреди тела сообщения
+                payload.abort(); // Удаляем временный файл
+                payload = null; // Сообщение не будет добавлено
+            }
+            key.cancel(); // Снимаем канал с селектора
+            try {
+                channel.close(); // Закрываем канал
+            } catch (IOException e) { // Обработка ошибок при закрытии соединения
+                System.err.println("Ошибка при закрытии соединения: " + e.getMessage()); // Сообщаем об ошибке
+            }
+        }
+    }
+}
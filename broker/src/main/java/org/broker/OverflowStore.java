@@ -0,0 +1,156 @@
+package org.broker;
+
+import java.io.EOFException; // Импортируем исключение неожиданного конца файла
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.channels.FileChannel; // Импортируем файловый канал
+import java.nio.file.Files; // Импортируем вспомогательные методы для файлов
+import java.nio.file.Path; // Импортируем путь к файлу
+import java.nio.file.StandardOpenOption; // Импортируем режимы открытия файлов
+import java.util.ArrayDeque; // Импортируем двустороннюю очередь для сегментов
+
+// Хвост переполненной очереди на диске: сегменты во временном каталоге, которые пишутся только в конец
+// и читаются с начала. Прочитанный сегмент сразу удаляется. Запись: [int длина][long время добавления][byte записано в журнал][байты].
+// Все методы вызываются под блокировкой очереди-владельца.
+class OverflowStore {
+
+    static final long SEGMENT_BYTES = Long.getLong("broker.overflowSegmentBytes", 64L * 1024 * 1024); // Размер сегмента
+    private static final int RECORD_HEADER = 4 + 8 + 1; // Длина заголовка записи
+
+    private final String queueName; // Имя очереди (для имен файлов и сообщений об ошибках)
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>(); // Сегменты от старых к новым
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER); // Буфер заголовка записи
+    private int nextLength = -1; // Длина следующего сообщения (-1, если заголовок еще не прочитан)
+    private long nextEnqueuedAt; // Время добавления следующего сообщения
+    private boolean nextLogged; // Записано ли следующее сообщение в журнал очереди
+
+    // Конструктор, принимающий имя очереди
+    OverflowStore(String queueName) {
+        this.queueName = queueName; // Сохраняем имя
+    }
+
+    // Метод для дозаписи сообщения в конец хвоста
+    void append(ByteBuffer payload, long enqueuedAt, boolean logged) throws IOException {
+        Segment active = segments.peekLast(); // Текущий сегмент для записи
+        if (active == null || active.writePosition >= SEGMENT_BYTES) { // Если сегмента нет или он заполнен
+            active = new Segment(Files.createTempFile(PayloadSink.SPILL_DIR, "broker-overflow-", ".seg")); // Создаем новый
+            segments.addLast(active); // Он становится последним
+        }
+        header.clear(); // Готовим заголовок
+        header.putInt(payload.remaining()).putLong(enqueuedAt).put((byte) (logged ? 1 : 0)).flip(); // Длина, время добавления и признак журнала
+        ByteBuffer[] record = {header, payload.duplicate()}; // Заголовок и байты одной групповой записью
+        active.channel.position(active.writePosition); // Пишем в конец сегмента
+        while (record[1].hasRemaining() || header.hasRemaining()) { // Пока запись не сохранена целиком
+            active.writePosition += active.channel.write(record); // Пишем в файл
+        }
+    }
+
+    // Метод для получения длины следующего сообщения без его чтения; -1, если хвост пуст
+    int nextLength() throws IOException {
+        if (nextLength >= 0) { // Если заголовок уже прочитан
+            return nextLength; // Возвращаем длину
+        }
+        Segment head = segments.peekFirst(); // Самый старый сегмент
+        while (head != null && head.readPosition >= head.writePosition) { // Если сегмент прочитан целиком
+            if (head == segments.peekLast()) { // В последний сегмент еще пишут
+                return -1; // Сообщений нет
+            }
+            segments.pollFirst().delete(); // Удаляем прочитанный сегмент
+            head = segments.peekFirst(); // Переходим к следующему
+        }
+        if (head == null) { // Если сегментов нет
+            return -1; // Сообщений нет
+        }
+        header.clear(); // Готовим буфер заголовка
+        head.readFully(header); // Читаем заголовок
+        nextLength = header.getInt(0); // Длина сообщения
+        nextEnqueuedAt = header.getLong(4); // Время добавления
+        nextLogged = header.get(12) != 0; // Признак записи в журнал
+        return nextLength; // Возвращаем длину
+    }
+
+    // Метод для получения времени добавления следующего сообщения (после nextLength)
+    long nextEnqueuedAt() {
+        return nextEnqueuedAt; // Возвращаем время
+    }
+
+    // Метод для получения признака записи следующего сообщения в журнал (после nextLength)
+    boolean nextLogged() {
+        return nextLogged; // Возвращаем признак
+    }
+
+    // Метод для чтения следующего сообщения; null, если хвост пуст. Небольшое сообщение читается в буфер в куче,
+    // а большое (как и в PayloadSink) отображается из сегмента только для чтения, чтобы не занимать кучу его размером
+    ByteBuffer read() throws IOException {
+        int length = nextLength(); // Длина сообщения
+        if (length < 0) { // Если сообщений нет
+            return null; // Читать нечего
+        }
+        Segment head = segments.peekFirst(); // Сегмент с сообщением
+        ByteBuffer payload; // Байты сообщения
+        if (length > PayloadSink.SPILL_THRESHOLD_BYTES) { // Если сообщение большое
+            payload = head.map(length); // Отображение живет и после удаления файла сегмента
+        } else {
+            payload = ByteBuffer.allocate(length); // Буфер под сообщение
+            head.readFully(payload); // Читаем байты
+            payload.flip(); // Готовим буфер к чтению
+        }
+        nextLength = -1; // Следующий заголовок еще не прочитан
+        return payload; // Возвращаем сообщение
+    }
+
+    // Метод для удаления всех сегментов (хвост прочитан или очередь удалена)
+    void clear() {
+        Segment segment; // Переменная для очередного сегмента
+        while ((segment = segments.pollFirst()) != null) { // Пока есть сегменты
+            segment.delete(); // Удаляем сегмент
+        }
+        nextLength = -1; // Заголовков больше нет
+    }
+
+    // Один файл хвоста
+    private final class Segment {
+
+        private final Path file; // Файл сегмента
+        private final FileChannel channel; // Канал для записи и чтения
+        long writePosition; // Конец записанных данных
+        long readPosition; // Начало непрочитанных данных
+
+        // Конструктор, открывающий файл сегмента
+        Segment(Path file) throws IOException {
+            this.file = file; // Сохраняем путь
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE); // Открываем файл
+        }
+
+        // Метод для чтения с позиции чтения, пока буфер не заполнится
+        void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) { // Пока буфер не заполнен
+                int read = channel.read(buffer, readPosition); // Читаем с позиции
+                if (read < 0) { // Файл короче, чем записано
+                    throw new EOFException("Сегмент переполнения очереди '" + queueName + "' поврежден"); // Сообщаем об ошибке
+                }
+                readPosition += read; // Сдвигаем позицию чтения
+            }
+        }
+
+        // Метод для отображения length байтов с позиции чтения только для чтения
+        ByteBuffer map(int length) throws IOException {
+            if (readPosition + length > writePosition) { // Сообщение выходит за записанные данные
+                throw new EOFException("Сегмент переполнения очереди '" + queueName + "' поврежден"); // Сообщаем об ошибке
+            }
+            ByteBuffer payload = channel.map(FileChannel.MapMode.READ_ONLY, readPosition, length); // Отображаем байты сообщения
+            readPosition += length; // Сдвигаем позицию чтения
+            return payload; // Возвращаем отображение
+        }
+
+        // Метод для закрытия и удаления файла сегмента
+        void delete() {
+            try {
+                channel.close(); // Закрываем канал
+                Files.deleteIfExists(file); // Удаляем файл
+            } catch (IOException e) { // Обработка ошибок удаления
+                System.err.println("Ошибка удаления сегмента переполнения очереди '" + queueName + "': " + e.getMessage()); // Сообщаем об ошибке
+            }
+        }
+    }
+}
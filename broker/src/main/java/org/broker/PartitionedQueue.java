@@ -0,0 +1,214 @@
+package org.broker;
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.ArrayList; // Импортируем список участников группы
+import java.util.HashMap; // Импортируем таблицу групп
+import java.util.List; // Импортируем интерфейс списка
+import java.util.Map; // Импортируем интерфейс отображения
+import java.util.concurrent.ThreadLocalRandom; // Импортируем генератор случайных чисел потока
+import java.util.function.BiConsumer; // Импортируем функциональный интерфейс для доставки с номером раздела
+
+// Очередь, разделенная на N независимых разделов. Каждый раздел - отдельная MessageQueue со своими
+// головой и хвостом, поэтому производители и потребители разных разделов не касаются общих ячеек памяти.
+// Сообщения с одинаковым ключом всегда попадают в один раздел, так что их порядок сохраняется;
+// сообщения без ключа распределяются по кругу отдельно в каждом потоке, без общего счетчика.
+// Группа потребителей делит разделы между участниками и перераспределяет их при входе и выходе участника.
+public class PartitionedQueue extends MessageQueue {
+
+    private static final ThreadLocal<int[]> NEXT_PARTITION = ThreadLocal.withInitial( // Счетчик кругового выбора раздела в каждом потоке
+            () -> new int[] {ThreadLocalRandom.current().nextInt(1 << 16)}); // Потоки начинают с разных разделов
+
+    private final MessageQueue[] partitions; // Разделы очереди
+    private final Map<String, List<GroupMember>> groups = new HashMap<>(); // Участники групп потребителей (под блокировкой groups)
+
+    // Конструктор, принимающий имя очереди и число разделов
+    public PartitionedQueue(String name, int partitionCount) {
+        super(name); // Разделенная очередь хранится только в памяти
+        partitions = new MessageQueue[Math.max(1, partitionCount)]; // Хотя бы один раздел
+        for (int i = 0; i < partitions.length; i++) { // Для каждого раздела
+            partitions[i] = new MessageQueue(name + "#" + i, getMetrics(), partitions.length); // Раздел пишет в показатели всей очереди и получает долю ее квот
+        }
+    }
+
+    // Метод для получения числа разделов
+    public int getPartitionCount() {
+        return partitions.length; // Возвращаем число разделов
+    }
+
+    // Метод для выбора раздела: по ключу, а без ключа - по кругу в текущем потоке
+    public int partitionFor(String key) {
+        if (key != null) { // Если ключ указан
+            return Math.floorMod(key.hashCode(), partitions.length); // Один и тот же ключ - один и тот же раздел
+        }
+        int[] next = NEXT_PARTITION.get(); // Счетчик текущего потока
+        return Math.floorMod(next[0]++, partitions.length); // Следующий раздел
+    }
+
+    @Override
+    public boolean offer(ByteBuffer message) {
+        return offer(message, null); // Сообщение без ключа
+    }
+
+    @Override
+    public boolean offer(ByteBuffer message, String key) {
+        return partitions[partitionFor(key)].offer(message); // Добавляем в выбранный раздел
+    }
+
+    @Override
+    public ByteBuffer poll() {
+        int start = partitionFor(null); // Каждый поток начинает обход со своего раздела
+        for (int i = 0; i < partitions.length; i++) { // Обходим разделы
+            ByteBuffer message = partitions[(start + i) % partitions.length].poll(); // Пробуем извлечь сообщение
+            if (message != null) { // Если сообщение есть
+                return message; // Возвращаем его
+            }
+        }
+        return null; // Все разделы пусты
+    }
+
+    @Override
+    public ByteBuffer poll(long maxBytes) {
+        int start = partitionFor(null); // Каждый поток начинает обход со своего раздела
+        for (int i = 0; i < partitions.length; i++) { // Обходим разделы
+            ByteBuffer message = partitions[(start + i) % partitions.length].poll(maxBytes); // Пробуем извлечь сообщение
+            if (message != null) { // Если сообщение есть
+                return message; // Возвращаем его
+            }
+        }
+        return null; // Во всех разделах пусто или первые сообщения не помещаются
+    }
+
+    @Override
+    public int getDepth() {
+        int depth = 0; // Сообщений во всех разделах
+        for (MessageQueue partition : partitions) { // Для каждого раздела
+            depth += partition.getDepth(); // Учитываем его сообщения
+        }
+        return depth; // Возвращаем сумму
+    }
+
+    @Override
+    public long getBytes() {
+        long bytes = 0; // Размер сообщений во всех разделах
+        for (MessageQueue partition : partitions) { // Для каждого раздела
+            bytes += partition.getBytes(); // Учитываем его размер
+        }
+        return bytes; // Возвращаем сумму
+    }
+
+    @Override
+    public int getSpilledDepth() {
+        int depth = 0; // Сообщений на диске во всех разделах
+        for (MessageQueue partition : partitions) { // Для каждого раздела
+            depth += partition.getSpilledDepth(); // Учитываем его сообщения
+        }
+        return depth; // Возвращаем сумму
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        long bytes = 0; // Размер сообщений на диске во всех разделах
+        for (MessageQueue partition : partitions) { // Для каждого раздела
+            bytes += partition.getSpilledBytes(); // Учитываем его размер
+        }
+        return bytes; // Возвращаем сумму
+    }
+
+    @Override
+    public boolean blocksProducers() {
+        for (MessageQueue partition : partitions) { // Для каждого раздела
+            if (partition.blocksProducers()) { // Если раздел заполнен (производитель не знает, в какой раздел попадет следующее сообщение)
+                return true; // Производителей нужно приостановить
+            }
+        }
+        return false; // Место есть во всех разделах
+    }
+
+    @Override
+    public long getLastActivity() {
+        long last = super.getLastActivity(); // Время создания и изменений состава групп
+        for (MessageQueue partition : partitions) { // Для каждого раздела
+            last = Math.max(last, partition.getLastActivity()); // Берем самое позднее время
+        }
+        return last; // Возвращаем его
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (MessageQueue partition : partitions) { // Для каждого раздела
+            if (!partition.isEmpty()) { // Если в нем есть сообщения
+                return false; // Очередь не пуста
+            }
+        }
+        return true; // Все разделы пусты
+    }
+
+    @Override
+    boolean closeIfEmpty() {
+        if (getConsumers() > 0) { // Если в очереди есть участники групп
+            return false; // Закрывать нельзя
+        }
+        for (int i = 0; i < partitions.length; i++) { // Закрываем разделы по одному
+            if (!partitions[i].closeIfEmpty()) { // Если раздел не пуст или в него пишут
+                for (int j = 0; j < i; j++) { // Открываем уже закрытые разделы обратно
+                    partitions[j].reopen(); // Раздел снова принимает сообщения
+                }
+                return false; // Закрывать нельзя
+            }
+        }
+        if (!super.closeIfEmpty()) { // Закрываем саму очередь (участник группы мог появиться только что)
+            for (MessageQueue partition : partitions) { // Открываем разделы обратно
+                partition.reopen(); // Раздел снова принимает сообщения
+            }
+            return false; // Закрывать нельзя
+        }
+        return true; // Очередь и все разделы закрыты
+    }
+
+    // Метод для вступления в группу потребителей; push получает номер раздела и сообщение
+    public GroupMember join(String group, int prefetch, BiConsumer<Integer, ByteBuffer> push) {
+        GroupMember member = new GroupMember(this, group, prefetch, push); // Новый участник
+        attach(); // Пока в группе есть участники, очередь не удаляется по простою
+        synchronized (groups) { // Состав групп меняется под одной блокировкой
+            groups.computeIfAbsent(group, g -> new ArrayList<>()).add(member); // Добавляем участника
+            rebalance(group); // Перераспределяем разделы
+        }
+        return member; // Возвращаем участника
+    }
+
+    // Метод для выхода из группы (вызывается при отмене участника)
+    void leave(GroupMember member) {
+        synchronized (groups) { // Состав групп меняется под одной блокировкой
+            List<GroupMember> members = groups.get(member.getGroup()); // Участники группы
+            if (members != null && members.remove(member)) { // Если участник был в группе
+                member.assign(new boolean[partitions.length]); // Снимаем с него все разделы
+                if (members.isEmpty()) { // Если группа опустела
+                    groups.remove(member.getGroup()); // Удаляем ее
+                } else {
+                    rebalance(member.getGroup()); // Отдаем его разделы остальным
+                }
+            }
+        }
+        detach(); // Участник больше не держит очередь
+    }
+
+    // Метод для распределения разделов между участниками группы: раздел p достается участнику p mod N
+    private void rebalance(String group) {
+        List<GroupMember> members = groups.get(group); // Участники группы по порядку вступления
+        boolean[][] assignment = new boolean[members.size()][partitions.length]; // Новое распределение
+        for (int p = 0; p < partitions.length; p++) { // Для каждого раздела
+            assignment[p % members.size()][p] = true; // Назначаем владельца
+        }
+        for (int m = 0; m < members.size(); m++) { // Сначала участники отпускают чужие теперь разделы
+            members.get(m).release(assignment[m]); // У раздела никогда не бывает двух владельцев в группе
+        }
+        for (int m = 0; m < members.size(); m++) { // Затем забирают новые
+            members.get(m).assign(assignment[m]); // Подписываемся на назначенные разделы
+        }
+    }
+
+    // Метод для получения раздела по номеру (для участников групп)
+    MessageQueue partition(int index) {
+        return partitions[index]; // Возвращаем раздел
+    }
+}
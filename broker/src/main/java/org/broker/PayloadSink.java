@@ -0,0 +1,122 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.channels.FileChannel; // Импортируем файловый канал
+import java.nio.file.Files; // Импортируем вспомогательные методы для файлов
+import java.nio.file.Path; // Импортируем путь к файлу
+import java.nio.file.Paths; // Импортируем создание путей
+import java.nio.file.StandardOpenOption; // Импортируем режимы открытия файлов
+
+// Приемник тела сообщения, которое приходит порциями. Небольшие сообщения собираются в массив в куче,
+// а сообщения больше порога сразу пишутся во временный файл и затем отображаются в память,
+// поэтому даже сообщение в сотни мегабайт не требует массива такого же размера в куче.
+public abstract class PayloadSink {
+
+    public static final int MAX_MESSAGE_BYTES = Integer.getInteger("broker.maxMessageBytes", 512 * 1024 * 1024); // Наибольший допустимый размер сообщения
+    public static final int SPILL_THRESHOLD_BYTES = Integer.getInteger("broker.spillThresholdBytes", 1024 * 1024); // Размер, начиная с которого тело пишется в файл
+    public static final Path SPILL_DIR = Paths.get(System.getProperty("broker.spillDir", System.getProperty("java.io.tmpdir"))); // Каталог временных файлов
+
+    // Метод для создания приемника под сообщение заданной длины
+    public static PayloadSink open(int length) throws IOException {
+        if (length > SPILL_THRESHOLD_BYTES) { // Если сообщение большое
+            return new FileSink(length); // Пишем его во временный файл
+        }
+        return new HeapSink(length); // Иначе собираем в куче
+    }
+
+    // Метод для записи очередной порции тела; забирает из src не больше, чем осталось до конца сообщения
+    public abstract void write(ByteBuffer src) throws IOException;
+
+    // Метод для проверки, получено ли все тело
+    public abstract boolean isComplete();
+
+    // Метод для получения тела сообщения после того, как оно получено целиком
+    public abstract ByteBuffer finish() throws IOException;
+
+    // Метод для освобождения ресурсов, если сообщение так и не было получено целиком
+    public abstract void abort();
+
+    // Приемник, собирающий тело в массив в куче
+    static class HeapSink extends PayloadSink {
+
+        private final ByteBuffer buffer; // Буфер под все тело
+
+        // Конструктор, принимающий длину сообщения
+        HeapSink(int length) {
+            this.buffer = ByteBuffer.allocate(length); // Выделяем буфер ровно под сообщение
+        }
+
+        @Override
+        public void write(ByteBuffer src) {
+            int chunk = Math.min(src.remaining(), buffer.remaining()); // Сколько байтов можно взять
+            buffer.put(src.slice(src.position(), chunk)); // Копируем порцию одной операцией
+            src.position(src.position() + chunk); // Сдвигаем позицию источника
+        }
+
+        @Override
+        public boolean isComplete() {
+            return !buffer.hasRemaining(); // Тело получено, когда буфер заполнен
+        }
+
+        @Override
+        public ByteBuffer finish() {
+            return buffer.flip(); // Готовим буфер к чтению
+        }
+
+        @Override
+        public void abort() {
+            // Буфер в куче освободит сборщик мусора
+        }
+    }
+
+    // Приемник, записывающий тело во временный файл
+    static class FileSink extends PayloadSink {
+
+        private final Path file; // Временный файл
+        private final FileChannel channel; // Канал для записи в файл
+        private final int length; // Длина сообщения
+        private int written = 0; // Сколько байтов уже записано
+
+        // Конструктор, принимающий длину сообщения
+        FileSink(int length) throws IOException {
+            this.length = length; // Сохраняем длину
+            this.file = Files.createTempFile(SPILL_DIR, "broker-", ".payload"); // Создаем временный файл
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE); // Открываем его
+        }
+
+        @Override
+        public void write(ByteBuffer src) throws IOException {
+            int chunk = Math.min(src.remaining(), length - written); // Сколько байтов можно взять
+            ByteBuffer part = src.slice(src.position(), chunk); // Порция тела
+            while (part.hasRemaining()) { // Пока порция не записана
+                written += channel.write(part); // Пишем в файл
+            }
+            src.position(src.position() + chunk); // Сдвигаем позицию источника
+        }
+
+        @Override
+        public boolean isComplete() {
+            return written == length; // Тело получено, когда записаны все байты
+        }
+
+        @Override
+        public ByteBuffer finish() throws IOException {
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, length); // Отображение живет и после закрытия канала
+            } finally {
+                abort(); // Закрываем канал и удаляем имя файла - данные доступны через отображение
+            }
+        }
+
+        @Override
+        public void abort() {
+            try {
+                channel.close(); // Закрываем канал
+                Files.deleteIfExists(file); // Удаляем временный файл
+            } catch (IOException e) { // Если файл удалить нельзя (например, пока он отображен)
+                file.toFile().deleteOnExit(); // Удалим его при завершении программы
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.net.URLDecoder; // Импортируем декодер имен каталогов
+import java.net.URLEncoder; // Импортируем кодировщик имен очередей в имена каталогов
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.nio.file.DirectoryStream; // Импортируем перечисление файлов каталога
+import java.nio.file.Files; // Импортируем вспомогательные методы для файлов
+import java.nio.file.Path; // Импортируем путь к файлу
+import java.nio.file.Paths; // Импортируем создание путей
+import java.util.List; // Импортируем интерфейс списка
+import java.util.Locale; // Импортируем локаль для разбора настроек
+import java.util.Set; // Импортируем интерфейс множества
+import java.util.concurrent.ConcurrentHashMap; // Импортируем потокобезопасную хеш-таблицу
+
+// Необязательный движок хранения очередей на диске. Включается свойством broker.dataDir.
+public class PersistenceEngine {
+
+    // Политика сброса данных на диск
+    public enum FsyncPolicy {
+        ALWAYS, // После каждого сообщения
+        GROUP, // Групповой сброс раз в broker.fsyncIntervalMillis
+        OS // Сброс выполняет операционная система
+    }
+
+    private final Path dataDir; // Каталог с данными всех очередей
+    private final FsyncPolicy fsyncPolicy; // Политика сброса на диск
+    private final long flushIntervalMillis; // Период обслуживания журналов
+    private final int segmentBytes; // Размер одного сегмента
+    private final Set<QueueLog> logs = ConcurrentHashMap.newKeySet(); // Открытые журналы
+
+    // Конструктор, принимающий настройки движка
+    public PersistenceEngine(Path dataDir, FsyncPolicy fsyncPolicy, long flushIntervalMillis, int segmentBytes) {
+        this.dataDir = dataDir; // Сохраняем каталог
+        this.fsyncPolicy = fsyncPolicy; // Сохраняем политику
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis); // Период не может быть нулевым
+        this.segmentBytes = segmentBytes; // Сохраняем размер сегмента
+
+        Thread flusher = new Thread(this::runFlusher, "broker-log-flusher"); // Единственный поток обслуживания журналов
+        flusher.setDaemon(true); // Поток не должен мешать завершению программы
+        flusher.start(); // Запускаем поток
+    }
+
+    // Метод для создания движка по системным свойствам; возвращает null, если хранение на диске не включено
+    public static PersistenceEngine fromSystemProperties() {
+        String dataDir = System.getProperty("broker.dataDir"); // Каталог данных
+        if (dataDir == null || dataDir.isEmpty()) { // Если каталог не задан
+            return null; // Очереди хранятся только в памяти
+        }
+        FsyncPolicy policy = FsyncPolicy.valueOf(System.getProperty("broker.fsync", "group").toUpperCase(Locale.ROOT)); // Политика сброса
+        long interval = Long.getLong("broker.fsyncIntervalMillis", 100); // Период группового сброса
+        int segmentBytes = Integer.getInteger("broker.segmentBytes", 64 * 1024 * 1024); // Размер сегмента
+        return new PersistenceEngine(Paths.get(dataDir), policy, interval, segmentBytes); // Создаем движок
+    }
+
+    // Метод для получения политики сброса
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy; // Возвращаем политику
+    }
+
+    // Метод для получения размера сегмента
+    public int getSegmentBytes() {
+        return segmentBytes; // Возвращаем размер
+    }
+
+    // Метод для открытия журнала новой очереди
+    public QueueLog open(String queueName) throws IOException {
+        Path directory = dataDir.resolve(URLEncoder.encode(queueName, StandardCharsets.UTF_8)); // Каталог очереди с безопасным именем
+        Files.createDirectories(directory); // Создаем каталог
+        QueueLog log = new QueueLog(this, directory); // Создаем журнал
+        logs.add(log); // Передаем его на обслуживание
+        return log; // Возвращаем журнал
+    }
+
+    // Метод для удаления журнала вместе с очередью
+    public void delete(QueueLog log) {
+        logs.remove(log); // Больше не обслуживаем журнал
+        try {
+            log.delete(); // Удаляем файлы
+        } catch (IOException e) { // Обработка ошибок удаления
+            System.err.println("Ошибка удаления журнала " + log.getDirectory() + ": " + e.getMessage()); // Сообщаем об ошибке
+        }
+    }
+
+    // Метод для восстановления очередей из каталога данных при запуске сервера
+    public void recover(QueueRegistry registry) throws IOException {
+        Files.createDirectories(dataDir); // Каталог может еще не существовать
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dataDir, Files::isDirectory)) { // Перебираем каталоги очередей
+            for (Path directory : stream) { // Для каждого каталога
+                String queueName = URLDecoder.decode(directory.getFileName().toString(), StandardCharsets.UTF_8); // Имя очереди
+                QueueLog log = new QueueLog(this, directory); // Журнал очереди
+                List<ByteBuffer> pending = log.recover(); // Читаем непрочитанные сообщения
+                logs.add(log); // Передаем журнал на обслуживание
+                MessageQueue queue = registry.restore(queueName, log, pending); // Восстанавливаем очередь в памяти
+                Server.startQueueTimer(queue); // Ставим очередь под наблюдение колеса таймеров
+                System.out.println("Очередь '" + queueName + "' восстановлена, сообщений: " + pending.size() + "."); // Сообщаем о восстановлении
+            }
+        }
+    }
+
+    // Основной цикл потока обслуживания: групповой сброс, запись смещений, удаление прочитанных сегментов
+    private void runFlusher() {
+        while (true) { // Бесконечный цикл обслуживания
+            try {
+                Thread.sleep(flushIntervalMillis); // Ждем до следующего обслуживания
+            } catch (InterruptedException e) { // Если поток прервали
+                return; // Завершаем обслуживание
+            }
+            boolean force = fsyncPolicy != FsyncPolicy.OS; // Сбрасываем на диск сами, если это не поручено системе
+            for (QueueLog log : logs) { // Для каждого журнала
+                try {
+                    log.flush(force); // Обслуживаем журнал
+                } catch (IOException e) { // Обработка ошибок записи
+                    System.err.println("Ошибка обслуживания журнала " + log.getDirectory() + ": " + e.getMessage()); // Сообщаем об ошибке
+                }
+            }
+        }
+    }
+}
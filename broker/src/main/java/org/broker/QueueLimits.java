@@ -0,0 +1,101 @@
+package org.broker;
+
+import java.util.Locale; // Импортируем локаль для разбора настроек
+import java.util.concurrent.atomic.LongAdder; // Импортируем распределенный счетчик
+
+// Ограничения памяти под сообщения: на каждую очередь и на весь брокер, по числу сообщений и по байтам.
+// У ограничений очереди и общих ограничений своя политика переполнения:
+//   block       - сообщение принимается, но чтение из сокета производителя приостанавливается, пока не освободится место
+//                 (дальше работает обычное управление потоком TCP);
+//   reject      - сообщение отклоняется (текстовый ответ об ошибке или статус STATUS_FULL);
+//   drop-oldest - из очереди вытесняются самые старые сообщения;
+//   spill       - новые сообщения пишутся в сегменты на диске и подкачиваются в память, когда потребители догонят.
+// Значение 0 означает отсутствие ограничения; по умолчанию ограничений нет.
+public final class QueueLimits {
+
+    // Политика переполнения
+    public enum Policy { BLOCK, REJECT, DROP_OLDEST, SPILL }
+
+    public static final long QUEUE_MAX_MESSAGES = Long.getLong("broker.queueMaxMessages", 0); // Сообщений в памяти одной очереди
+    public static final long QUEUE_MAX_BYTES = Long.getLong("broker.queueMaxBytes", 0); // Байтов в памяти одной очереди
+    public static final long MAX_MESSAGES = Long.getLong("broker.maxMessages", 0); // Сообщений в памяти всех очередей
+    public static final long MAX_BYTES = Long.getLong("broker.maxBytes", 0); // Байтов в памяти всех очередей
+    public static final Policy QUEUE_POLICY = parse("broker.queueOverflowPolicy"); // Политика при переполнении очереди
+    public static final Policy POLICY = parse("broker.overflowPolicy"); // Политика при исчерпании общих ограничений
+    public static final boolean ENABLED = QUEUE_MAX_MESSAGES > 0 || QUEUE_MAX_BYTES > 0 || MAX_MESSAGES > 0 || MAX_BYTES > 0; // Задано ли хоть одно ограничение
+    public static final int BACKPRESSURE_POLL_MILLIS = Math.max(1, Integer.getInteger("broker.backpressurePollMillis", 5)); // Как часто проверять, освободилось ли место
+    public static final int PAGE_IN_BATCH = Math.max(1, Integer.getInteger("broker.pageInBatch", 256)); // Сколько сообщений подкачивать с диска за раз
+
+    static final LongAdder memoryMessages = new LongAdder(); // Сообщений в памяти всех очередей
+    static final LongAdder memoryBytes = new LongAdder(); // Байтов в памяти всех очередей
+
+    private QueueLimits() { // Экземпляры не нужны, все методы статические
+    }
+
+    // Метод для проверки, поместится ли сообщение размером size в очередь с depth сообщениями и bytes байтами в памяти.
+    // share - на сколько частей делятся ограничения очереди (у разделов разделенной очереди - число разделов).
+    // Возвращает политику первого нарушенного ограничения или null, если место есть
+    static Policy check(int depth, long bytes, int share, long size) {
+        if (!ENABLED) { // Если ограничений нет
+            return null; // Место есть всегда
+        }
+        if (QUEUE_MAX_MESSAGES > 0 && depth + 1 > Math.max(1, QUEUE_MAX_MESSAGES / share)) { // Если очередь заполнена по числу сообщений
+            return QUEUE_POLICY; // Действует политика очереди
+        }
+        if (QUEUE_MAX_BYTES > 0 && bytes + size > Math.max(1, QUEUE_MAX_BYTES / share)) { // Если очередь заполнена по байтам
+            return QUEUE_POLICY; // Действует политика очереди
+        }
+        if (MAX_MESSAGES > 0 && memoryMessages.sum() + 1 > MAX_MESSAGES) { // Если исчерпано общее число сообщений
+            return POLICY; // Действует общая политика
+        }
+        if (MAX_BYTES > 0 && memoryBytes.sum() + size > MAX_BYTES) { // Если исчерпана общая память
+            return POLICY; // Действует общая политика
+        }
+        return null; // Место есть
+    }
+
+    // Метод для учета сообщения, попавшего в память
+    static void added(long size) {
+        memoryMessages.increment(); // Увеличиваем число сообщений
+        memoryBytes.add(size); // Увеличиваем размер
+    }
+
+    // Метод для учета сообщения, покинувшего память
+    static void removed(long size) {
+        memoryMessages.decrement(); // Уменьшаем число сообщений
+        memoryBytes.add(-size); // Уменьшаем размер
+    }
+
+    // Метод для вывода использования относительно ограничения: "10/100" или просто "10", если ограничения нет
+    static String usage(long used, long limit) {
+        return limit > 0 ? used + "/" + limit : String.valueOf(used); // Строка использования
+    }
+
+    // Метод для описания общих ограничений одной строкой (для сводки stats)
+    static String describe() {
+        return "Квоты: в памяти сообщений " + usage(memoryMessages.sum(), MAX_MESSAGES) + ", байт " + usage(memoryBytes.sum(), MAX_BYTES)
+                + " (" + name(POLICY) + "); на очередь сообщений " + limit(QUEUE_MAX_MESSAGES)
+                + ", байт " + limit(QUEUE_MAX_BYTES) + " (" + name(QUEUE_POLICY) + ")."; // Строка квот
+    }
+
+    // Метод для вывода значения ограничения
+    private static String limit(long limit) {
+        return limit > 0 ? String.valueOf(limit) : "без ограничения"; // Значение или его отсутствие
+    }
+
+    // Метод для получения имени политики в том виде, в каком оно задается в настройках
+    static String name(Policy policy) {
+        return policy.name().toLowerCase(Locale.ROOT).replace('_', '-'); // block, reject, drop-oldest или spill
+    }
+
+    // Метод для чтения политики из системного свойства (block, reject, drop-oldest, spill)
+    private static Policy parse(String property) {
+        String value = System.getProperty(property, "block"); // По умолчанию производитель приостанавливается
+        try {
+            return Policy.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_')); // Имя политики
+        } catch (IllegalArgumentException e) { // Если политика неизвестна
+            System.err.println("Ошибка настройки " + property + ": неизвестная политика '" + value + "', используется block."); // Сообщаем об ошибке
+            return Policy.BLOCK; // Используем политику по умолчанию
+        }
+    }
+}
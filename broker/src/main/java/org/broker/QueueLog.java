@@ -0,0 +1,226 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.MappedByteBuffer; // Импортируем буфер, отображенный на файл
+import java.nio.channels.FileChannel; // Импортируем файловый канал
+import java.nio.file.DirectoryStream; // Импортируем перечисление файлов каталога
+import java.nio.file.Files; // Импортируем вспомогательные методы для файлов
+import java.nio.file.Path; // Импортируем путь к файлу
+import java.nio.file.StandardOpenOption; // Импортируем режимы открытия файлов
+import java.util.ArrayDeque; // Импортируем двустороннюю очередь для сегментов
+import java.util.ArrayList; // Импортируем список
+import java.util.Collections; // Импортируем сортировку
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.atomic.AtomicLong; // Импортируем атомарный счетчик
+import java.util.zip.CRC32; // Импортируем контрольную сумму для обнаружения оборванных записей
+
+// Журнал одной очереди на диске: сегменты только для дозаписи, отображенные в память, и файл смещения потребителя.
+//
+// Запись в сегменте: [int длина + 1][int CRC32][байты сообщения]. Нулевое поле длины означает конец записей,
+// поэтому заранее выделенный (заполненный нулями) хвост сегмента не путается с пустым сообщением.
+public class QueueLog {
+
+    private static final String SEGMENT_SUFFIX = ".log"; // Расширение файлов сегментов
+    private static final String OFFSET_FILE = "consumer.offset"; // Файл со смещением первого непрочитанного сообщения
+    private static final int RECORD_HEADER = 8; // Длина заголовка записи
+
+    private final PersistenceEngine engine; // Движок, которому принадлежит журнал
+    private final Path directory; // Каталог очереди
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>(); // Сегменты от старых к новым
+    private final CRC32 crc = new CRC32(); // Контрольная сумма (используется под блокировкой журнала)
+    private long nextOffset; // Смещение, которое получит следующее сообщение
+    private final AtomicLong consumedOffset = new AtomicLong(); // Смещение первого непрочитанного сообщения
+    private long savedOffset = -1; // Последнее смещение, записанное в файл
+    private boolean dirty; // Есть ли записи, еще не сброшенные на диск
+    private boolean deleted; // Удален ли журнал вместе с очередью
+
+    // Конструктор, принимающий движок и каталог очереди
+    QueueLog(PersistenceEngine engine, Path directory) {
+        this.engine = engine; // Сохраняем движок
+        this.directory = directory; // Сохраняем каталог
+    }
+
+    // Метод для получения каталога очереди
+    Path getDirectory() {
+        return directory; // Возвращаем каталог
+    }
+
+    // Метод для дозаписи сообщения в конец журнала; false, если журнал удален и сообщение не записано.
+    // Незаписанное сообщение не получает смещения, поэтому его извлечение не должно сдвигать смещение потребителя
+    synchronized boolean append(ByteBuffer payload) throws IOException {
+        if (deleted) { // Очередь удалена - писать некуда
+            return false; // Сообщение не записано
+        }
+        Segment active = segments.peekLast(); // Текущий сегмент для записи
+        int length = payload.remaining(); // Длина сообщения
+        if (active == null || active.buffer.remaining() < RECORD_HEADER + length) { // Если сегмента нет или в нем нет места
+            if (active != null) { // Если заполнился прежний сегмент
+                active.buffer.force(); // Сбрасываем его на диск перед переходом к новому
+            }
+            active = Segment.create(directory, nextOffset, Math.max(engine.getSegmentBytes(), RECORD_HEADER + length)); // Создаем новый сегмент
+            segments.addLast(active); // Добавляем его в журнал
+        }
+
+        crc.reset(); // Сбрасываем контрольную сумму
+        crc.update(payload.duplicate()); // Считаем контрольную сумму сообщения
+        int position = active.buffer.position(); // Начало записи
+        active.buffer.position(position + 4); // Поле длины запишем последним
+        active.buffer.putInt((int) crc.getValue()).put(payload); // Записываем контрольную сумму и сообщение
+        active.buffer.putInt(position, length + 1); // Записываем длину - теперь запись видна при восстановлении
+        active.count++; // Увеличиваем число записей сегмента
+        nextOffset++; // Следующее сообщение получит следующее смещение
+        dirty = true; // Есть несброшенные данные
+
+        if (engine.getFsyncPolicy() == PersistenceEngine.FsyncPolicy.ALWAYS) { // Если каждое сообщение нужно сразу сбросить на диск
+            active.buffer.force(); // Сбрасываем сегмент
+            dirty = false; // Все данные на диске
+        }
+        return true; // Сообщение записано
+    }
+
+    // Метод для отметки, что потребитель забрал очередное сообщение (без обращения к диску)
+    void markConsumed() {
+        consumedOffset.incrementAndGet(); // Сдвигаем смещение потребителя без блокировки журнала
+    }
+
+    // Метод для периодического обслуживания: групповой сброс на диск, запись смещения и удаление прочитанных сегментов
+    synchronized void flush(boolean force) throws IOException {
+        if (deleted) { // Очередь удалена
+            return; // Обслуживать нечего
+        }
+        if (force && dirty) { // Если нужно сбросить накопленные записи
+            Segment active = segments.peekLast(); // Сбрасывать нужно только текущий сегмент - прежние сброшены при переходе
+            if (active != null) { // Если сегмент есть
+                active.buffer.force(); // Сбрасываем его на диск
+            }
+            dirty = false; // Все данные на диске
+        }
+        long consumed = consumedOffset.get(); // Текущее смещение потребителя
+        if (savedOffset != consumed) { // Если смещение потребителя изменилось
+            ByteBuffer offset = ByteBuffer.allocate(8).putLong(consumed); // Компактный индекс - одно число
+            offset.flip(); // Готовим буфер к записи
+            try (FileChannel channel = FileChannel.open(directory.resolve(OFFSET_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) { // Открываем файл смещения
+                channel.write(offset, 0); // Перезаписываем смещение
+                if (force) { // Если политика требует сброса
+                    channel.force(false); // Сбрасываем файл на диск
+                }
+            }
+            savedOffset = consumed; // Запоминаем записанное смещение
+        }
+        while (segments.size() > 1) { // Текущий сегмент не удаляется, даже если прочитан
+            Segment oldest = segments.peekFirst(); // Самый старый сегмент
+            if (oldest.baseOffset + oldest.count > savedOffset) { // Если в нем есть непрочитанные сообщения
+                break; // Остальные сегменты тем более нужны
+            }
+            segments.pollFirst().delete(); // Удаляем прочитанный сегмент
+        }
+    }
+
+    // Метод для удаления журнала вместе с очередью
+    synchronized void delete() throws IOException {
+        deleted = true; // Журнал больше не используется
+        for (Segment segment : segments) { // Для каждого сегмента
+            segment.delete(); // Удаляем файл сегмента
+        }
+        segments.clear(); // Очищаем список
+        Files.deleteIfExists(directory.resolve(OFFSET_FILE)); // Удаляем файл смещения
+        Files.deleteIfExists(directory); // Удаляем каталог очереди
+    }
+
+    // Метод для восстановления журнала: возвращает непрочитанные сообщения в порядке записи
+    synchronized List<ByteBuffer> recover() throws IOException {
+        Path offsetFile = directory.resolve(OFFSET_FILE); // Файл смещения
+        long consumed = 0; // Смещение потребителя
+        if (Files.exists(offsetFile)) { // Если смещение сохранялось
+            consumed = ByteBuffer.wrap(Files.readAllBytes(offsetFile)).getLong(); // Читаем его
+        }
+
+        List<Path> files = new ArrayList<>(); // Файлы сегментов
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) { // Перебираем сегменты
+            for (Path file : stream) { // Для каждого файла
+                files.add(file); // Добавляем его в список
+            }
+        }
+        Collections.sort(files); // Имена - смещения одинаковой длины, поэтому порядок имен совпадает с порядком записи
+
+        List<ByteBuffer> pending = new ArrayList<>(); // Непрочитанные сообщения
+        for (Path file : files) { // Для каждого сегмента
+            Segment segment = Segment.open(file); // Открываем сегмент
+            if (!segments.isEmpty() && segment.baseOffset != nextOffset) { // Если сегменты идут с разрывом
+                segment.delete(); // Журнал поврежден дальше этой точки - отбрасываем хвост
+                continue; // Переходим к следующему файлу
+            }
+            nextOffset = segment.baseOffset; // Смещение первой записи сегмента
+            segments.addLast(segment); // Добавляем сегмент в журнал
+            MappedByteBuffer buffer = segment.buffer; // Отображение сегмента
+            while (buffer.remaining() >= RECORD_HEADER) { // Пока может поместиться заголовок
+                int position = buffer.position(); // Начало записи
+                int length = buffer.getInt(position) - 1; // Длина сообщения
+                if (length < 0 || length > buffer.remaining() - RECORD_HEADER) { // Конец записей или оборванная запись
+                    break; // Дальше записей нет
+                }
+                byte[] payload = new byte[length]; // Буфер для сообщения
+                int checksum = buffer.getInt(position + 4); // Сохраненная контрольная сумма
+                buffer.position(position + RECORD_HEADER); // Переходим к сообщению
+                buffer.get(payload); // Читаем сообщение
+                crc.reset(); // Сбрасываем контрольную сумму
+                crc.update(payload); // Считаем контрольную сумму прочитанного
+                if ((int) crc.getValue() != checksum) { // Запись оборвана при сбое
+                    buffer.position(position); // Следующая запись перезапишет ее
+                    break; // Дальше записей нет
+                }
+                if (nextOffset >= consumed) { // Сообщение еще не прочитано
+                    pending.add(ByteBuffer.wrap(payload)); // Возвращаем его в очередь
+                }
+                segment.count++; // Увеличиваем число записей сегмента
+                nextOffset++; // Переходим к следующему смещению
+            }
+            if (buffer.remaining() >= 4) { // Если после последней записи есть место
+                buffer.putInt(buffer.position(), 0); // Затираем длину оборванной записи, если она есть
+            }
+        }
+        consumedOffset.set(nextOffset - pending.size()); // Первое непрочитанное смещение (не дальше записанного)
+        savedOffset = -1; // Исправленное смещение будет записано при следующем обслуживании
+        return pending; // Возвращаем непрочитанные сообщения
+    }
+
+    // Сегмент журнала: файл фиксированного размера, отображенный в память
+    static class Segment {
+
+        final long baseOffset; // Смещение первой записи сегмента
+        final Path file; // Файл сегмента
+        final MappedByteBuffer buffer; // Отображение файла; позиция - конец записанных данных
+        int count; // Число записей в сегменте
+
+        // Конструктор, принимающий смещение, файл и отображение
+        private Segment(long baseOffset, Path file, MappedByteBuffer buffer) {
+            this.baseOffset = baseOffset; // Сохраняем смещение
+            this.file = file; // Сохраняем файл
+            this.buffer = buffer; // Сохраняем отображение
+        }
+
+        // Метод для создания нового сегмента заданного размера
+        static Segment create(Path directory, long baseOffset, int size) throws IOException {
+            Path file = directory.resolve(String.format("%020d", baseOffset) + SEGMENT_SUFFIX); // Имя файла - смещение первой записи
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) { // Создаем файл
+                return new Segment(baseOffset, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size)); // Отображаем его в память
+            }
+        }
+
+        // Метод для открытия существующего сегмента при восстановлении
+        static Segment open(Path file) throws IOException {
+            String name = file.getFileName().toString(); // Имя файла
+            long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())); // Смещение из имени
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) { // Открываем файл
+                return new Segment(baseOffset, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size())); // Отображаем его в память
+            }
+        }
+
+        // Метод для удаления файла сегмента
+        void delete() throws IOException {
+            Files.deleteIfExists(file); // Отображение освободится сборщиком мусора, файл удаляется сразу
+        }
+    }
+}
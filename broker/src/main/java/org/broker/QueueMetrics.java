@@ -0,0 +1,138 @@
+package org.broker;
+
+import java.util.concurrent.atomic.LongAdder; // Импортируем распределенный счетчик
+
+// Показатели одной очереди. Счетчики - LongAdder, поэтому одновременные производители и потребители
+// не борются за одну ячейку памяти; скорости пересчитываются раз в интервал статистики.
+public class QueueMetrics implements QueueMetricsMBean {
+
+    private final MessageQueue queue; // Очередь, к которой относятся показатели
+    final LongAdder enqueued = new LongAdder(); // Добавлено сообщений
+    final LongAdder dequeued = new LongAdder(); // Извлечено сообщений
+    final LongAdder rejected = new LongAdder(); // Отклонено сообщений из-за переполнения
+    final LongAdder dropped = new LongAdder(); // Вытеснено старых сообщений из-за переполнения
+    final LongAdder spilled = new LongAdder(); // Выгружено сообщений на диск
+    final LongAdder throttled = new LongAdder(); // Сколько раз производители приостанавливались из-за переполнения
+    final LatencyHistogram timeInQueue = new LatencyHistogram(); // Время от добавления до извлечения
+    private long lastEnqueued; // Значение счетчика добавлений при прошлом замере (меняет только поток статистики)
+    private long lastDequeued; // Значение счетчика извлечений при прошлом замере
+    private volatile double enqueueRate; // Добавлений в секунду
+    private volatile double dequeueRate; // Извлечений в секунду
+
+    // Конструктор, принимающий очередь
+    QueueMetrics(MessageQueue queue) {
+        this.queue = queue; // Сохраняем очередь
+    }
+
+    // Метод для пересчета скоростей по числу событий за прошедший интервал
+    void sample(double elapsedSeconds) {
+        long in = enqueued.sum(); // Текущее число добавлений
+        long out = dequeued.sum(); // Текущее число извлечений
+        enqueueRate = (in - lastEnqueued) / elapsedSeconds; // Скорость добавления
+        dequeueRate = (out - lastDequeued) / elapsedSeconds; // Скорость извлечения
+        lastEnqueued = in; // Запоминаем значения для следующего замера
+        lastDequeued = out; // Запоминаем значения для следующего замера
+    }
+
+    @Override
+    public int getDepth() {
+        return queue.getDepth(); // Берем значение у очереди
+    }
+
+    @Override
+    public long getBytes() {
+        return queue.getBytes(); // Берем значение у очереди
+    }
+
+    @Override
+    public int getSpilledDepth() {
+        return queue.getSpilledDepth(); // Берем значение у очереди
+    }
+
+    @Override
+    public long getSpilledBytes() {
+        return queue.getSpilledBytes(); // Берем значение у очереди
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public long getDropped() {
+        return dropped.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public long getSpilled() {
+        return spilled.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public long getThrottled() {
+        return throttled.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public int getConsumers() {
+        return queue.getConsumers(); // Берем значение у очереди
+    }
+
+    @Override
+    public long getEnqueued() {
+        return enqueued.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public long getDequeued() {
+        return dequeued.sum(); // Возвращаем сумму счетчика
+    }
+
+    @Override
+    public double getEnqueueRate() {
+        return enqueueRate; // Возвращаем последнюю скорость
+    }
+
+    @Override
+    public double getDequeueRate() {
+        return dequeueRate; // Возвращаем последнюю скорость
+    }
+
+    @Override
+    public long getTimeInQueueP50Micros() {
+        return LatencyHistogram.micros(timeInQueue.getPercentile(0.5)); // Медиана в микросекундах
+    }
+
+    @Override
+    public long getTimeInQueueP99Micros() {
+        return LatencyHistogram.micros(timeInQueue.getPercentile(0.99)); // 99-й процентиль в микросекундах
+    }
+
+    @Override
+    public long getTimeInQueueMaxMicros() {
+        return LatencyHistogram.micros(timeInQueue.getMax()); // Максимум в микросекундах
+    }
+
+    // Метод для описания показателей очереди одной строкой
+    String describe() {
+        return "Очередь '" + queue.getName() + "': сообщений " + getDepth() + ", байт " + getBytes()
+                + ", потребителей " + getConsumers()
+                + ", добавлено " + getEnqueued() + String.format(" (%.1f/с)", enqueueRate)
+                + ", извлечено " + getDequeued() + String.format(" (%.1f/с)", dequeueRate)
+                + ", время в очереди " + timeInQueue.summary() + "." + quotas(); // Строка статистики
+    }
+
+    // Метод для описания использования квот очереди (пустая строка, если ограничения не заданы и переполнений не было)
+    private String quotas() {
+        int spilledDepth = getSpilledDepth(); // Сообщений на диске
+        if (!QueueLimits.ENABLED && spilledDepth == 0) { // Если квоты не используются
+            return ""; // Описывать нечего
+        }
+        return " В памяти сообщений " + QueueLimits.usage(getDepth() - spilledDepth, QueueLimits.QUEUE_MAX_MESSAGES)
+                + ", байт " + QueueLimits.usage(getBytes() - getSpilledBytes(), QueueLimits.QUEUE_MAX_BYTES)
+                + ", на диске " + spilledDepth + " (" + getSpilledBytes() + " байт)"
+                + ", отклонено " + getRejected() + ", вытеснено " + getDropped() + ", выгружено " + getSpilled()
+                + ", приостановок производителей " + getThrottled() + "."; // Строка квот
+    }
+}
@@ -0,0 +1,37 @@
+package org.broker;
+
+// Показатели одной очереди, доступные через JMX (org.broker:type=Queue,name=...)
+public interface QueueMetricsMBean {
+
+    int getDepth(); // Количество сообщений в очереди
+
+    long getBytes(); // Суммарный размер сообщений в байтах
+
+    int getSpilledDepth(); // Сколько сообщений из них сейчас выгружено на диск
+
+    long getSpilledBytes(); // Размер сообщений, выгруженных на диск
+
+    long getRejected(); // Сколько сообщений отклонено из-за переполнения
+
+    long getDropped(); // Сколько старых сообщений вытеснено из-за переполнения
+
+    long getSpilled(); // Сколько сообщений выгружено на диск за все время
+
+    long getThrottled(); // Сколько раз производители приостанавливались из-за переполнения
+
+    int getConsumers(); // Число ожидающих потребителей и подписок
+
+    long getEnqueued(); // Сколько сообщений добавлено за все время
+
+    long getDequeued(); // Сколько сообщений извлечено за все время
+
+    double getEnqueueRate(); // Добавлений в секунду за последний интервал статистики
+
+    double getDequeueRate(); // Извлечений в секунду за последний интервал статистики
+
+    long getTimeInQueueP50Micros(); // Медиана времени нахождения сообщения в очереди
+
+    long getTimeInQueueP99Micros(); // 99-й процентиль времени нахождения сообщения в очереди
+
+    long getTimeInQueueMaxMicros(); // Наибольшее время нахождения сообщения в очереди
+}
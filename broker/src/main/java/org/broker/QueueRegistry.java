@@ -0,0 +1,117 @@
+package org.broker;
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.List; // Импортируем интерфейс списка
+import java.util.Set; // Импортируем интерфейс множества
+import java.util.concurrent.ConcurrentHashMap; // Импортируем потокобезопасную хеш-таблицу
+
+// Реестр именованных очередей с атомарным созданием и удалением пустых очередей
+public class QueueRegistry {
+
+    private final ConcurrentHashMap<String, MessageQueue> queues = new ConcurrentHashMap<>(); // Очереди по именам
+    private final PersistenceEngine persistence; // Движок хранения на диске или null
+
+    // Конструктор реестра очередей, хранящихся только в памяти
+    public QueueRegistry() {
+        this(null); // Без движка хранения
+    }
+
+    // Конструктор, принимающий движок хранения (null - только память)
+    public QueueRegistry(PersistenceEngine persistence) {
+        this.persistence = persistence; // Сохраняем движок
+    }
+
+    // Метод для восстановления очередей с диска при запуске сервера
+    public void recover() throws IOException {
+        if (persistence != null) { // Если хранение на диске включено
+            persistence.recover(this); // Восстанавливаем очереди из журналов
+        }
+    }
+
+    // Метод для регистрации очереди, восстановленной из журнала
+    MessageQueue restore(String queueName, QueueLog log, List<ByteBuffer> pending) {
+        MessageQueue queue = new MessageQueue(queueName, log); // Очередь с тем же журналом
+        for (ByteBuffer payload : pending) { // Для каждого непрочитанного сообщения
+            queue.restore(payload); // Возвращаем его в очередь
+        }
+        queues.put(queueName, queue); // Регистрируем очередь
+        Server.metrics.queueCreated(queue); // Регистрируем показатели очереди
+        return queue; // Возвращаем очередь
+    }
+
+    // Метод для получения очереди по имени; возвращает null, если очереди нет
+    public MessageQueue get(String queueName) {
+        MessageQueue queue = queues.get(queueName); // Читаем без блокировок
+        return queue == null || queue.isClosed() ? null : queue; // Закрытая очередь считается удаленной
+    }
+
+    // Метод для проверки существования очереди
+    public boolean containsKey(String queueName) {
+        return get(queueName) != null; // Очередь существует, если она есть и не закрыта
+    }
+
+    // Метод для атомарного создания очереди; возвращает созданную очередь или null, если она уже была
+    public MessageQueue createIfAbsent(String queueName) {
+        return createIfAbsent(queueName, 1); // Обычная очередь из одного раздела
+    }
+
+    // Метод для атомарного создания очереди из partitions разделов (больше одного - разделенная очередь только в памяти)
+    public MessageQueue createIfAbsent(String queueName, int partitions) {
+        while (true) { // Повторяем, если очередь одновременно удаляется
+            MessageQueue existing = queues.get(queueName); // Текущая очередь с этим именем
+            if (existing != null && !existing.isClosed()) { // Если очередь уже есть
+                return null; // Ничего не создаем
+            }
+            if (existing != null) { // Закрытая очередь сейчас удаляется вместе со своим журналом
+                Thread.onSpinWait(); // Ждем окончания удаления, чтобы не занять ее каталог раньше времени
+                continue; // Повторяем попытку
+            }
+            MessageQueue[] created = new MessageQueue[1]; // Очередь, созданная этим вызовом
+            queues.computeIfAbsent(queueName, name -> created[0] = partitions > 1 // Журнал открывается только победителем
+                    ? new PartitionedQueue(name, partitions) // Разделы не хранятся на диске
+                    : new MessageQueue(name, openLog(name))); // Обычная очередь
+            if (created[0] != null) { // Если имя было свободно
+                Server.metrics.queueCreated(created[0]); // Регистрируем показатели очереди
+                return created[0]; // Очередь создана
+            }
+        }
+    }
+
+    // Метод для атомарного удаления очереди, только если она пуста; возвращает true, если очередь удалена
+    public boolean removeIfEmpty(String queueName) {
+        MessageQueue queue = queues.get(queueName); // Получаем очередь по имени
+        return queue != null && removeIfEmpty(queue); // Удаляем, если очередь есть и пуста
+    }
+
+    // Метод для удаления именно этой очереди, если она пуста (очередь с тем же именем, созданная позже, не затрагивается)
+    public boolean removeIfEmpty(MessageQueue queue) {
+        if (!queue.closeIfEmpty()) { // Если очередь не пуста или уже закрыта
+            return false; // Ничего не удаляем
+        }
+        if (queue.getLog() != null) { // Если очередь хранилась на диске
+            persistence.delete(queue.getLog()); // Удаляем ее журнал до того, как имя освободится
+        }
+        Server.metrics.queueRemoved(queue); // Снимаем показатели с регистрации, пока имя еще занято
+        queues.remove(queue.getName(), queue); // Удаляем именно эту закрытую очередь
+        return true; // Очередь удалена
+    }
+
+    // Метод для открытия журнала новой очереди; null, если хранение на диске выключено или недоступно
+    private QueueLog openLog(String queueName) {
+        if (persistence == null) { // Если хранение на диске выключено
+            return null; // Очередь хранится только в памяти
+        }
+        try {
+            return persistence.open(queueName); // Открываем журнал
+        } catch (IOException e) { // Обработка ошибок создания каталога
+            System.err.println("Ошибка создания журнала очереди '" + queueName + "': " + e.getMessage()); // Сообщаем об ошибке
+            return null; // Очередь будет работать только в памяти
+        }
+    }
+
+    // Метод для получения имен всех очередей
+    public Set<String> names() {
+        return queues.keySet(); // Возвращаем представление ключей
+    }
+}
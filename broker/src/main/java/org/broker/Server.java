@@ -0,0 +1,680 @@
+package org.broker;
+
+import java.io.*; // Импортируем классы для работы с вводом и выводом
+import java.net.ServerSocket; // Импортируем класс для работы с серверными сокетами
+import java.net.Socket; // Импортируем класс для работы с клиентскими сокетами
+import java.util.*; // Импортируем классы из стандартной библиотеки для работы с коллекциями
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.Executors; // Импортируем фабрику пулов потоков
+import java.util.concurrent.ScheduledExecutorService; // Импортируем планировщик отложенных задач
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import java.util.concurrent.locks.LockSupport; // Импортируем приостановку потока на заданное время
+import java.util.function.Consumer; // Импортируем функциональный интерфейс потребителя
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+
+public class Server {
+
+    public static final int PORT = Integer.getInteger("broker.port", 1234); // Порт, на котором будет работать сервер (в кластере у каждого узла свой)
+
+    // Коллекция для хранения именованных очередей сообщений
+    static final QueueRegistry namedQueues = new QueueRegistry(PersistenceEngine.fromSystemProperties());
+    // Время простоя пустой очереди до ее удаления, в секундах
+    public static final int QUEUE_TTL_SECONDS = Integer.getInteger("broker.queueTtlSeconds", 30);
+    // Длительность шага колеса таймеров, в миллисекундах
+    public static final int EXPIRY_TICK_MILLIS = Integer.getInteger("broker.expiryTickMillis", 1000);
+    // Общее колесо таймеров - индекс сроков жизни всех очередей с одним потоком
+    static final ExpiryWheel queueTimers = new ExpiryWheel(namedQueues, QUEUE_TTL_SECONDS * 1000L, EXPIRY_TICK_MILLIS);
+
+    // Общий планировщик таймаутов ожидающих receive (один поток на весь сервер)
+    static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "broker-timeouts"); // Поток планировщика
+        thread.setDaemon(true); // Поток не должен мешать завершению программы
+        return thread; // Возвращаем поток
+    });
+    // Размер окна подписки, если он не указан в команде subscribe
+    public static final int DEFAULT_PREFETCH = Integer.getInteger("broker.defaultPrefetch", 10);
+
+    // Режим работы по умолчанию: неблокирующий сервер на Selector; "blocking" - поток на каждого клиента
+    public static final String MODE = System.getProperty("broker.mode", "nio");
+    // Количество потоков цикла событий в неблокирующем режиме (по умолчанию - по одному на ядро)
+    public static final int EVENT_LOOPS = Integer.getInteger("broker.eventLoops", Runtime.getRuntime().availableProcessors());
+    // Наибольшая длина строки текстовой команды в байтах
+    public static final int MAX_COMMAND_LENGTH = Integer.getInteger("broker.maxCommandBytes", 64 * 1024);
+    // Интервал замера скоростей очередей и записи снимка статистики в журнал (0 - выключено)
+    public static final int STATS_INTERVAL_SECONDS = Integer.getInteger("broker.statsIntervalSeconds", 60);
+    // Показатели брокера: счетчики, гистограммы задержек, MBean для JMX
+    static final Metrics metrics = new Metrics(namedQueues);
+
+    public static void main(String[] args) { // Главный метод, точка входа в программу
+        String mode = args.length > 0 ? args[0] : MODE; // Режим можно передать первым аргументом командной строки
+        metrics.start(STATS_INTERVAL_SECONDS, Boolean.parseBoolean(System.getProperty("broker.statsLog", "true"))); // Запускаем периодические снимки статистики
+        try {
+            namedQueues.recover(); // Восстанавливаем очереди с диска, если хранение включено
+        } catch (IOException e) { // Обработка ошибок чтения журналов
+            System.err.println("Ошибка восстановления очередей: " + e.getMessage()); // Сообщаем об ошибке
+        }
+        Cluster.startHandoff(); // Передаем владельцам очереди, которые после изменения списка узлов стали чужими
+        if ("blocking".equals(mode)) { // Если выбран запасной блокирующий режим
+            runBlocking(); // Запускаем сервер с потоком на каждое соединение
+            return; // Выходим после остановки сервера
+        }
+
+        try {
+            new NioServer(PORT, EVENT_LOOPS).run(); // Запускаем неблокирующий сервер с пулом циклов событий
+        } catch (IOException e) { // Обработка исключений ввода-вывода
+            System.err.println("Ошибка запуска сервера: " + e.getMessage()); // Сообщаем об ошибке запуска сервера
+        }
+    }
+
+    // Метод для запуска сервера в блокирующем режиме (отдельный поток ClientHandler на каждого клиента)
+    public static void runBlocking() {
+        try (ServerSocket serverSocket = new ServerSocket(PORT)) { // Создаем серверный сокет для прослушивания порта
+            System.out.println("Сервер запущен (блокирующий режим)."); // Сообщаем о запуске сервера
+
+            while (true) { // Бесконечный цикл для обработки входящих соединений
+                new ClientHandler(serverSocket.accept()).start(); // Принимаем входящее соединение и обрабатываем его в новом потоке
+            }
+        } catch (IOException e) { // Обработка исключений ввода-вывода
+            System.err.println("Ошибка запуска сервера: " + e.getMessage()); // Сообщаем об ошибке запуска сервера
+        }
+    }
+
+    // Метод для упаковки ответа в кадр: 4 байта длины, затем текст ответа в UTF-8
+    public static ByteBuffer[] frame(String response) {
+        byte[] messageBytes = (response + "\n").getBytes(StandardCharsets.UTF_8); // Преобразуем строку в массив байтов
+        ByteBuffer buffer = ByteBuffer.allocate(4 + messageBytes.length); // Один буфер на длину и тело, чтобы обойтись одной записью
+        buffer.putInt(messageBytes.length).put(messageBytes); // Записываем длину и само сообщение
+        buffer.flip(); // Готовим буфер к чтению
+        return new ByteBuffer[] {buffer}; // Возвращаем готовый кадр
+    }
+
+    // Метод для упаковки ответа с телом сообщения: байты сообщения не копируются и не перекодируются,
+    // а передаются в сокет групповой записью между текстом до и после них
+    public static ByteBuffer[] frame(String prefix, ByteBuffer payload, String suffix) {
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8); // Текст перед сообщением
+        byte[] suffixBytes = (suffix + "\n").getBytes(StandardCharsets.UTF_8); // Текст после сообщения
+        ByteBuffer head = ByteBuffer.allocate(4 + prefixBytes.length); // Буфер для длины и текста перед сообщением
+        head.putInt(prefixBytes.length + payload.remaining() + suffixBytes.length).put(prefixBytes); // Длина всего ответа и начало текста
+        head.flip(); // Готовим буфер к чтению
+        return new ByteBuffer[] {head, payload.duplicate(), ByteBuffer.wrap(suffixBytes)}; // Сообщение передается как есть
+    }
+
+    // Метод для записи кадра в поток без промежуточного копирования в новый массив
+    public static void writeFrame(OutputStream out, ByteBuffer[] frame) throws IOException {
+        for (ByteBuffer buffer : frame) { // Для каждой части кадра
+            if (buffer.hasArray()) { // Если буфер лежит в куче
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining()); // Пишем прямо из массива буфера
+            } else {
+                ByteBuffer copy = buffer.duplicate(); // Буфер вне кучи читаем через копию позиции
+                byte[] chunk = new byte[Math.min(copy.remaining(), 8192)]; // Промежуточный буфер ограниченного размера
+                while (copy.hasRemaining()) { // Пока есть байты
+                    int length = Math.min(chunk.length, copy.remaining()); // Размер очередной порции
+                    copy.get(chunk, 0, length); // Берем порцию
+                    out.write(chunk, 0, length); // Пишем порцию
+                }
+            }
+        }
+    }
+
+    // Метод для обработки команды send: создает очередь, если ее еще нет, и возвращает текст ответа
+    public static String openQueue(String queueName) {
+        return openQueue(queueName, null); // Обычная очередь
+    }
+
+    // Метод для обработки команды "send <очередь> [разделы]"; число разделов учитывается только при создании очереди
+    public static String openQueue(String queueName, String partitionsText) {
+        int partitions; // Число разделов
+        try {
+            partitions = partitionsText == null ? 1 : Integer.parseInt(partitionsText); // По умолчанию очередь не разделена
+        } catch (NumberFormatException e) { // Если число слишком большое
+            return "Неверный формат команды send."; // Сообщаем об ошибке
+        }
+        MessageQueue created = namedQueues.createIfAbsent(queueName, partitions); // Атомарно создаем очередь, если ее еще нет
+        if (created != null) { // Если очередь создана этим вызовом
+            startQueueTimer(created); // Ставим очередь под наблюдение колеса таймеров
+            if (created instanceof PartitionedQueue) { // Если очередь разделена
+                return "Очередь '" + queueName + "' создана (разделов " + ((PartitionedQueue) created).getPartitionCount() + ")."; // Сообщаем о создании и числе разделов
+            }
+            return "Очередь '" + queueName + "' создана."; // Сообщаем о создании очереди
+        }
+        return "Очередь '" + queueName + "' уже существует."; // Сообщаем о том, что очередь уже существует
+    }
+
+    // Метод для обработки команды receive: извлекает сообщение из очереди и возвращает текст ответа
+    public static ByteBuffer[] takeMessage(String queueName) {
+        MessageQueue queue = namedQueues.get(queueName); // Получаем очередь по имени
+        if (queue == null) { // Если очередь не существует
+            return frame("Очередь '" + queueName + "' не существует."); // Сообщаем об ошибке
+        }
+        ByteBuffer message = queue.poll(); // Извлекаем сообщение из очереди (проверка и извлечение - одна операция)
+        if (message == null) { // Если очередь пуста
+            return frame("Очередь '" + queueName + "' пуста."); // Сообщаем об ошибке
+        }
+        return frame("Сообщение из очереди: ", message, ""); // Возвращаем извлеченное сообщение
+    }
+
+    // Метод для разбора аргумента вида "<очередь> [число]"; возвращает имя и число (или null, если числа нет)
+    public static String[] splitCount(String argument) {
+        int space = argument.lastIndexOf(' '); // Последний пробел отделяет необязательное число
+        if (space > 0 && argument.substring(space + 1).matches("-?\\d+")) { // Если после пробела стоит число
+            return new String[] {argument.substring(0, space), argument.substring(space + 1)}; // Возвращаем имя и число
+        }
+        return new String[] {argument, null}; // Числа нет - весь аргумент является именем очереди
+    }
+
+    // Метод для обработки команды "receive <очередь> [таймаут мс]"; возвращает ответ или null, если ответ придет позже через later
+    public static ByteBuffer[] receive(String argument, List<Subscriber> consumers, Consumer<ByteBuffer[]> later) {
+        String[] args = splitCount(argument); // Отделяем таймаут от имени очереди
+        if (args[1] == null) { // Если таймаут не указан
+            return Cluster.isLocal(args[0]) ? takeMessage(args[0]) // Отвечаем сразу, как и раньше
+                    : Cluster.await(args[0], Cluster.takeMessage(args[0])); // Или пересылаем извлечение владельцу очереди
+        }
+
+        long timeoutMillis; // Время ожидания сообщения
+        try {
+            timeoutMillis = Long.parseLong(args[1]); // Получаем таймаут
+        } catch (NumberFormatException e) { // Если число слишком большое
+            return frame("Неверный формат команды receive."); // Сообщаем об ошибке
+        }
+        if (!Cluster.isLocal(args[0])) { // Если очередь принадлежит другому узлу кластера
+            Cluster.takeMessage(args[0], timeoutMillis, consumers, later); // Ждет владелец, ответ придет через later
+            return null; // Ответ будет отправлен позже
+        }
+        MessageQueue queue = namedQueues.get(args[0]); // Получаем очередь по имени
+        if (queue == null) { // Если очередь не существует
+            return frame("Очередь '" + args[0] + "' не существует."); // Сообщаем об ошибке
+        }
+        ByteBuffer message = queue.poll(); // Пробуем извлечь сообщение сразу
+        if (message != null) { // Если сообщение есть
+            return frame("Сообщение из очереди: ", message, ""); // Отвечаем сразу
+        }
+        if (timeoutMillis <= 0) { // Если ждать не нужно
+            return frame("Очередь '" + args[0] + "' пуста."); // Сообщаем, что очередь пуста
+        }
+        if (queue instanceof PartitionedQueue) { // Разделенная очередь раздает сообщения только участникам групп
+            return frame("Очередь '" + args[0] + "' разделена, для ожидания сообщений используйте join."); // Сообщаем об ошибке
+        }
+
+        Waiter waiter = new Waiter(queue, // Ожидающий потребитель
+                m -> later.accept(frame("Сообщение из очереди: ", m, "")), // Ответ, когда сообщение придет
+                () -> later.accept(frame("Очередь '" + args[0] + "' пуста."))); // Ответ, если время истечет
+        consumers.removeIf(c -> !c.isActive()); // Забываем завершенных потребителей соединения
+        consumers.add(waiter); // Запоминаем ожидание, чтобы отменить его при отключении клиента
+        waiter.start(timeoutMillis); // Начинаем ожидание
+        return null; // Ответ будет отправлен позже
+    }
+
+    // Метод для обработки команды "subscribe <очередь> [окно]"; сообщения будут отправляться через push
+    public static String subscribe(String argument, List<Subscriber> consumers, Consumer<ByteBuffer[]> push) {
+        String[] args = splitCount(argument); // Отделяем размер окна от имени очереди
+        int prefetch; // Размер окна
+        try {
+            prefetch = args[1] == null ? DEFAULT_PREFETCH : Integer.parseInt(args[1]); // Получаем размер окна
+        } catch (NumberFormatException e) { // Если число слишком большое
+            return "Неверный формат команды subscribe."; // Сообщаем об ошибке
+        }
+        if (!Cluster.isLocal(args[0])) { // Если очередь принадлежит другому узлу кластера
+            return Cluster.redirect(args[0]); // Подписываться нужно на узле-владельце
+        }
+        if (findSubscription(args[0], consumers) != null) { // Если подписка уже есть
+            return "Подписка на очередь '" + args[0] + "' уже оформлена."; // Сообщаем об этом
+        }
+        MessageQueue queue = namedQueues.get(args[0]); // Получаем очередь по имени
+        if (queue == null) { // Если очередь не существует
+            return "Очередь '" + args[0] + "' не существует."; // Сообщаем об ошибке
+        }
+        if (queue instanceof PartitionedQueue) { // Разделенная очередь раздает сообщения только участникам групп
+            return "Очередь '" + args[0] + "' разделена, для подписки используйте join."; // Сообщаем об ошибке
+        }
+
+        Subscription subscription = new Subscription(queue, prefetch, // Новая подписка
+                m -> push.accept(frame("Сообщение из очереди '" + args[0] + "': ", m, ""))); // Каждое сообщение отправляется клиенту
+        consumers.removeIf(c -> !c.isActive()); // Забываем завершенных потребителей соединения
+        consumers.add(subscription); // Запоминаем подписку соединения
+        subscription.start(); // Начинаем получать сообщения
+        return "Подписка на очередь '" + args[0] + "' оформлена (окно " + Math.max(1, prefetch) + ")."; // Сообщаем об успехе
+    }
+
+    // Метод для обработки команды "ack <очередь> [группа] [n]": освобождает n мест в окне подписки или участника группы
+    public static String ack(String argument, List<Subscriber> consumers) {
+        String[] args = splitCount(argument); // Отделяем количество от имени очереди
+        int count; // Количество подтверждаемых сообщений
+        try {
+            count = args[1] == null ? 1 : Integer.parseInt(args[1]); // По умолчанию подтверждается одно сообщение
+        } catch (NumberFormatException e) { // Если число слишком большое
+            return "Неверный формат команды ack."; // Сообщаем об ошибке
+        }
+        Subscription subscription = findSubscription(args[0], consumers); // Ищем подписку соединения
+        if (subscription != null) { // Если подписка есть
+            subscription.ack(count); // Освобождаем место в окне
+            return null; // Подтверждение не требует ответа - окно сразу наполняется новыми сообщениями
+        }
+        int space = args[0].lastIndexOf(' '); // Имя группы может стоять после имени очереди
+        GroupMember member = findMember(args[0], null, consumers); // Участник любой группы очереди
+        if (member == null && space > 0) { // Если группа указана явно
+            member = findMember(args[0].substring(0, space), args[0].substring(space + 1), consumers); // Участник этой группы
+        }
+        if (member == null) { // Если подписки и участия в группе нет
+            return "Нет подписки на очередь '" + args[0] + "'."; // Сообщаем об ошибке
+        }
+        member.ack(count); // Освобождаем место в общем окне участника
+        return null; // Подтверждение не требует ответа
+    }
+
+    // Метод для обработки команды "join <очередь> <группа> [окно]": разделы очереди делятся между участниками группы
+    public static String joinGroup(String argument, List<Subscriber> consumers, Consumer<ByteBuffer[]> push) {
+        String[] args = splitCount(argument); // Отделяем размер окна
+        int space = args[0].lastIndexOf(' '); // Пробел между именем очереди и группы
+        if (space <= 0) { // Если группа не указана
+            return "Неверный формат команды join."; // Сообщаем об ошибке
+        }
+        String queueName = args[0].substring(0, space); // Имя очереди
+        String group = args[0].substring(space + 1); // Имя группы
+        int prefetch; // Размер окна
+        try {
+            prefetch = args[1] == null ? DEFAULT_PREFETCH : Integer.parseInt(args[1]); // Получаем размер окна
+        } catch (NumberFormatException e) { // Если число слишком большое
+            return "Неверный формат команды join."; // Сообщаем об ошибке
+        }
+        if (!Cluster.isLocal(queueName)) { // Если очередь принадлежит другому узлу кластера
+            return Cluster.redirect(queueName); // Вступать в группу нужно на узле-владельце
+        }
+        MessageQueue queue = namedQueues.get(queueName); // Получаем очередь по имени
+        if (queue == null) { // Если очередь не существует
+            return "Очередь '" + queueName + "' не существует."; // Сообщаем об ошибке
+        }
+        if (!(queue instanceof PartitionedQueue)) { // Группы есть только у разделенных очередей
+            return "Очередь '" + queueName + "' не разделена, используйте subscribe."; // Сообщаем об ошибке
+        }
+        if (findMember(queueName, group, consumers) != null) { // Если соединение уже в группе
+            return "Соединение уже состоит в группе '" + group + "' очереди '" + queueName + "'."; // Сообщаем об этом
+        }
+
+        consumers.removeIf(c -> !c.isActive()); // Забываем завершенных потребителей соединения
+        GroupMember member = ((PartitionedQueue) queue).join(group, prefetch, (partition, m) -> push.accept( // Вступаем в группу
+                frame("Сообщение из очереди '" + queueName + "' (раздел " + partition + "): ", m, ""))); // Каждое сообщение отправляется клиенту
+        consumers.add(member); // Запоминаем участие соединения
+        return "Соединение вступило в группу '" + group + "' очереди '" + queueName + "' (окно " + Math.max(1, prefetch) // Сообщаем об успехе
+                + ", разделы: " + member.getPartitions() + ")."; // И о назначенных разделах
+    }
+
+    // Метод для обработки команды "leave <очередь> <группа>"; разделы участника переходят к остальным
+    public static String leaveGroup(String argument, List<Subscriber> consumers) {
+        int space = argument.lastIndexOf(' '); // Пробел между именем очереди и группы
+        if (space <= 0) { // Если группа не указана
+            return "Неверный формат команды leave."; // Сообщаем об ошибке
+        }
+        String queueName = argument.substring(0, space); // Имя очереди
+        String group = argument.substring(space + 1); // Имя группы
+        GroupMember member = findMember(queueName, group, consumers); // Ищем участие соединения
+        if (member == null) { // Если соединение не состоит в группе
+            return "Соединение не состоит в группе '" + group + "' очереди '" + queueName + "'."; // Сообщаем об ошибке
+        }
+        member.cancel(); // Выходим из группы
+        consumers.remove(member); // Забываем участие
+        return "Соединение вышло из группы '" + group + "' очереди '" + queueName + "'."; // Сообщаем об успехе
+    }
+
+    // Метод для поиска действующего участия соединения в группе очереди (group == null - любая группа)
+    private static GroupMember findMember(String queueName, String group, List<Subscriber> consumers) {
+        for (Subscriber consumer : consumers) { // Перебираем потребителей соединения
+            if (consumer instanceof GroupMember && consumer.isActive() && consumer.getQueue().getName().equals(queueName) // Если это участник группы этой очереди
+                    && (group == null || ((GroupMember) consumer).getGroup().equals(group))) { // И нужной группы
+                return (GroupMember) consumer; // Возвращаем его
+            }
+        }
+        return null; // Участия нет
+    }
+
+    // Метод для обработки команды "unsubscribe <очередь>"
+    public static String unsubscribe(String argument, List<Subscriber> consumers) {
+        Subscription subscription = findSubscription(argument, consumers); // Ищем подписку соединения
+        if (subscription == null) { // Если подписки нет
+            return "Нет подписки на очередь '" + argument + "'."; // Сообщаем об ошибке
+        }
+        subscription.cancel(); // Отменяем подписку
+        consumers.remove(subscription); // Забываем ее
+        return "Подписка на очередь '" + argument + "' отменена."; // Сообщаем об успехе
+    }
+
+    // Метод для поиска действующей подписки соединения на очередь
+    private static Subscription findSubscription(String queueName, List<Subscriber> consumers) {
+        for (Subscriber consumer : consumers) { // Перебираем потребителей соединения
+            if (consumer instanceof Subscription && consumer.isActive() && consumer.getQueue().getName().equals(queueName)) { // Если это нужная подписка
+                return (Subscription) consumer; // Возвращаем ее
+            }
+        }
+        return null; // Подписки нет
+    }
+
+    // Метод для отмены всех ожиданий и подписок соединения (при отключении клиента)
+    public static void cancelAll(List<Subscriber> consumers) {
+        for (Subscriber consumer : consumers) { // Перебираем потребителей соединения
+            consumer.cancel(); // Отменяем каждого
+        }
+        consumers.clear(); // Очищаем список
+    }
+
+    // Метод для добавления прочитанного сообщения в очередь, возвращает текст ответа
+    public static ByteBuffer[] putMessage(String queueName, ByteBuffer payload) {
+        return putMessage(queueName, payload, null); // Сообщение без ключа
+    }
+
+    // Метод для добавления сообщения с ключом раздела (null - без ключа), возвращает текст ответа
+    public static ByteBuffer[] putMessage(String queueName, ByteBuffer payload, String key) {
+        MessageQueue retrievedQueue = namedQueues.get(queueName); // Получаем очередь (локально, а не в общем поле)
+        if (retrievedQueue != null && retrievedQueue.offer(payload, key)) { // Если очередь существует и не была удалена во время добавления
+            return frame("Сообщение '", payload, "' добавлено в очередь '" + queueName + "'."); // Сообщаем об успешном добавлении
+        }
+        if (retrievedQueue != null && !retrievedQueue.isClosed()) { // Очередь есть, но сообщение отклонено
+            return frame("Очередь '" + queueName + "' переполнена, сообщение отклонено."); // Сообщаем об ошибке
+        }
+        return frame("Очередь с именем '" + queueName + "' была удалена."); // Сообщаем об ошибке
+    }
+
+    // Метод для проверки, нужно ли приостановить производителя очереди; возвращает очередь, освобождения которой ждать, или null
+    public static MessageQueue blockingQueue(String queueName) {
+        if (!QueueLimits.ENABLED || queueName == null) { // Если ограничений нет
+            return null; // Приостанавливать не нужно
+        }
+        MessageQueue queue = namedQueues.get(queueName); // Получаем очередь по имени
+        return queue != null && queue.blocksProducers() ? queue : null; // Очередь, если она заполнена при политике block
+    }
+
+    // Метод для ожидания места в очереди потоком блокирующего соединения: пока поток ждет, сокет не читается
+    // и производитель упирается в окно TCP
+    public static void awaitRoom(String queueName) {
+        MessageQueue queue = blockingQueue(queueName); // Очередь, освобождения которой нужно ждать
+        if (queue == null) { // Если место есть
+            return; // Продолжаем чтение
+        }
+        queue.getMetrics().throttled.increment(); // Учитываем приостановку производителя
+        while (queue.blocksProducers() && !queue.isClosed()) { // Пока места нет
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(QueueLimits.BACKPRESSURE_POLL_MILLIS)); // Ждем и проверяем снова
+        }
+    }
+
+    // Метод для постановки очереди под наблюдение общего колеса таймеров (новых потоков не создает)
+    public static void startQueueTimer(MessageQueue queue) {
+        queueTimers.schedule(queue); // Колесо удалит очередь, когда она опустеет и простоит дольше QUEUE_TTL_SECONDS
+    }
+
+    // Вложенный класс для обработки клиентских соединений
+    public static class ClientHandler extends Thread {
+
+        public Socket socket; // Сокет для связи с клиентом
+        public InputStream inputStream; // Поток для чтения данных от клиента
+        public OutputStream outputStream; // Поток для отправки данных клиенту
+        public String currentQueue = null; // Текущая очередь клиента
+        private int expectedBytes = 0; // Ожидаемое количество байтов для сообщения
+        private String messageKey; // Ключ раздела текущего сообщения или null
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(); // Буфер для строки команды
+        private long messageStarted; // Время получения команды message
+        public String queueNameMes = null; // Имя очереди для текущего соединения
+        private final List<Subscriber> consumers = new ArrayList<>(); // Ожидающие receive и подписки этого соединения
+
+        // Конструктор, принимающий сокет клиента
+        public ClientHandler(Socket socket) {
+            this.socket = socket; // Инициализация сокета
+        }
+
+        @Override
+        public void run() { // Метод, выполняемый при запуске потока
+            metrics.connectionOpened(); // Учитываем соединение
+            try {
+                inputStream = new BufferedInputStream(socket.getInputStream()); // Получаем поток ввода для чтения данных от клиента
+                outputStream = new BufferedOutputStream(socket.getOutputStream()); // Получаем поток вывода для отправки данных клиенту
+
+                inputStream.mark(1); // Запоминаем начало потока, чтобы заглянуть в первый байт
+                if (inputStream.read() == (BinaryProtocol.MAGIC & 0xFF)) { // Если клиент начал с MAGIC двоичного протокола
+                    runBinary(); // Обслуживаем соединение двоичными кадрами
+                    return; // Соединение закрывается в блоке finally
+                }
+                inputStream.reset(); // Иначе возвращаем байт - это начало текстовой команды
+
+                String clientCommand; // Переменная для хранения команды клиента
+                while ((clientCommand = readLine()) != null) { // Читаем команды клиента (без BufferedReader, который забирал бы вперед и байты тела)
+                    String[] parts = clientCommand.split(" ", 2); // Разделяем команду на части
+                    String action = parts[0]; // Получаем действие из первой части команды
+
+                    // Обработка команд в зависимости от действия
+                    switch (action) {
+                        case "send": // Если команда "send"
+                            handleSend(parts); // Обрабатываем отправку сообщения
+                            break;
+                        case "receive": // Если команда "receive"
+                            handleReceive(parts); // Обрабатываем получение сообщения
+                            queueNameMes = null; // Сбрасываем имя очереди
+                            break;
+                        case "subscribe": // Если команда "subscribe"
+                        case "ack": // Если команда "ack"
+                        case "unsubscribe": // Если команда "unsubscribe"
+                        case "join": // Если команда "join"
+                        case "leave": // Если команда "leave"
+                            handleSubscription(action, parts); // Обрабатываем команду подписки
+                            break;
+                        case "stats": // Если команда "stats"
+                            sendResponse(metrics.stats(parts.length < 2 ? null : parts[1])); // Отправляем сводку или статистику очереди
+                            break;
+                        case "message": // Если команда "message"
+                            if(queueNameMes != null) { // Если имя очереди задано
+                                if (!Cluster.acceptsLocally(queueNameMes) || namedQueues.containsKey(queueNameMes)) { // Если очередь существует (чужую проверяет владелец)
+                                    handleMessage(parts); // Обрабатываем сообщение
+                                } else {
+                                    sendResponse("Очередь была удалена, введите имя другой очереди."); // Сообщаем об ошибке
+                                }
+                            } else { // Если имя очереди не задано
+                                sendResponse("Прежде чем вводить сообщение необходимо создать очередь или задать имя очереди."); // Сообщаем об ошибке
+                            }
+                            break;
+                        default: // Если команда не распознана
+                            sendResponse("Неизвестная команда."); // Сообщаем об ошибке
+                    }
+                }
+
+            } catch (IOException e) { // Обработка исключений ввода-вывода
+                System.out.println("Клиент отключился."); // Сообщаем о том, что клиент отключился
+            } finally { // Блок finally для выполнения кода после завершения блока try
+                cancelAll(consumers); // Отменяем ожидания и подписки клиента
+                metrics.connectionClosed(); // Соединение закрыто
+                try {
+                    socket.close(); // Закрываем сокет
+                } catch (IOException e) { // Обработка ошибок при закрытии соединения
+                    System.err.println("Ошибка при закрытии соединения: " + e.getMessage()); // Сообщаем об ошибке
+                }
+            }
+        }
+
+        // Метод для обслуживания соединения по двоичному протоколу (запросы обрабатываются по порядку)
+        private void runBinary() throws IOException {
+            DataInputStream in = new DataInputStream(inputStream); // Поток для чтения чисел в сетевом порядке байтов
+            if (in.readByte() != BinaryProtocol.VERSION) { // Если версия протокола не поддерживается
+                return; // Завершаем обслуживание
+            }
+            while (true) { // Цикл чтения кадров
+                int length = in.readInt(); // Читаем длину кадра
+                if (length < BinaryProtocol.HEADER_LENGTH || length > BinaryProtocol.MAX_FRAME_LENGTH) { // Если длина недопустима
+                    return; // Поток кадров рассинхронизирован - завершаем обслуживание
+                }
+                byte[] request = new byte[length]; // Буфер для кадра
+                in.readFully(request); // Читаем кадр целиком
+                ByteBuffer frame = ByteBuffer.wrap(request); // Кадр запроса
+                CompletableFuture<ByteBuffer[]> forwarded = BinaryProtocol.forward(frame); // Запрос к очереди другого узла пересылается владельцу
+                ByteBuffer[] response = forwarded != null ? BinaryProtocol.await(forwarded, frame) // Ответ владельца (не дольше времени ожидания пересылки)
+                        : BinaryProtocol.handle(frame, consumers, this::sendResponse); // Обрабатываем запрос (выборка с ожиданием ответит позже)
+                synchronized (this) { // Ответы выборок с ожиданием пишутся из других потоков
+                    if (response != null) { // Если ответ готов сейчас
+                        writeFrame(outputStream, response); // Пишем ответ в буфер вывода
+                    }
+                    if (inputStream.available() == 0) { // Если следующих запросов в пути нет
+                        outputStream.flush(); // Отправляем накопленные ответы одной записью
+                    }
+                }
+                String target = QueueLimits.ENABLED ? BinaryProtocol.publishTarget(frame) : null; // Очередь, в которую добавлялись сообщения
+                if (blockingQueue(target) != null) { // Если она заполнена
+                    synchronized (this) { // Поток вывода общий с ответами, которые приходят позже
+                        outputStream.flush(); // Отправляем ответы до приостановки
+                    }
+                    awaitRoom(target); // Не читаем следующие кадры, пока не освободится место
+                }
+            }
+        }
+
+        // Метод для отправки ответа клиенту
+        private void sendResponse(String response) {
+            sendResponse(frame(response)); // Упаковываем длину и сообщение в один кадр
+        }
+
+        // Метод для отправки готового кадра клиенту
+        private synchronized void sendResponse(ByteBuffer[] frame) { // Синхронизирован: подписки отправляют сообщения из других потоков
+            try {
+                writeFrame(outputStream, frame); // Отправляем кадр клиенту (тело сообщения пишется без копирования)
+                outputStream.flush(); // Очищаем буфер вывода
+            } catch (IOException e) { // Обработка ошибок при отправке
+                System.err.println("Ошибка отправки ответа клиенту: " + e.getMessage()); // Сообщаем об ошибке
+            }
+        }
+
+        // Метод для обработки команды send
+        private void handleSend(String[] parts) {
+            if (parts.length < 2) { // Если аргументов меньше двух
+                sendResponse("Неверный формат команды send."); // Сообщаем об ошибке
+                return; // Выходим из метода
+            }
+
+            long start = System.nanoTime(); // Начало обработки
+            String[] args = splitCount(parts[1]); // Отделяем необязательное число разделов
+            queueNameMes = args[0]; // Получаем имя очереди
+            currentQueue = queueNameMes; // Устанавливаем текущую очередь
+            if (!Cluster.acceptsLocally(queueNameMes)) { // Если очередь принадлежит другому узлу кластера
+                sendResponse(Cluster.await(queueNameMes, Cluster.openQueue(queueNameMes, args[1]))); // Создаем ее на узле-владельце
+                return; // Выходим из метода
+            }
+            String response = openQueue(queueNameMes, args[1]); // Создаем очередь при необходимости
+            metrics.send.recordSince(start); // Учитываем время обработки (без записи в сокет)
+            sendResponse(response); // Сообщаем результат
+        }
+
+        // Метод для обработки команды receive
+        private void handleReceive(String[] parts) {
+            if (parts.length < 2) { // Если аргументов меньше двух
+                sendResponse("Неверный формат команды receive."); // Сообщаем об ошибке
+                return; // Выходим из метода
+            }
+
+            long start = System.nanoTime(); // Начало обработки
+            ByteBuffer[] response = receive(parts[1], consumers, this::sendResponse); // Извлекаем сообщение или начинаем ожидание
+            metrics.receive.recordSince(start); // Учитываем время обработки (без ожидания и записи в сокет)
+            if (response != null) { // Если ответ готов сразу
+                sendResponse(response); // Отправляем его клиенту
+            }
+            currentQueue = null; // Сбрасываем текущую очередь
+        }
+
+        // Метод для обработки команд subscribe, ack, unsubscribe, join и leave
+        private void handleSubscription(String action, String[] parts) {
+            if (parts.length < 2) { // Если аргументов меньше двух
+                sendResponse("Неверный формат команды " + action + "."); // Сообщаем об ошибке
+                return; // Выходим из метода
+            }
+
+            String response; // Ответ клиенту
+            if ("subscribe".equals(action)) { // Оформление подписки
+                response = subscribe(parts[1], consumers, this::sendResponse); // Сообщения отправляются прямо в сокет клиента
+            } else if ("ack".equals(action)) { // Подтверждение сообщений
+                response = ack(parts[1], consumers); // Освобождаем место в окне
+            } else if ("join".equals(action)) { // Вступление в группу
+                response = joinGroup(parts[1], consumers, this::sendResponse); // Сообщения разделов отправляются прямо в сокет клиента
+            } else if ("leave".equals(action)) { // Выход из группы
+                response = leaveGroup(parts[1], consumers); // Разделы переходят к остальным участникам
+            } else { // Отмена подписки
+                response = unsubscribe(parts[1], consumers); // Отменяем подписку
+            }
+            if (response != null) { // Если есть что ответить
+                sendResponse(response); // Отправляем ответ
+            }
+        }
+
+        // Метод для обработки команды message
+        public void handleMessage(String[] parts) throws IOException {
+            messageStarted = System.nanoTime(); // Начало приема сообщения
+            if (parts.length < 2) { // Если аргументов меньше двух
+                sendResponse("Неправильный формат команды message."); // Сообщаем об ошибке
+                return; // Выходим из метода
+            }
+
+            String[] args = parts[1].split(" ", 2); // Длина и необязательный ключ раздела
+            messageKey = args.length > 1 ? args[1] : null; // Запоминаем ключ
+            try {
+                expectedBytes = Integer.parseInt(args[0]); // Получаем ожидаемое количество байтов
+            } catch (NumberFormatException e) { // Если не удалось преобразовать строку в число
+                sendResponse("Ошибка: неверный формат длины сообщения."); // Сообщаем об ошибке
+                return; // Выходим из метода
+            }
+            if (expectedBytes < 0) { // Отрицательная длина недопустима
+                sendResponse("Ошибка: неверный формат длины сообщения."); // Сообщаем об ошибке
+                return; // Выходим из метода
+            }
+            if (expectedBytes > PayloadSink.MAX_MESSAGE_BYTES) { // Если сообщение больше допустимого
+                inputStream.skipNBytes(expectedBytes); // Пропускаем тело, чтобы не сбиться с разбора команд
+                sendResponse("Ошибка: размер сообщения превышает допустимый (" + PayloadSink.MAX_MESSAGE_BYTES + " байт)."); // Сообщаем об ошибке
+                return; // Выходим из метода
+            }
+            readBytes(); // Начинаем чтение байтов
+        }
+
+        // Метод для чтения ожидаемого количества байтов (крупными порциями, а не по одному байту)
+        private void readBytes() throws IOException {
+            ByteBuffer payload; // Тело сообщения
+            if (expectedBytes <= PayloadSink.SPILL_THRESHOLD_BYTES) { // Небольшое сообщение читаем в массив целиком
+                byte[] buffer = inputStream.readNBytes(expectedBytes); // Читаем из буфера потока блоками
+                if (buffer.length < expectedBytes) { // Если клиент отключился раньше, чем прислал все тело
+                    throw new EOFException("Ожидалось " + expectedBytes + " байтов, получено " + buffer.length); // Сообщение не добавляется
+                }
+                payload = ByteBuffer.wrap(buffer); // Тело без копирования
+            } else { // Большое сообщение передаем во временный файл порциями
+                PayloadSink sink = PayloadSink.open(expectedBytes); // Приемник тела
+                byte[] chunk = new byte[64 * 1024]; // Буфер для одной порции
+                int remaining = expectedBytes; // Сколько байтов тела осталось прочитать
+                while (remaining > 0) { // Пока тело получено не полностью
+                    int read = inputStream.read(chunk, 0, Math.min(chunk.length, remaining)); // Читаем порцию, не заходя на следующую команду
+                    if (read == -1) { // Если клиент отключился
+                        sink.abort(); // Удаляем временный файл
+                        throw new EOFException("Соединение закрыто во время передачи сообщения"); // Сообщение не добавляется
+                    }
+                    sink.write(ByteBuffer.wrap(chunk, 0, read)); // Передаем порцию приемнику
+                    remaining -= read; // Учитываем прочитанное
+                }
+                payload = sink.finish(); // Тело, отображенное из файла
+            }
+
+            ByteBuffer[] response = Cluster.acceptsLocally(queueNameMes) ? putMessage(queueNameMes, payload, messageKey) // Добавляем сообщение в очередь как есть, без перекодирования
+                    : Cluster.await(queueNameMes, Cluster.putMessage(queueNameMes, payload, messageKey)); // Или пересылаем узлу-владельцу
+            metrics.message.recordSince(messageStarted); // Учитываем время приема тела и добавления в очередь
+            sendResponse(response); // Сообщаем результат
+            awaitRoom(queueNameMes); // Если очередь заполнена, не читаем следующие команды, пока не освободится место
+        }
+
+        // Метод для чтения одной строки команды прямо из буферизованного потока (тот же поток читает и тела сообщений)
+        private String readLine() throws IOException {
+            lineBuffer.reset(); // Очищаем буфер строки
+            int b; // Переменная для очередного байта
+            while ((b = inputStream.read()) != '\n') { // Читаем до конца строки (байты берутся из буфера потока)
+                if (b == -1) { // Если поток закончился
+                    return lineBuffer.size() == 0 ? null : lineBuffer.toString(StandardCharsets.UTF_8); // Возвращаем остаток или null
+                }
+                if (lineBuffer.size() >= MAX_COMMAND_LENGTH) { // Если строка слишком длинная
+                    throw new IOException("Слишком длинная команда"); // Закрываем соединение
+                }
+                lineBuffer.write(b); // Добавляем байт в строку
+            }
+            int length = lineBuffer.size(); // Длина строки
+            byte[] bytes = lineBuffer.toByteArray(); // Байты строки
+            if (length > 0 && bytes[length - 1] == '\r') { // Отбрасываем \r
+                length--; // Укорачиваем строку
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8); // Возвращаем строку
+        }
+    }
+}
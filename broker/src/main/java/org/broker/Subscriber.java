@@ -0,0 +1,39 @@
+package org.broker;
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.concurrent.atomic.AtomicBoolean; // Импортируем атомарный флаг
+
+// Потребитель, которому очередь сама передает сообщения (ожидающий receive или подписка)
+public abstract class Subscriber {
+
+    final MessageQueue queue; // Очередь, на которую подписан потребитель
+    final AtomicBoolean queued = new AtomicBoolean(); // Стоит ли потребитель в списке готовых у очереди
+
+    // Конструктор, принимающий очередь
+    protected Subscriber(MessageQueue queue) {
+        this.queue = queue; // Сохраняем очередь
+    }
+
+    // Метод для получения очереди потребителя
+    public MessageQueue getQueue() {
+        return queue; // Возвращаем очередь
+    }
+
+    // Метод для резервирования места под одно сообщение; false, если потребитель не может его принять
+    abstract boolean reserve();
+
+    // Метод для возврата зарезервированного места, если сообщения не оказалось
+    abstract void release();
+
+    // Метод для передачи сообщения, под которое ранее было зарезервировано место
+    abstract void deliver(ByteBuffer message);
+
+    // Метод для проверки, может ли потребитель принять еще сообщение
+    abstract boolean hasCredit();
+
+    // Метод для проверки, ждет ли потребитель сообщений
+    public abstract boolean isActive();
+
+    // Метод для отмены потребителя (например, при закрытии соединения)
+    public abstract void cancel();
+}
@@ -0,0 +1,88 @@
+package org.broker;
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.concurrent.atomic.AtomicBoolean; // Импортируем атомарный флаг
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем атомарный счетчик
+import java.util.function.Consumer; // Импортируем функциональный интерфейс потребителя
+
+// Подписка на очередь: сервер сам отправляет сообщения, пока не исчерпано окно неподтвержденных сообщений
+public class Subscription extends Subscriber {
+
+    private final int prefetch; // Размер окна (наибольшее число неподтвержденных сообщений)
+    private final AtomicInteger credit; // Сколько еще сообщений можно отправить без подтверждения
+    private final AtomicBoolean cancelled = new AtomicBoolean(); // Отменена ли подписка
+    private final Consumer<ByteBuffer> onMessage; // Как отправить сообщение подписчику
+
+    // Конструктор, принимающий очередь, размер окна и способ отправки
+    public Subscription(MessageQueue queue, int prefetch, Consumer<ByteBuffer> onMessage) {
+        this(queue, prefetch, new AtomicInteger(Math.max(1, prefetch)), onMessage); // Изначально окно полностью свободно
+    }
+
+    // Конструктор подписки с общим окном (участник группы получает сообщения нескольких разделов в одно окно)
+    Subscription(MessageQueue queue, int prefetch, AtomicInteger credit, Consumer<ByteBuffer> onMessage) {
+        super(queue); // Сохраняем очередь
+        this.prefetch = Math.max(1, prefetch); // Окно не может быть меньше одного сообщения
+        this.credit = credit; // Сохраняем окно
+        this.onMessage = onMessage; // Сохраняем способ отправки
+    }
+
+    // Метод для начала получения сообщений
+    public void start() {
+        queue.attach(); // Очередь не удаляется, пока на нее есть подписка
+        queue.ready(this); // Становимся в очередь готовых потребителей
+    }
+
+    // Метод для подтверждения n сообщений, освобождающего место в окне
+    public void ack(int n) {
+        int current; // Текущее значение окна
+        do {
+            current = credit.get(); // Читаем окно
+        } while (!credit.compareAndSet(current, Math.min(prefetch, current + Math.max(0, n)))); // Окно не растет больше prefetch
+        queue.ready(this); // Снова готовы получать сообщения
+    }
+
+    // Метод для возобновления раздачи после того, как общее окно пополнили снаружи
+    void resume() {
+        queue.ready(this); // Снова готовы получать сообщения
+    }
+
+    @Override
+    boolean reserve() {
+        while (true) { // Повторяем при одновременном изменении окна
+            int current = credit.get(); // Читаем окно
+            if (current <= 0 || cancelled.get()) { // Если окно исчерпано или подписка отменена
+                return false; // Сообщение принять нельзя
+            }
+            if (credit.compareAndSet(current, current - 1)) { // Занимаем место в окне
+                return true; // Место зарезервировано
+            }
+        }
+    }
+
+    @Override
+    void release() {
+        credit.incrementAndGet(); // Возвращаем место в окно
+    }
+
+    @Override
+    void deliver(ByteBuffer message) {
+        onMessage.accept(message); // Отправляем сообщение подписчику
+    }
+
+    @Override
+    boolean hasCredit() {
+        return !cancelled.get() && credit.get() > 0; // Есть место в окне и подписка действует
+    }
+
+    @Override
+    public boolean isActive() {
+        return !cancelled.get(); // Подписка действует, пока не отменена
+    }
+
+    @Override
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) { // Отменяем один раз
+            queue.detach(); // Больше не держим очередь
+        }
+    }
+}
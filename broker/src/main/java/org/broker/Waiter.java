@@ -0,0 +1,82 @@
+package org.broker;
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.util.concurrent.ScheduledFuture; // Импортируем отложенную задачу
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import java.util.concurrent.atomic.AtomicInteger; // Импортируем атомарный счетчик
+import java.util.function.Consumer; // Импортируем функциональный интерфейс потребителя
+
+// Одноразовый потребитель для receive с таймаутом: ждет одно сообщение или истечения времени
+public class Waiter extends Subscriber {
+
+    private static final int WAITING = 0; // Ждет сообщение
+    private static final int RESERVED = 1; // Очередь зарезервировала для него сообщение
+    private static final int DONE = 2; // Сообщение передано
+    private static final int CANCELLED = 3; // Время истекло или ожидание отменено
+
+    private final AtomicInteger state = new AtomicInteger(WAITING); // Текущее состояние
+    private final Consumer<ByteBuffer> onMessage; // Что сделать с полученным сообщением
+    private final Runnable onTimeout; // Что сделать, если сообщение так и не пришло
+    private volatile ScheduledFuture<?> timeout; // Задача истечения времени
+
+    // Конструктор, принимающий очередь и обработчики
+    public Waiter(MessageQueue queue, Consumer<ByteBuffer> onMessage, Runnable onTimeout) {
+        super(queue); // Сохраняем очередь
+        this.onMessage = onMessage; // Сохраняем обработчик сообщения
+        this.onTimeout = onTimeout; // Сохраняем обработчик таймаута
+    }
+
+    // Метод для начала ожидания
+    public void start(long timeoutMillis) {
+        queue.attach(); // Очередь не удаляется, пока у нее есть ожидающие потребители
+        timeout = Server.scheduler.schedule(this::expire, timeoutMillis, TimeUnit.MILLISECONDS); // Планируем истечение времени
+        queue.ready(this); // Становимся в очередь ожидающих
+    }
+
+    @Override
+    boolean reserve() {
+        return state.compareAndSet(WAITING, RESERVED); // Резервируем, только если еще ждем
+    }
+
+    @Override
+    void release() {
+        state.compareAndSet(RESERVED, WAITING); // Снова ждем
+    }
+
+    @Override
+    void deliver(ByteBuffer message) {
+        state.set(DONE); // Ожидание завершено
+        ScheduledFuture<?> task = timeout; // Задача таймаута
+        if (task != null) { // Если она уже запланирована
+            task.cancel(false); // Отменяем ее
+        }
+        queue.detach(); // Больше не держим очередь
+        onMessage.accept(message); // Передаем сообщение
+    }
+
+    @Override
+    boolean hasCredit() {
+        return false; // Одноразовому потребителю нужно только одно сообщение
+    }
+
+    @Override
+    public boolean isActive() {
+        return state.get() < DONE; // Активен, пока ждет или получает сообщение
+    }
+
+    // Метод, вызываемый по истечении времени ожидания
+    private void expire() {
+        if (state.compareAndSet(WAITING, CANCELLED)) { // Если сообщение так и не было зарезервировано
+            queue.detach(); // Больше не держим очередь
+            onTimeout.run(); // Сообщаем о таймауте
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (state.compareAndSet(WAITING, CANCELLED)) { // Если сообщение еще не зарезервировано
+            timeout.cancel(false); // Отменяем задачу таймаута
+            queue.detach(); // Больше не держим очередь
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+
+import java.io.DataInputStream; // Импортируем поток для чтения чисел в сетевом порядке байтов
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.io.OutputStream; // Импортируем поток вывода
+import java.net.ServerSocket; // Импортируем серверный сокет
+import java.net.Socket; // Импортируем сокет
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.ArrayList; // Импортируем список
+import java.util.Arrays; // Импортируем вспомогательные методы для массивов
+import java.util.List; // Импортируем интерфейс списка
+import org.junit.jupiter.api.BeforeAll; // Импортируем аннотацию подготовки
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+
+// Проверки двоичного протокола: коды статусов и добавление с выборкой через BinaryProtocol.handle,
+// а также разбор кадров неблокирующим сервером - приветствие, пакетная отправка и кадры, пришедшие частями
+class BinaryProtocolTest {
+
+    private static int port; // Порт сервера теста
+
+    // Запуск неблокирующего сервера в этом же процессе
+    @BeforeAll
+    static void startServer() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) { // Свободный порт
+            port = probe.getLocalPort(); // Запоминаем его
+        }
+        Thread server = new Thread(() -> { // Поток приема соединений
+            try {
+                new NioServer(port, 1).run(); // Один цикл событий
+            } catch (IOException e) { // Обработка ошибок запуска
+                System.err.println("Ошибка запуска сервера: " + e.getMessage()); // Сообщаем об ошибке
+            }
+        }, "test-server");
+        server.setDaemon(true); // Поток не должен мешать завершению тестов
+        server.start(); // Запускаем сервер
+        awaitListening(port); // Ждем запуска
+    }
+
+    // Каждый ответ повторяет код операции и идентификатор корреляции запроса и несет свой статус
+    @Test
+    void handleReportsStatusCodes() {
+        String queue = "codec-status"; // Очередь теста
+        assertEquals(BinaryProtocol.STATUS_NOT_FOUND, status(handle(BinaryProtocol.OP_PUBLISH, 1, queue, bytes("m")), BinaryProtocol.OP_PUBLISH, 1)); // Очереди еще нет
+        assertEquals(BinaryProtocol.STATUS_CREATED, status(handle(BinaryProtocol.OP_OPEN, 2, queue, new byte[0]), BinaryProtocol.OP_OPEN, 2)); // Очередь создана
+        assertEquals(BinaryProtocol.STATUS_EXISTS, status(handle(BinaryProtocol.OP_OPEN, 3, queue, new byte[0]), BinaryProtocol.OP_OPEN, 3)); // Повторное создание
+        assertEquals(BinaryProtocol.STATUS_EMPTY, status(handle(BinaryProtocol.OP_FETCH, 4, queue, ints(10)), BinaryProtocol.OP_FETCH, 4)); // Очередь пуста
+        assertEquals(BinaryProtocol.STATUS_UNKNOWN_OPCODE, status(handle((byte) 42, 5, queue, new byte[0]), (byte) 42, 5)); // Неизвестная операция
+        assertEquals(BinaryProtocol.STATUS_BAD_REQUEST, status(handle(BinaryProtocol.OP_PUBLISH_BATCH, 6, queue, ints(-1)), BinaryProtocol.OP_PUBLISH_BATCH, 6)); // Отрицательное количество
+        assertEquals(BinaryProtocol.STATUS_BAD_REQUEST, status(handle(BinaryProtocol.OP_PUBLISH_BATCH, 7, queue, ints(1, 100)), BinaryProtocol.OP_PUBLISH_BATCH, 7)); // Сообщение за границей кадра
+        assertEquals(BinaryProtocol.STATUS_BAD_REQUEST, status(handle(BinaryProtocol.OP_FETCH, 8, queue, new byte[2]), BinaryProtocol.OP_FETCH, 8)); // Кадр короче своих полей
+    }
+
+    // Сообщения, добавленные по одному и пакетом, извлекаются одной выборкой по порядку
+    @Test
+    void publishAndFetchRoundTrip() {
+        String queue = "codec-round-trip"; // Очередь теста
+        handle(BinaryProtocol.OP_OPEN, 1, queue, new byte[0]); // Создаем очередь
+        ByteBuffer published = handle(BinaryProtocol.OP_PUBLISH, 2, queue, bytes("a")); // Одно сообщение
+        assertEquals(BinaryProtocol.STATUS_OK, status(published, BinaryProtocol.OP_PUBLISH, 2)); // Добавлено
+        assertEquals(1, published.getInt()); // Одно сообщение
+        ByteBuffer batch = ByteBuffer.allocate(4 + 5 + 5).putInt(2).putInt(1).put(bytes("b")).putInt(1).put(bytes("c")); // Пакет из двух сообщений
+        ByteBuffer accepted = handle(BinaryProtocol.OP_PUBLISH_BATCH, 3, queue, batch.array()); // Добавляем пакет
+        assertEquals(BinaryProtocol.STATUS_OK, status(accepted, BinaryProtocol.OP_PUBLISH_BATCH, 3)); // Добавлен
+        assertEquals(2, accepted.getInt()); // Оба сообщения
+
+        ByteBuffer fetched = handle(BinaryProtocol.OP_FETCH, 4, queue, ints(10)); // Выбираем до десяти
+        assertEquals(BinaryProtocol.STATUS_OK, status(fetched, BinaryProtocol.OP_FETCH, 4)); // Сообщения есть
+        assertEquals(List.of("a", "b", "c"), messages(fetched)); // Все три по порядку
+        assertEquals(BinaryProtocol.STATUS_EMPTY, status(handle(BinaryProtocol.OP_FETCH, 5, queue, ints(10)), BinaryProtocol.OP_FETCH, 5)); // Больше ничего нет
+    }
+
+    // Выборка не собирает кадр длиннее MAX_FRAME_LENGTH: сообщение, которое не помещается, остается в очереди
+    @Test
+    void fetchStopsAtFrameLimit() {
+        String queue = "codec-frame-limit"; // Очередь теста
+        handle(BinaryProtocol.OP_OPEN, 1, queue, new byte[0]); // Создаем очередь
+        int size = BinaryProtocol.MAX_FRAME_LENGTH / 2 + 1; // Два таких сообщения в один кадр не помещаются
+        handle(BinaryProtocol.OP_PUBLISH, 2, queue, new byte[size]); // Первое сообщение
+        handle(BinaryProtocol.OP_PUBLISH, 3, queue, new byte[size]); // Второе сообщение
+
+        ByteBuffer first = handle(BinaryProtocol.OP_FETCH, 4, queue, ints(10)); // Просим оба
+        assertEquals(BinaryProtocol.STATUS_OK, status(first, BinaryProtocol.OP_FETCH, 4)); // Сообщение есть
+        assertEquals(1, first.getInt(first.position())); // Но только одно
+        ByteBuffer second = handle(BinaryProtocol.OP_FETCH, 5, queue, ints(10)); // Второе приходит следующей выборкой
+        assertEquals(BinaryProtocol.STATUS_OK, status(second, BinaryProtocol.OP_FETCH, 5)); // Сообщение есть
+        assertEquals(1, second.getInt(second.position())); // Одно
+    }
+
+    // Запросы, отправленные одной записью, получают ответы с теми же идентификаторами корреляции по порядку
+    @Test
+    void pipelinedRequestsKeepCorrelationIds() throws IOException {
+        String queue = "codec-pipelined"; // Очередь теста
+        try (Socket socket = connect()) { // Двоичное соединение
+            OutputStream out = socket.getOutputStream(); // Поток запросов
+            out.write(concat(frame(BinaryProtocol.OP_OPEN, 7, queue, new byte[0]), // Три запроса одной записью
+                    frame(BinaryProtocol.OP_PUBLISH, 8, queue, bytes("x")),
+                    frame(BinaryProtocol.OP_FETCH, 9, queue, ints(1))));
+            out.flush(); // Отправляем их
+            DataInputStream in = new DataInputStream(socket.getInputStream()); // Поток ответов
+            assertEquals(BinaryProtocol.STATUS_CREATED, status(read(in), BinaryProtocol.OP_OPEN, 7)); // Ответ на первый
+            assertEquals(BinaryProtocol.STATUS_OK, status(read(in), BinaryProtocol.OP_PUBLISH, 8)); // На второй
+            ByteBuffer fetched = read(in); // На третий
+            assertEquals(BinaryProtocol.STATUS_OK, status(fetched, BinaryProtocol.OP_FETCH, 9)); // Сообщение есть
+            assertEquals(List.of("x"), messages(fetched)); // То самое
+        }
+    }
+
+    // Приветствие, длина кадра и сам кадр, разрезанные между чтениями сервера, разбираются как целые
+    @Test
+    void framesSplitAcrossReads() throws Exception {
+        String queue = "codec-split"; // Очередь теста
+        byte[] stream = concat(new byte[] {BinaryProtocol.MAGIC, BinaryProtocol.VERSION}, // Весь поток клиента
+                frame(BinaryProtocol.OP_OPEN, 1, queue, new byte[0]),
+                frame(BinaryProtocol.OP_PUBLISH, 2, queue, bytes("split")),
+                frame(BinaryProtocol.OP_FETCH, 3, queue, ints(1)));
+        try (Socket socket = new Socket("localhost", port)) { // Соединение без приветствия
+            socket.setTcpNoDelay(true); // Каждая часть уходит отдельным сегментом
+            OutputStream out = socket.getOutputStream(); // Поток запросов
+            int[] cuts = {1, 3, 5, 12, 20, 27, 33, stream.length}; // Границы частей: внутри приветствия, длины, заголовка и тела
+            int from = 0; // Начало очередной части
+            for (int cut : cuts) { // Для каждой части
+                out.write(Arrays.copyOfRange(stream, from, cut)); // Отправляем ее
+                out.flush(); // Сразу
+                Thread.sleep(20); // Сервер успевает прочитать часть отдельно
+                from = cut; // Следующая часть
+            }
+            DataInputStream in = new DataInputStream(socket.getInputStream()); // Поток ответов
+            assertEquals(BinaryProtocol.STATUS_CREATED, status(read(in), BinaryProtocol.OP_OPEN, 1)); // Очередь создана
+            assertEquals(BinaryProtocol.STATUS_OK, status(read(in), BinaryProtocol.OP_PUBLISH, 2)); // Сообщение добавлено
+            ByteBuffer fetched = read(in); // Выборка
+            assertEquals(BinaryProtocol.STATUS_OK, status(fetched, BinaryProtocol.OP_FETCH, 3)); // Сообщение есть
+            assertEquals(List.of("split"), messages(fetched)); // То самое
+        }
+    }
+
+    // Неподдерживаемая версия протокола закрывает соединение
+    @Test
+    void unsupportedVersionClosesConnection() throws IOException {
+        try (Socket socket = new Socket("localhost", port)) { // Соединение без приветствия
+            socket.getOutputStream().write(new byte[] {BinaryProtocol.MAGIC, BinaryProtocol.VERSION + 1}); // Чужая версия
+            assertEquals(-1, socket.getInputStream().read()); // Сервер закрыл соединение
+        }
+    }
+
+    // Длина кадра короче заголовка или длиннее MAX_FRAME_LENGTH закрывает соединение
+    @Test
+    void invalidFrameLengthClosesConnection() throws IOException {
+        for (int length : new int[] {BinaryProtocol.HEADER_LENGTH - 1, BinaryProtocol.MAX_FRAME_LENGTH + 1}) { // Обе границы
+            try (Socket socket = connect()) { // Двоичное соединение
+                socket.getOutputStream().write(ByteBuffer.allocate(4).putInt(length).array()); // Только длина
+                assertEquals(-1, socket.getInputStream().read()); // Сервер закрыл соединение
+            }
+        }
+    }
+
+    // Метод для обработки запроса в этом же процессе; возвращает ответ одним буфером после поля длины
+    private static ByteBuffer handle(byte opcode, int correlationId, String queueName, byte[] body) {
+        ByteBuffer request = ByteBuffer.wrap(frame(opcode, correlationId, queueName, body)); // Кадр запроса
+        request.position(4); // handle получает кадр без поля длины
+        ByteBuffer[] parts = BinaryProtocol.handle(request.slice()); // Ответ частями
+        int total = 0; // Общая длина ответа
+        for (ByteBuffer part : parts) { // Для каждой части
+            total += part.remaining(); // Учитываем ее длину
+        }
+        ByteBuffer response = ByteBuffer.allocate(total); // Ответ одним буфером
+        for (ByteBuffer part : parts) { // Для каждой части
+            response.put(part.duplicate()); // Копируем ее
+        }
+        response.flip(); // Готовим буфер к чтению
+        assertEquals(total - 4, response.getInt()); // Поле длины совпадает с длиной ответа
+        return response; // Возвращаем ответ после поля длины
+    }
+
+    // Метод для чтения одного кадра ответа из сокета; возвращает его после поля длины
+    private static ByteBuffer read(DataInputStream in) throws IOException {
+        byte[] response = new byte[in.readInt()]; // Буфер под кадр
+        in.readFully(response); // Читаем кадр целиком
+        return ByteBuffer.wrap(response); // Кадр как буфер
+    }
+
+    // Метод для проверки заголовка ответа; возвращает код статуса, позиция остается на теле
+    private static byte status(ByteBuffer response, byte opcode, int correlationId) {
+        assertEquals(opcode, response.get()); // Код операции запроса
+        assertEquals(correlationId, response.getInt()); // Идентификатор корреляции запроса
+        return response.get(); // Код статуса
+    }
+
+    // Метод для разбора тела ответа на выборку
+    private static List<String> messages(ByteBuffer body) {
+        List<String> messages = new ArrayList<>(); // Сообщения ответа
+        int count = body.getInt(); // Количество сообщений
+        for (int i = 0; i < count; i++) { // Для каждого сообщения
+            byte[] message = new byte[body.getInt()]; // Буфер под сообщение
+            body.get(message); // Читаем его
+            messages.add(new String(message, StandardCharsets.UTF_8)); // Запоминаем текст
+        }
+        return messages; // Возвращаем сообщения
+    }
+
+    // Метод для создания кадра запроса вместе с полем длины
+    private static byte[] frame(byte opcode, int correlationId, String queueName, byte[] body) {
+        byte[] name = bytes(queueName); // Имя очереди в UTF-8
+        ByteBuffer frame = ByteBuffer.allocate(4 + BinaryProtocol.HEADER_LENGTH + name.length + body.length); // Кадр целиком
+        frame.putInt(BinaryProtocol.HEADER_LENGTH + name.length + body.length); // Длина кадра без поля длины
+        frame.put(opcode).putInt(correlationId).putShort((short) name.length).put(name).put(body); // Заголовок, имя и тело
+        return frame.array(); // Возвращаем байты кадра
+    }
+
+    // Метод для подключения к серверу с приветствием двоичного протокола
+    private static Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", port); // Подключаемся
+        socket.getOutputStream().write(new byte[] {BinaryProtocol.MAGIC, BinaryProtocol.VERSION}); // Объявляем двоичный протокол
+        return socket; // Возвращаем сокет
+    }
+
+    // Метод для записи чисел в сетевом порядке байтов
+    private static byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4); // Буфер под числа
+        for (int value : values) { // Для каждого числа
+            buffer.putInt(value); // Записываем его
+        }
+        return buffer.array(); // Возвращаем байты
+    }
+
+    // Метод для склейки нескольких массивов байтов
+    private static byte[] concat(byte[]... parts) {
+        ByteBuffer buffer = ByteBuffer.allocate(Arrays.stream(parts).mapToInt(p -> p.length).sum()); // Буфер под все части
+        for (byte[] part : parts) { // Для каждой части
+            buffer.put(part); // Дописываем ее
+        }
+        return buffer.array(); // Возвращаем байты
+    }
+
+    // Метод для получения байтов строки в UTF-8
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8); // Байты строки
+    }
+
+    // Метод для ожидания запуска сервера
+    private static void awaitListening(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000; // Сервер запускается быстро
+        while (true) { // Пока сервер не запустился
+            try {
+                new Socket("localhost", port).close(); // Пробуем подключиться
+                return; // Сервер принимает соединения
+            } catch (IOException e) { // Сервер еще не запущен
+                if (System.currentTimeMillis() > deadline) { // Если время вышло
+                    throw e; // Сообщаем об ошибке
+                }
+                Thread.sleep(50); // Ждем перед следующей попыткой
+            }
+        }
+    }
+}
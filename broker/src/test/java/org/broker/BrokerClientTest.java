@@ -0,0 +1,173 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+import static org.junit.jupiter.api.Assertions.assertFalse; // Импортируем проверку ложности
+import static org.junit.jupiter.api.Assertions.assertInstanceOf; // Импортируем проверку типа
+import static org.junit.jupiter.api.Assertions.assertThrows; // Импортируем проверку исключения
+import static org.junit.jupiter.api.Assertions.assertTrue; // Импортируем проверку истинности
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.net.ServerSocket; // Импортируем серверный сокет
+import java.net.Socket; // Импортируем сокет
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.CopyOnWriteArrayList; // Импортируем потокобезопасный список
+import java.util.concurrent.ExecutionException; // Импортируем ошибку результата
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import org.junit.jupiter.api.AfterAll; // Импортируем аннотацию завершения
+import org.junit.jupiter.api.BeforeAll; // Импортируем аннотацию подготовки
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+
+// Проверки асинхронного клиента против неблокирующего сервера в этом же процессе: сопоставление ответов,
+// пришедших не по порядку, завершение ожидающих запросов при закрытии соединения и переподключение пула.
+// Клиент подключается через посредника, который умеет оборвать соединения со стороны сервера
+class BrokerClientTest {
+
+    private static int port; // Порт сервера теста
+    private static ServerSocket relay; // Посредник между клиентами и сервером
+    private static final List<Socket> relayed = new CopyOnWriteArrayList<>(); // Сокеты, открытые посредником
+
+    // Запуск сервера и посредника
+    @BeforeAll
+    static void startServer() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) { // Свободный порт
+            port = probe.getLocalPort(); // Запоминаем его
+        }
+        Thread server = new Thread(() -> { // Поток приема соединений
+            try {
+                new NioServer(port, 1).run(); // Один цикл событий
+            } catch (IOException e) { // Обработка ошибок запуска
+                System.err.println("Ошибка запуска сервера: " + e.getMessage()); // Сообщаем об ошибке
+            }
+        }, "test-server");
+        server.setDaemon(true); // Поток не должен мешать завершению тестов
+        server.start(); // Запускаем сервер
+        awaitListening(port); // Ждем запуска
+
+        relay = new ServerSocket(0); // Посредник на свободном порту
+        Thread acceptor = new Thread(BrokerClientTest::acceptAndRelay, "test-relay"); // Поток приема соединений посредника
+        acceptor.setDaemon(true); // Поток не должен мешать завершению тестов
+        acceptor.start(); // Запускаем посредника
+    }
+
+    // Остановка посредника (сервер завершится вместе с процессом)
+    @AfterAll
+    static void stopRelay() throws IOException {
+        relay.close(); // Поток посредника завершится
+        dropConnections(); // Закрываем открытые им соединения
+    }
+
+    // Ответ на выборку с ожиданием приходит после ответов на следующие запросы и попадает в свой результат
+    @Test
+    void matchesOutOfOrderReplies() throws Exception {
+        try (BrokerClient client = new BrokerClient("localhost", port)) { // Одно соединение на все запросы
+            client.open("client-waiting").get(5, TimeUnit.SECONDS); // Пустая очередь
+            client.open("client-other").get(5, TimeUnit.SECONDS); // Другая очередь
+            CompletableFuture<ByteBuffer> waiting = client.receive("client-waiting", 10_000); // Ответ придет позже
+
+            client.publish("client-other", bytes("first")).get(5, TimeUnit.SECONDS); // Следующий запрос отвечен раньше
+            assertEquals("first", text(client.receive("client-other").get(5, TimeUnit.SECONDS))); // И ответ попал в свой результат
+            assertFalse(waiting.isDone()); // Выборка все еще ждет
+
+            client.publish("client-waiting", bytes("late")).get(5, TimeUnit.SECONDS); // Сообщение для ожидающей выборки
+            assertEquals("late", text(waiting.get(5, TimeUnit.SECONDS))); // Выборка получила именно его
+        }
+    }
+
+    // Закрытие клиента завершает ожидающие запросы с ошибкой, новые запросы не принимаются
+    @Test
+    void closeFailsPendingRequests() throws Exception {
+        BrokerClient client = new BrokerClient("localhost", port); // Клиент
+        client.open("client-close").get(5, TimeUnit.SECONDS); // Пустая очередь
+        CompletableFuture<ByteBuffer> waiting = client.receive("client-close", 10_000); // Запрос без ответа
+        client.close(); // Закрываем клиент
+        ExecutionException error = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS)); // Запрос завершен с ошибкой
+        assertInstanceOf(IOException.class, error.getCause()); // Причина - закрытие соединения
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> client.open("client-close").get(5, TimeUnit.SECONDS)); // Новый запрос
+        assertInstanceOf(IOException.class, rejected.getCause()); // Клиент закрыт
+    }
+
+    // Соединение, оборванное сервером, завершает ожидающие запросы с ошибкой, а следующий запрос идет по новому соединению
+    @Test
+    void reconnectsAfterServerDropsConnection() throws Exception {
+        try (BrokerClient client = new BrokerClient("localhost", relay.getLocalPort())) { // Одно соединение через посредника
+            client.open("client-reconnect").get(5, TimeUnit.SECONDS); // Пустая очередь
+            CompletableFuture<ByteBuffer> waiting = client.receive("client-reconnect", 10_000); // Запрос без ответа
+            dropConnections(); // Сервер обрывает соединение
+            ExecutionException error = assertThrows(ExecutionException.class, () -> waiting.get(5, TimeUnit.SECONDS)); // Запрос завершен с ошибкой
+            assertInstanceOf(IOException.class, error.getCause()); // Причина - обрыв соединения
+
+            client.publish("client-reconnect", bytes("again")).get(5, TimeUnit.SECONDS); // Пул подключается заново
+            assertEquals("again", text(client.receive("client-reconnect").get(5, TimeUnit.SECONDS))); // И новое соединение работает
+            assertTrue(relayed.size() >= 2); // Посредник принял новое соединение
+        }
+    }
+
+    // Основной цикл посредника: каждое соединение клиента передается серверу в обе стороны
+    private static void acceptAndRelay() {
+        try {
+            while (true) { // Пока посредник не закрыт
+                Socket client = relay.accept(); // Соединение клиента
+                Socket server = new Socket("localhost", port); // Соединение с сервером
+                relayed.add(client); // Запоминаем оба сокета
+                relayed.add(server);
+                pump(client, server); // Запросы клиента - серверу
+                pump(server, client); // Ответы сервера - клиенту
+            }
+        } catch (IOException e) { // Посредник закрыт
+            // Поток завершается
+        }
+    }
+
+    // Метод для запуска потока, копирующего байты из одного сокета в другой
+    private static void pump(Socket from, Socket to) {
+        Thread thread = new Thread(() -> { // Поток копирования
+            try {
+                from.getInputStream().transferTo(to.getOutputStream()); // Копируем, пока источник не закроется
+            } catch (IOException e) { // Один из сокетов закрыт
+                // Копирование завершается
+            }
+            try {
+                to.close(); // Закрываем вторую сторону
+            } catch (IOException ignored) { // Ошибку закрытия игнорируем
+            }
+        }, "test-relay-pump");
+        thread.setDaemon(true); // Поток не должен мешать завершению тестов
+        thread.start(); // Запускаем поток
+    }
+
+    // Метод для обрыва всех соединений посредника
+    private static void dropConnections() throws IOException {
+        for (Socket socket : relayed) { // Для каждого сокета
+            socket.close(); // Закрываем его
+        }
+    }
+
+    // Метод для получения байтов строки в UTF-8
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)); // Байты строки
+    }
+
+    // Метод для получения текста сообщения
+    private static String text(ByteBuffer payload) {
+        return StandardCharsets.UTF_8.decode(payload.duplicate()).toString(); // Декодируем без изменения позиции
+    }
+
+    // Метод для ожидания запуска сервера
+    private static void awaitListening(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000; // Сервер запускается быстро
+        while (true) { // Пока сервер не запустился
+            try {
+                new Socket("localhost", port).close(); // Пробуем подключиться
+                return; // Сервер принимает соединения
+            } catch (IOException e) { // Сервер еще не запущен
+                if (System.currentTimeMillis() > deadline) { // Если время вышло
+                    throw e; // Сообщаем об ошибке
+                }
+                Thread.sleep(50); // Ждем перед следующей попыткой
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+import static org.junit.jupiter.api.Assertions.assertInstanceOf; // Импортируем проверку типа
+import static org.junit.jupiter.api.Assertions.assertNull; // Импортируем проверку на null
+import static org.junit.jupiter.api.Assertions.assertThrows; // Импортируем проверку исключения
+import static org.junit.jupiter.api.Assertions.assertTrue; // Импортируем проверку истинности
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.net.ServerSocket; // Импортируем серверный сокет
+import java.net.Socket; // Импортируем сокет
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.nio.file.Paths; // Импортируем создание путей
+import java.util.ArrayList; // Импортируем список
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.ExecutionException; // Импортируем ошибку результата
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import org.junit.jupiter.api.AfterAll; // Импортируем аннотацию завершения
+import org.junit.jupiter.api.BeforeAll; // Импортируем аннотацию подготовки
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+
+// Проверки кластера из трех узлов брокера на localhost (отдельные процессы) и двух неисправных узлов:
+// один не принимает соединений, другой принимает, но никогда не отвечает
+class ClusterTest {
+
+    private static final int FORWARD_TIMEOUT_MILLIS = 1000; // Время ожидания ответа владельца в узлах теста
+    private static final int VIRTUAL_NODES = 128; // Точек на узел (задается узлам явно, чтобы кольцо теста совпадало)
+
+    private static final List<Process> processes = new ArrayList<>(); // Процессы узлов
+    private static final List<String> nodes = new ArrayList<>(); // Адреса всех узлов кластера
+    private static final List<BrokerClient> clients = new ArrayList<>(); // Клиенты работающих узлов по порядку
+    private static String unreachable; // Узел, к которому нельзя подключиться
+    private static String stalled; // Узел, который не отвечает на запросы
+    private static ServerSocket stalledSocket; // Сокет неотвечающего узла
+    private static HashRing ring; // Кольцо, совпадающее с кольцом узлов
+
+    // Запуск узлов кластера
+    @BeforeAll
+    static void startCluster() throws Exception {
+        int[] ports = new int[4]; // Порты трех работающих узлов и недоступного
+        for (int i = 0; i < ports.length; i++) { // Для каждого порта
+            try (ServerSocket probe = new ServerSocket(0)) { // Свободный порт
+                ports[i] = probe.getLocalPort(); // Запоминаем его
+            }
+        }
+        stalledSocket = new ServerSocket(0); // Узел, который принимает соединения и молчит
+        Thread acceptor = new Thread(ClusterTest::acceptAndIgnore, "stalled-node"); // Поток приема соединений
+        acceptor.setDaemon(true); // Поток не должен мешать завершению тестов
+        acceptor.start(); // Запускаем поток
+
+        for (int port : ports) { // Все узлы кластера
+            nodes.add("localhost:" + port); // Адрес узла
+        }
+        unreachable = nodes.get(3); // На этом порту никто не слушает
+        stalled = "localhost:" + stalledSocket.getLocalPort(); // Адрес молчащего узла
+        nodes.add(stalled); // Он тоже участник кольца
+        ring = new HashRing(nodes, VIRTUAL_NODES); // То же кольцо, что у узлов
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString(); // Та же Java, что у тестов
+        for (int i = 0; i < 3; i++) { // Три работающих узла
+            processes.add(new ProcessBuilder(java, // Отдельный процесс узла
+                    "-Dbroker.port=" + ports[i], // Порт узла
+                    "-Dbroker.advertise=" + nodes.get(i), // Адрес узла в кольце
+                    "-Dbroker.peers=" + String.join(",", nodes), // Все узлы
+                    "-Dbroker.virtualNodes=" + VIRTUAL_NODES, // Точек на узел
+                    "-Dbroker.forwardTimeoutMillis=" + FORWARD_TIMEOUT_MILLIS, // Короткое время ожидания владельца
+                    "-Dbroker.statsLog=false", // Без периодической статистики
+                    "-cp", System.getProperty("java.class.path"), // Классы брокера
+                    "org.broker.Server") // Главный класс
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start()); // Вывод узла не нужен
+        }
+        for (int i = 0; i < 3; i++) { // Для каждого работающего узла
+            awaitListening(ports[i]); // Ждем запуска
+            clients.add(new BrokerClient("localhost", ports[i])); // Подключаемся
+        }
+    }
+
+    // Остановка узлов кластера
+    @AfterAll
+    static void stopCluster() throws IOException {
+        for (BrokerClient client : clients) { // Для каждого клиента
+            client.close(); // Закрываем соединение
+        }
+        for (Process process : processes) { // Для каждого узла
+            process.destroy(); // Останавливаем процесс
+        }
+        if (stalledSocket != null) { // Если молчащий узел запущен
+            stalledSocket.close(); // Закрываем его сокет
+        }
+    }
+
+    // Сообщения, добавленные через узел, который не владеет очередью, извлекаются через третий узел по порядку
+    @Test
+    void publishOnNonOwnerFetchOnAnotherNode() throws Exception {
+        String queueName = queueOwnedBy(nodes.get(2)); // Очередь третьего узла
+        assertTrue(await(clients.get(0).open(queueName))); // Создаем через первый узел
+        for (int i = 0; i < 10; i++) { // Десять сообщений
+            await(clients.get(0).publish(queueName, ("m" + i).getBytes(StandardCharsets.UTF_8))); // Через первый узел
+        }
+        List<String> received = new ArrayList<>(); // Сообщения, извлеченные через второй узел
+        for (ByteBuffer message : await(clients.get(1).fetch(queueName, 100))) { // Выборка через второй узел
+            received.add(StandardCharsets.UTF_8.decode(message).toString()); // Запоминаем текст
+        }
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8", "m9"), received); // Все сообщения по порядку
+        assertNull(await(clients.get(1).receive(queueName))); // Больше сообщений нет
+    }
+
+    // Выборка с ожиданием через узел, который не владеет очередью, получает сообщение, добавленное позже через другой узел
+    @Test
+    void longPollIsForwardedToOwner() throws Exception {
+        String queueName = queueOwnedBy(nodes.get(2)); // Очередь третьего узла
+        await(clients.get(1).open(queueName)); // Создаем очередь
+        CompletableFuture<ByteBuffer> waiting = clients.get(0).receive(queueName, 5000); // Ждем через первый узел
+        Thread.sleep(300); // Ожидание уже началось
+        await(clients.get(1).publish(queueName, "late".getBytes(StandardCharsets.UTF_8))); // Сообщение через второй узел
+        assertEquals("late", StandardCharsets.UTF_8.decode(await(waiting)).toString()); // Ожидающий получил его
+
+        long start = System.nanoTime(); // Начало ожидания пустой очереди
+        assertNull(await(clients.get(0).receive(queueName, 300))); // Время истекло - сообщения нет
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250)); // Владелец действительно ждал
+    }
+
+    // Запрос к очереди недоступного узла завершается кодом STATUS_UNAVAILABLE, а не зависает
+    @Test
+    void unreachableOwnerIsUnavailable() {
+        String queueName = queueOwnedBy(unreachable); // Очередь недоступного узла
+        assertUnavailable(clients.get(0).open(queueName)); // Создание
+        assertUnavailable(clients.get(1).publish(queueName, new byte[] {1})); // Добавление
+        assertUnavailable(clients.get(2).fetch(queueName, 1)); // Выборка
+    }
+
+    // Запрос к очереди узла, который принял соединение и молчит, завершается по истечении времени ожидания
+    @Test
+    void stalledOwnerTimesOut() {
+        String queueName = queueOwnedBy(stalled); // Очередь молчащего узла
+        long start = System.nanoTime(); // Начало запроса
+        assertUnavailable(clients.get(0).fetch(queueName, 1)); // Ответа нет - узел считается недоступным
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(FORWARD_TIMEOUT_MILLIS - 100)); // Ответ пришел по таймауту
+    }
+
+    // Метод для подбора имени очереди, которой владеет узел node
+    private static String queueOwnedBy(String node) {
+        for (int i = 0; ; i++) { // Перебираем имена
+            String queueName = "cluster-test-" + System.nanoTime() + "-" + i; // Имя, не занятое другими проверками
+            if (node.equals(ring.owner(queueName))) { // Если очередь принадлежит узлу
+                return queueName; // Возвращаем имя
+            }
+        }
+    }
+
+    // Метод для проверки, что запрос завершился ошибкой STATUS_UNAVAILABLE не позже чем за 5 секунд
+    private static void assertUnavailable(CompletableFuture<?> reply) {
+        ExecutionException error = assertThrows(ExecutionException.class, () -> reply.get(5, TimeUnit.SECONDS)); // Запрос завершился ошибкой
+        BrokerException cause = assertInstanceOf(BrokerException.class, error.getCause()); // Ошибка брокера
+        assertEquals(BinaryProtocol.STATUS_UNAVAILABLE, cause.getStatus()); // Владелец недоступен
+    }
+
+    // Метод для ожидания результата запроса не дольше 10 секунд
+    private static <T> T await(CompletableFuture<T> reply) throws Exception {
+        return reply.get(10, TimeUnit.SECONDS); // Ждем результат
+    }
+
+    // Метод для ожидания, пока узел начнет принимать соединения
+    private static void awaitListening(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 20_000; // Запуск JVM может быть небыстрым
+        while (true) { // Пока узел не запустился
+            try {
+                new Socket("localhost", port).close(); // Пробуем подключиться
+                return; // Узел принимает соединения
+            } catch (IOException e) { // Узел еще не запущен
+                if (System.currentTimeMillis() > deadline) { // Если время вышло
+                    throw e; // Сообщаем об ошибке
+                }
+                Thread.sleep(100); // Ждем перед следующей попыткой
+            }
+        }
+    }
+
+    // Основной цикл молчащего узла: соединения принимаются и остаются открытыми без ответов
+    private static void acceptAndIgnore() {
+        List<Socket> accepted = new ArrayList<>(); // Принятые соединения (не закрываются до конца тестов)
+        try {
+            while (true) { // Принимаем соединения
+                accepted.add(stalledSocket.accept()); // Запоминаем соединение
+            }
+        } catch (IOException e) { // Сокет закрыт в конце тестов
+            // Работа узла завершена
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+import static org.junit.jupiter.api.Assertions.assertTrue; // Импортируем проверку истинности
+
+import java.util.ArrayList; // Импортируем список
+import java.util.List; // Импортируем интерфейс списка
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+
+// Проверки кольца согласованного хеширования: при изменении списка узлов переезжает только ~1/N очередей
+class HashRingTest {
+
+    private static final int KEYS = 100_000; // Число имен очередей в проверке
+    private static final int VIRTUAL_NODES = 128; // Точек на узел, как по умолчанию в кластере
+
+    // Новый узел забирает только очереди с занятых им дуг, остальные очереди сохраняют владельцев
+    @Test
+    void addingNodeMovesOnlyKeysToNewNode() {
+        List<String> nodes = new ArrayList<>(List.of("localhost:1234", "localhost:1235", "localhost:1236")); // Три узла
+        HashRing before = new HashRing(nodes, VIRTUAL_NODES); // Кольцо до добавления
+        nodes.add("localhost:1237"); // Четвертый узел
+        HashRing after = new HashRing(nodes, VIRTUAL_NODES); // Кольцо после добавления
+
+        int moved = 0; // Очереди, сменившие владельца
+        for (int i = 0; i < KEYS; i++) { // Для каждого имени
+            String queueName = "queue-" + i; // Имя очереди
+            String owner = after.owner(queueName); // Новый владелец
+            if (!owner.equals(before.owner(queueName))) { // Если владелец сменился
+                assertEquals("localhost:1237", owner, queueName); // Очередь могла уйти только к новому узлу
+                moved++; // Учитываем переезд
+            }
+        }
+        double share = (double) moved / KEYS; // Доля переехавших очередей
+        assertTrue(share > 0.15 && share < 0.35, "переехало " + share); // Около 1/4
+    }
+
+    // Удаление узла переносит только его очереди
+    @Test
+    void removingNodeMovesOnlyItsKeys() {
+        HashRing before = new HashRing(List.of("a:1", "b:1", "c:1", "d:1"), VIRTUAL_NODES); // Четыре узла
+        HashRing after = new HashRing(List.of("a:1", "b:1", "d:1"), VIRTUAL_NODES); // Узел c удален
+        for (int i = 0; i < KEYS; i++) { // Для каждого имени
+            String queueName = "queue-" + i; // Имя очереди
+            String owner = before.owner(queueName); // Прежний владелец
+            if (!owner.equals("c:1")) { // Очереди остальных узлов
+                assertEquals(owner, after.owner(queueName), queueName); // Остаются на месте
+            }
+        }
+    }
+
+    // Владелец зависит только от списка узлов, а не от порядка их перечисления
+    @Test
+    void ownerDoesNotDependOnNodeOrder() {
+        HashRing ring = new HashRing(List.of("a:1", "b:1", "c:1"), VIRTUAL_NODES); // Один порядок
+        HashRing reordered = new HashRing(List.of("c:1", "a:1", "b:1"), VIRTUAL_NODES); // Другой порядок
+        for (int i = 0; i < 10_000; i++) { // Для каждого имени
+            assertEquals(ring.owner("queue-" + i), reordered.owner("queue-" + i)); // Владелец тот же
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+import static org.junit.jupiter.api.Assertions.assertFalse; // Импортируем проверку ложности
+import static org.junit.jupiter.api.Assertions.assertNull; // Импортируем проверку на null
+
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.util.List; // Импортируем интерфейс списка
+import java.util.concurrent.CompletableFuture; // Импортируем результат асинхронной операции
+import java.util.concurrent.CopyOnWriteArrayList; // Импортируем потокобезопасный список
+import java.util.concurrent.TimeUnit; // Импортируем единицы времени
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+
+// Проверки раздачи сообщений очередью: ожидающий receive (Waiter) и подписки с окном неподтвержденных сообщений
+class MessageQueueDispatchTest {
+
+    // Ожидание без сообщений завершается по таймауту, а пришедшее позже сообщение остается в очереди
+    @Test
+    void waiterTimesOut() throws Exception {
+        MessageQueue queue = new MessageQueue("dispatch-timeout"); // Пустая очередь
+        CompletableFuture<String> message = new CompletableFuture<>(); // Полученное сообщение
+        CompletableFuture<Void> expired = new CompletableFuture<>(); // Истечение времени
+        Waiter waiter = new Waiter(queue, m -> message.complete(text(m)), () -> expired.complete(null)); // Ожидающий потребитель
+        waiter.start(50); // Ждем 50 мс
+
+        expired.get(5, TimeUnit.SECONDS); // Время истекло
+        assertFalse(waiter.isActive()); // Потребитель больше не ждет
+        queue.offer(bytes("late")); // Сообщение после таймаута
+        assertFalse(message.isDone()); // Завершенному ожиданию оно не передается
+        assertEquals("late", text(queue.poll())); // И остается в очереди
+    }
+
+    // Сообщение, добавленное в пустую очередь, сразу передается ожидающему потребителю
+    @Test
+    void waiterWakesOnPut() throws Exception {
+        MessageQueue queue = new MessageQueue("dispatch-wake"); // Пустая очередь
+        CompletableFuture<String> message = new CompletableFuture<>(); // Полученное сообщение
+        CompletableFuture<Void> expired = new CompletableFuture<>(); // Истечение времени
+        Waiter waiter = new Waiter(queue, m -> message.complete(text(m)), () -> expired.complete(null)); // Ожидающий потребитель
+        waiter.start(10_000); // Ждем долго
+
+        queue.offer(bytes("wake")); // Добавляем сообщение
+        assertEquals("wake", message.get(5, TimeUnit.SECONDS)); // Потребитель его получил
+        assertFalse(waiter.isActive()); // Ожидание завершено
+        assertNull(queue.poll()); // В очереди сообщение не осталось
+        assertFalse(expired.isDone()); // Таймаут не сработал
+    }
+
+    // Подписка получает не больше prefetch неподтвержденных сообщений, а подтверждение освобождает окно
+    @Test
+    void subscriptionStopsAtCreditAndResumesOnAck() {
+        MessageQueue queue = new MessageQueue("dispatch-credit"); // Пустая очередь
+        List<String> received = new CopyOnWriteArrayList<>(); // Полученные сообщения
+        Subscription subscription = new Subscription(queue, 2, m -> received.add(text(m))); // Окно из двух сообщений
+        subscription.start(); // Подписываемся
+        for (int i = 0; i < 5; i++) { // Пять сообщений
+            queue.offer(bytes("m" + i)); // Добавляем сообщение
+        }
+        assertEquals(List.of("m0", "m1"), received); // Окно исчерпано после двух
+        assertEquals(3, queue.getDepth()); // Остальные ждут в очереди
+
+        subscription.ack(1); // Подтверждаем одно
+        assertEquals(List.of("m0", "m1", "m2"), received); // Пришло ровно одно новое
+        subscription.ack(5); // Подтверждений больше окна
+        assertEquals(List.of("m0", "m1", "m2", "m3", "m4"), received); // Окно выросло только до prefetch, но этого хватило
+        assertEquals(0, queue.getDepth()); // Очередь пуста
+    }
+
+    // Несколько подписок получают сообщения по очереди
+    @Test
+    void subscriptionsReceiveRoundRobin() {
+        MessageQueue queue = new MessageQueue("dispatch-round-robin"); // Пустая очередь
+        List<String> first = new CopyOnWriteArrayList<>(); // Сообщения первой подписки
+        List<String> second = new CopyOnWriteArrayList<>(); // Сообщения второй подписки
+        new Subscription(queue, 10, m -> first.add(text(m))).start(); // Первая подписка
+        new Subscription(queue, 10, m -> second.add(text(m))).start(); // Вторая подписка
+        for (int i = 0; i < 6; i++) { // Шесть сообщений
+            queue.offer(bytes("m" + i)); // Добавляем сообщение
+        }
+        assertEquals(List.of("m0", "m2", "m4"), first); // Четные - первой
+        assertEquals(List.of("m1", "m3", "m5"), second); // Нечетные - второй
+    }
+
+    // Отмененная подписка больше не получает сообщений, и они остаются в очереди
+    @Test
+    void cancelledSubscriptionStopsReceiving() {
+        MessageQueue queue = new MessageQueue("dispatch-cancel"); // Пустая очередь
+        List<String> received = new CopyOnWriteArrayList<>(); // Полученные сообщения
+        Subscription subscription = new Subscription(queue, 1, m -> received.add(text(m))); // Окно из одного сообщения
+        subscription.start(); // Подписываемся
+        queue.offer(bytes("m0")); // Первое сообщение
+        subscription.cancel(); // Отменяем подписку
+        queue.offer(bytes("m1")); // Второе сообщение
+        subscription.ack(1); // Подтверждение после отмены
+        assertEquals(List.of("m0"), received); // Второе не доставлено
+        assertFalse(subscription.isActive()); // Подписка отменена
+        assertEquals("m1", text(queue.poll())); // Сообщение осталось в очереди
+    }
+
+    // Метод для создания сообщения из строки
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)); // Байты строки
+    }
+
+    // Метод для получения текста сообщения
+    private static String text(ByteBuffer payload) {
+        return StandardCharsets.UTF_8.decode(payload.duplicate()).toString(); // Декодируем без изменения позиции
+    }
+}
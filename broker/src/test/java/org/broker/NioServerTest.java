@@ -0,0 +1,120 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+import static org.junit.jupiter.api.Assertions.assertThrows; // Импортируем проверку исключения
+
+import java.io.DataInputStream; // Импортируем поток для чтения чисел в сетевом порядке байтов
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.io.OutputStream; // Импортируем поток вывода
+import java.net.ServerSocket; // Импортируем серверный сокет
+import java.net.Socket; // Импортируем сокет
+import java.net.SocketTimeoutException; // Импортируем исключение истечения времени чтения
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.nio.file.Paths; // Импортируем создание путей
+import org.junit.jupiter.api.AfterAll; // Импортируем аннотацию завершения
+import org.junit.jupiter.api.BeforeAll; // Импортируем аннотацию подготовки
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+
+// Проверки разбора текстовых команд неблокирующим сервером на уровне сокета: команды и тела сообщений,
+// разрезанные между чтениями, и приостановка чтения производителя, пока заполненная очередь не освободится.
+// Сервер запускается отдельным процессом, потому что ограничения очередей задаются при его запуске
+class NioServerTest {
+
+    private static final int QUEUE_MAX_MESSAGES = 2; // Сообщений в очереди до приостановки производителя
+
+    private static Process process; // Процесс сервера
+    private static int port; // Порт сервера
+
+    // Запуск сервера с политикой block
+    @BeforeAll
+    static void startServer() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) { // Свободный порт
+            port = probe.getLocalPort(); // Запоминаем его
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString(); // Та же Java, что у тестов
+        process = new ProcessBuilder(java, // Отдельный процесс сервера
+                "-Dbroker.port=" + port, // Порт сервера
+                "-Dbroker.queueMaxMessages=" + QUEUE_MAX_MESSAGES, // Маленькая очередь
+                "-Dbroker.queueOverflowPolicy=block", // Заполненная очередь приостанавливает производителя
+                "-Dbroker.eventLoops=1", // Один цикл событий
+                "-Dbroker.statsLog=false", // Без периодической статистики
+                "-cp", System.getProperty("java.class.path"), // Классы брокера
+                "org.broker.Server") // Главный класс
+                .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start(); // Вывод сервера не нужен
+        awaitListening(port); // Ждем запуска
+    }
+
+    // Остановка сервера
+    @AfterAll
+    static void stopServer() throws InterruptedException {
+        process.destroy(); // Завершаем процесс
+        process.waitFor(); // Ждем завершения
+    }
+
+    // Команда, тело сообщения и конец строки \r\n, пришедшие несколькими частями, разбираются как целые
+    @Test
+    void textCommandsSplitAcrossReads() throws Exception {
+        try (Socket socket = connect()) { // Текстовое соединение
+            OutputStream out = socket.getOutputStream(); // Поток команд
+            for (String part : new String[] {"se", "nd split-q\nmess", "age 5\nhel", "lo", "rece", "ive split-q\r", "\n"}) { // Части команд
+                out.write(part.getBytes(StandardCharsets.UTF_8)); // Отправляем часть
+                out.flush(); // Сразу
+                Thread.sleep(20); // Сервер успевает прочитать часть отдельно
+            }
+            DataInputStream in = new DataInputStream(socket.getInputStream()); // Поток ответов
+            assertEquals("Очередь 'split-q' создана.", read(in)); // Ответ на send
+            assertEquals("Сообщение 'hello' добавлено в очередь 'split-q'.", read(in)); // Ответ на message
+            assertEquals("Сообщение из очереди: hello", read(in)); // Ответ на receive
+        }
+    }
+
+    // Производитель, заполнивший очередь, не получает ответов на следующие команды, пока потребитель не освободит место
+    @Test
+    void pausesProducerUntilQueueHasRoom() throws Exception {
+        try (Socket producer = connect(); Socket consumer = connect()) { // Производитель и потребитель
+            producer.getOutputStream().write("send full-q\nmessage 1\namessage 1\nbmessage 1\nc".getBytes(StandardCharsets.UTF_8)); // Три сообщения одной записью
+            DataInputStream in = new DataInputStream(producer.getInputStream()); // Ответы производителю
+            assertEquals("Очередь 'full-q' создана.", read(in)); // Очередь создана
+            assertEquals("Сообщение 'a' добавлено в очередь 'full-q'.", read(in)); // Первое сообщение
+            assertEquals("Сообщение 'b' добавлено в очередь 'full-q'.", read(in)); // Второе заполнило очередь
+            producer.setSoTimeout(500); // Третье не обрабатывается, пока очередь заполнена
+            assertThrows(SocketTimeoutException.class, in::readInt); // Ответа нет
+
+            consumer.getOutputStream().write("receive full-q\n".getBytes(StandardCharsets.UTF_8)); // Потребитель освобождает место
+            assertEquals("Сообщение из очереди: a", read(new DataInputStream(consumer.getInputStream()))); // Первое сообщение
+            producer.setSoTimeout(5000); // Чтение производителя возобновится
+            assertEquals("Сообщение 'c' добавлено в очередь 'full-q'.", read(in)); // Отложенное сообщение обработано
+        }
+    }
+
+    // Метод для чтения одного текстового ответа: [int длина][строка UTF-8 с \n в конце]
+    private static String read(DataInputStream in) throws IOException {
+        byte[] response = new byte[in.readInt()]; // Буфер под ответ
+        in.readFully(response); // Читаем ответ целиком
+        return new String(response, StandardCharsets.UTF_8).strip(); // Ответ без перевода строки
+    }
+
+    // Метод для подключения к серверу
+    private static Socket connect() throws IOException {
+        Socket socket = new Socket("localhost", port); // Подключаемся
+        socket.setTcpNoDelay(true); // Каждая запись уходит отдельным сегментом
+        socket.setSoTimeout(5000); // Ответ не должен задерживаться
+        return socket; // Возвращаем сокет
+    }
+
+    // Метод для ожидания запуска сервера
+    private static void awaitListening(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 20_000; // Запуск JVM может быть небыстрым
+        while (true) { // Пока сервер не запустился
+            try {
+                new Socket("localhost", port).close(); // Пробуем подключиться
+                return; // Сервер принимает соединения
+            } catch (IOException e) { // Сервер еще не запущен
+                if (System.currentTimeMillis() > deadline) { // Если время вышло
+                    throw e; // Сообщаем об ошибке
+                }
+                Thread.sleep(100); // Ждем перед следующей попыткой
+            }
+        }
+    }
+}
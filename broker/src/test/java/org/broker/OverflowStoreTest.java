@@ -0,0 +1,47 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+import static org.junit.jupiter.api.Assertions.assertFalse; // Импортируем проверку ложности
+import static org.junit.jupiter.api.Assertions.assertNull; // Импортируем проверку на null
+import static org.junit.jupiter.api.Assertions.assertTrue; // Импортируем проверку истинности
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+
+// Проверки хвоста переполненной очереди на диске
+class OverflowStoreTest {
+
+    // Небольшие сообщения читаются в кучу, а большие отображаются из сегмента, без массива их размера
+    @Test
+    void mapsLargeMessagesInsteadOfCopyingToHeap() throws IOException {
+        OverflowStore store = new OverflowStore("overflow-test"); // Хвост очереди
+        try {
+            ByteBuffer small = ByteBuffer.wrap(new byte[] {1, 2, 3}); // Небольшое сообщение
+            ByteBuffer large = ByteBuffer.allocate(PayloadSink.SPILL_THRESHOLD_BYTES + 1); // Сообщение больше порога
+            for (int i = 0; i < large.capacity(); i++) { // Заполняем его узнаваемыми байтами
+                large.put(i, (byte) i); // Байт зависит от позиции
+            }
+            store.append(small, 1L, true); // Дописываем оба сообщения
+            store.append(large, 2L, false);
+
+            assertEquals(3, store.nextLength()); // Первое сообщение - небольшое
+            assertEquals(1L, store.nextEnqueuedAt()); // Время добавления сохранено
+            assertTrue(store.nextLogged()); // Признак журнала сохранен
+            ByteBuffer first = store.read(); // Читаем его
+            assertFalse(first.isDirect()); // Буфер в куче
+            assertEquals(small, first); // Байты совпадают
+
+            assertEquals(large.capacity(), store.nextLength()); // Второе сообщение - большое
+            assertFalse(store.nextLogged()); // Признак журнала сохранен
+            ByteBuffer second = store.read(); // Читаем его
+            assertTrue(second.isDirect()); // Отображение файла, а не массив в куче
+            assertEquals(large, second); // Байты совпадают
+
+            assertEquals(-1, store.nextLength()); // Хвост прочитан целиком
+            assertNull(store.read()); // Читать больше нечего
+        } finally {
+            store.clear(); // Удаляем сегменты
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.broker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals; // Импортируем проверку равенства
+
+import java.io.IOException; // Импортируем класс исключений ввода-вывода
+import java.nio.ByteBuffer; // Импортируем класс для работы с байтовыми буферами
+import java.nio.charset.StandardCharsets; // Импортируем стандартные кодировки символов
+import java.nio.file.Files; // Импортируем вспомогательные методы для файлов
+import java.nio.file.Path; // Импортируем путь к файлу
+import java.util.ArrayList; // Импортируем список
+import java.util.List; // Импортируем интерфейс списка
+import org.junit.jupiter.api.Test; // Импортируем аннотацию теста
+import org.junit.jupiter.api.io.TempDir; // Импортируем временный каталог теста
+
+// Проверки восстановления очереди из журнала: после перезапуска возвращаются ровно непрочитанные сообщения
+class QueueLogRecoveryTest {
+
+    @TempDir
+    Path dataDir; // Каталог данных движка
+
+    // Часть сообщений прочитана до перезапуска - возвращаются только остальные, по порядку
+    @Test
+    void recoversExactlyUnconsumedMessages() throws IOException {
+        PersistenceEngine engine = engine(1024); // Движок с небольшими сегментами
+        QueueLog log = engine.open("orders"); // Журнал очереди
+        MessageQueue queue = new MessageQueue("orders", log); // Очередь на диске
+        for (int i = 0; i < 10; i++) { // Десять сообщений
+            queue.offer(message("m" + i)); // Добавляем сообщение
+        }
+        assertEquals("m0", text(queue.poll())); // Извлекаем первые три
+        assertEquals("m1", text(queue.poll()));
+        assertEquals("m2", text(queue.poll()));
+        log.flush(true); // Записываем смещение потребителя, как это делает поток обслуживания
+
+        assertEquals(List.of("m3", "m4", "m5", "m6", "m7", "m8", "m9"), recover("orders")); // Перезапуск
+    }
+
+    // Сообщение, которое не удалось записать в журнал, не сдвигает смещение потребителя при извлечении
+    @Test
+    void unloggedMessageDoesNotShiftConsumerOffset() throws IOException {
+        PersistenceEngine engine = engine(8 + 2); // В сегмент помещается ровно одно сообщение из двух байтов
+        QueueLog log = engine.open("orders"); // Журнал очереди
+        MessageQueue queue = new MessageQueue("orders", log); // Очередь на диске
+        queue.offer(message("m0")); // Записано в первый сегмент
+
+        Path moved = dataDir.resolve("moved"); // Каталог очереди временно недоступен
+        Files.move(log.getDirectory(), moved); // Новый сегмент создать не удастся
+        queue.offer(message("m1")); // Сообщение остается только в памяти
+        Files.move(moved, log.getDirectory()); // Каталог снова доступен
+
+        queue.offer(message("m2")); // Записано во второй сегмент
+        assertEquals("m0", text(queue.poll())); // Извлекаем записанное сообщение
+        assertEquals("m1", text(queue.poll())); // И незаписанное
+        log.flush(true); // Записываем смещение потребителя
+
+        assertEquals(List.of("m2"), recover("orders")); // m2 не пропущено
+    }
+
+    // Метод для создания движка с заданным размером сегмента и сбросом после каждого сообщения
+    private PersistenceEngine engine(int segmentBytes) {
+        return new PersistenceEngine(dataDir, PersistenceEngine.FsyncPolicy.ALWAYS, 60_000, segmentBytes); // Поток обслуживания не успеет вмешаться
+    }
+
+    // Метод для восстановления очереди новым движком, как при перезапуске сервера
+    private List<String> recover(String queueName) throws IOException {
+        QueueLog log = new QueueLog(engine(1024), dataDir.resolve(queueName)); // Журнал в том же каталоге (имя не требует кодирования)
+        List<String> messages = new ArrayList<>(); // Восстановленные сообщения
+        for (ByteBuffer payload : log.recover()) { // Для каждого непрочитанного сообщения
+            messages.add(text(payload)); // Запоминаем его текст
+        }
+        return messages; // Возвращаем сообщения
+    }
+
+    // Метод для создания сообщения из строки
+    private static ByteBuffer message(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)); // Байты строки
+    }
+
+    // Метод для получения текста сообщения
+    private static String text(ByteBuffer payload) {
+        return StandardCharsets.UTF_8.decode(payload.duplicate()).toString(); // Декодируем без изменения позиции
+    }
+}